@@ -14,6 +14,7 @@ import me.armar.plugins.autorank.hooks.DependencyManager;
 import me.armar.plugins.autorank.language.LanguageHandler;
 import me.armar.plugins.autorank.leaderboard.LeaderboardHandler;
 import me.armar.plugins.autorank.listeners.PlayerJoinListener;
+import me.armar.plugins.autorank.listeners.PlayerPreLoginListener;
 import me.armar.plugins.autorank.listeners.PlayerQuitListener;
 import me.armar.plugins.autorank.logger.LoggerManager;
 import me.armar.plugins.autorank.migration.MigrationManager;
@@ -28,9 +29,12 @@ import me.armar.plugins.autorank.pathbuilder.result.*;
 import me.armar.plugins.autorank.permissions.PermissionsPluginManager;
 import me.armar.plugins.autorank.placeholders.AutorankPlaceholder;
 import me.armar.plugins.autorank.playerchecker.PlayerChecker;
+import me.armar.plugins.autorank.playtimes.PlayTimeHistory;
 import me.armar.plugins.autorank.playtimes.PlayTimeManager;
 import me.armar.plugins.autorank.statsmanager.StatisticsManager;
 import me.armar.plugins.autorank.storage.PlayTimeStorageManager;
+import me.armar.plugins.autorank.storage.PlayTimeStorageProvider;
+import me.armar.plugins.autorank.storage.flatfile.BinaryFlatFileStorageProvider;
 import me.armar.plugins.autorank.storage.flatfile.FlatFileStorageProvider;
 import me.armar.plugins.autorank.storage.mysql.MySQLStorageProvider;
 import me.armar.plugins.autorank.tasks.TaskManager;
@@ -42,7 +46,7 @@ import me.armar.plugins.autorank.warningmanager.WarningManager;
 import org.bukkit.ChatColor;
 import org.bukkit.plugin.java.JavaPlugin;
 
-import java.util.HashMap;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
@@ -141,6 +145,12 @@ public class Autorank extends JavaPlugin {
         this.debugMessage("Saving storage files of play time");
         this.getPlayTimeStorageManager().saveAllStorageProviders();
 
+        this.debugMessage("Saving play time history");
+        this.getPlayTimeManager().getPlayTimeHistory().ifPresent(PlayTimeHistory::save);
+
+        this.debugMessage("Finishing pending storage tasks");
+        this.getPlayTimeStorageManager().shutdown();
+
         this.debugMessage("Saving storage files of UUIDs");
         if (getUUIDStorage() != null) {
             getUUIDStorage().saveAllFiles();
@@ -291,7 +301,8 @@ public class Autorank extends JavaPlugin {
 
         // ------------- Register storage providers -------------
 
-        FlatFileStorageProvider flatFileStorageProvider = new FlatFileStorageProvider(this);
+        PlayTimeStorageProvider flatFileStorageProvider = this.getSettingsConfig().useBinaryFlatFileStorage() ?
+                new BinaryFlatFileStorageProvider(this) : new FlatFileStorageProvider(this);
 
         // Load flatfile storage
         CompletableFuture<Void> loadFlatFileTask =
@@ -356,6 +367,9 @@ public class Autorank extends JavaPlugin {
                 loadFlatFileTask.thenCompose(v -> finalLoadMySQLTask.thenRun(() -> {
                     this.getLogger().info("Primary storage provider of Autorank: " + this.getPlayTimeStorageManager()
                             .getPrimaryStorageProvider().getName());
+
+                    // Rank the time of all players, so leaderboards can be shown immediately.
+                    this.getPlayTimeStorageManager().loadRankedIndexes();
                 })).get();
             } catch (InterruptedException | ExecutionException e) {
                 e.printStackTrace();
@@ -372,7 +386,10 @@ public class Autorank extends JavaPlugin {
         // ------------- Register listeners -------------
 
         // Register listeners
-        getServer().getPluginManager().registerEvents(new PlayerJoinListener(this), this);
+        PlayerPreLoginListener preLoginListener = new PlayerPreLoginListener(this);
+
+        getServer().getPluginManager().registerEvents(preLoginListener, this);
+        getServer().getPluginManager().registerEvents(new PlayerJoinListener(this, preLoginListener), this);
         getServer().getPluginManager().registerEvents(new PlayerQuitListener(this), this);
 
         // ------------- Schedule tasks -------------
@@ -403,7 +420,7 @@ public class Autorank extends JavaPlugin {
 
             // Show warnings (if there are any)
 
-            HashMap<String, Integer> warnings = getWarningManager().getWarnings();
+            Map<String, Integer> warnings = getWarningManager().getWarnings();
 
             if (warnings.size() > 0) {
                 getLogger().warning("Autorank has some warnings for you: ");
@@ -434,6 +451,11 @@ public class Autorank extends JavaPlugin {
             int removed = getPlayTimeStorageManager().getPrimaryStorageProvider().purgeOldEntries();
 
             getLogger().info("Removed " + removed + " old storage entries from database!");
+
+            // Removed players should no longer appear on the leaderboards.
+            if (removed > 0) {
+                getPlayTimeStorageManager().loadRankedIndexes();
+            }
         }, 0, (long) AutorankTools.TICKS_PER_MINUTE * 60 * 24);
 
         // ------------- Register commands -------------
@@ -538,6 +560,7 @@ public class Autorank extends JavaPlugin {
         RequirementBuilder.registerRequirement("daily time", TimeDailyRequirement.class);
         RequirementBuilder.registerRequirement("weekly time", TimeWeeklyRequirement.class);
         RequirementBuilder.registerRequirement("monthly time", TimeMonthlyRequirement.class);
+        RequirementBuilder.registerRequirement("recent time", RecentTimeRequirement.class);
         RequirementBuilder.registerRequirement("time", TimeRequirement.class);
         RequirementBuilder.registerRequirement("in biome", InBiomeRequirement.class);
         RequirementBuilder.registerRequirement("has advancement", AdvancementRequirement.class);
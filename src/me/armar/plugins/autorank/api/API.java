@@ -12,6 +12,7 @@ import me.armar.plugins.autorank.storage.TimeType;
 import org.bukkit.plugin.ServicePriority;
 
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
@@ -114,6 +115,35 @@ public class API {
         return plugin.getPlayTimeManager().getPlayTime(timeType, uuid, timeUnit);
     }
 
+    /**
+     * Get the position of a player on the leaderboard of a given type of time, where the player with the most time
+     * has rank 1. Unlike the play time, the rank is kept in memory, so it can be requested often (for example, for
+     * a scoreboard) without waiting. Players that are exempted from the leaderboard are not counted. A player that
+     * is stored but has no time still has a rank. On a network of servers that share a database, time that other
+     * servers add is counted in the rank within 30 minutes.
+     *
+     * @param timeType Type of time
+     * @param uuid     UUID of the player
+     * @return rank of the player, or -1 if the player is not stored, is exempted from the leaderboard or Autorank has
+     * not ranked all players yet.
+     */
+    public int getRank(TimeType timeType, UUID uuid) {
+        return plugin.getPlayTimeManager().getRank(timeType, uuid);
+    }
+
+    /**
+     * Get a page of the leaderboard of a given type of time. The size of a page is the leaderboard length in the
+     * Settings.yml. Players that are exempted from the leaderboard are not included.
+     *
+     * @param timeType Type of time
+     * @param page     Page of the leaderboard, starting at 1
+     * @return an ordered map of the players on the page and their time (in minutes), with the best player first.
+     * The map is empty if there are no players on the page.
+     */
+    public CompletableFuture<Map<UUID, Integer>> getLeaderboard(TimeType timeType, int page) {
+        return plugin.getLeaderboardManager().getLeaderboardPage(timeType, page);
+    }
+
     /**
      * Get the active paths of a player. Returns empty list if no paths are active.
      *
@@ -190,6 +190,9 @@ public class ImportCommand extends AutorankCommand {
                             for (String uuidString : timeConfig.getKeys(false)) {
                                 if (uuidString == null) return;
 
+                                // Files of daily, weekly and monthly time also store their period.
+                                if (uuidString.equals("period")) continue;
+
                                 int importedValue = timeConfig.getInt(uuidString);
                                 UUID importedPlayer = null;
 
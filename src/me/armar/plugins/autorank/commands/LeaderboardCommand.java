@@ -56,11 +56,25 @@ public class LeaderboardCommand extends AutorankCommand {
 
         String leaderboardType = "total";
         TimeType type = null;
+        int page = 1;
 
         if (args.length > 1 && !args[1].equalsIgnoreCase("force") && !args[1].equalsIgnoreCase("broadcast")) {
             leaderboardType = args[1].toLowerCase();
         }
 
+        if (args.length > 2 && !args[2].equalsIgnoreCase("force") && !args[2].equalsIgnoreCase("broadcast")) {
+            try {
+                page = Integer.parseInt(args[2]);
+            } catch (final NumberFormatException e) {
+                page = 0;
+            }
+
+            if (page < 1) {
+                sender.sendMessage(Lang.INVALID_NUMBER.getConfigValue(args[2]));
+                return true;
+            }
+        }
+
         if (leaderboardType.equalsIgnoreCase("total")) {
             type = TimeType.TOTAL_TIME;
         } else if (leaderboardType.equalsIgnoreCase("daily") || leaderboardType.contains("day")) {
@@ -83,22 +97,18 @@ public class LeaderboardCommand extends AutorankCommand {
             sender.sendMessage(ChatColor.GREEN + "Updating the leaderboard. This could take a while!");
             sender.sendMessage(ChatColor.GOLD + "I'll let you know when the leaderboard is updated.");
 
-            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-                public void run() {
-                    // Update leaderboard.
-                    plugin.getLeaderboardManager().updateLeaderboard(type2);
-
-                    sender.sendMessage(ChatColor.YELLOW + "Leaderboard updated!");
+            // Update leaderboard.
+            plugin.getLeaderboardManager().updateLeaderboard(type2).thenRun(() -> {
+                sender.sendMessage(ChatColor.YELLOW + "Leaderboard updated!");
 
-                    plugin.getLeaderboardManager().sendLeaderboard(sender, type2);
-                }
+                plugin.getLeaderboardManager().sendLeaderboard(sender, type2);
             });
 
             return true;
         }
 
         if (!broadcast) {
-            plugin.getLeaderboardManager().sendLeaderboard(sender, type);
+            plugin.getLeaderboardManager().sendLeaderboard(sender, type, page);
         } else {
             plugin.getLeaderboardManager().broadcastLeaderboard(type);
         }
@@ -118,7 +128,7 @@ public class LeaderboardCommand extends AutorankCommand {
 
     @Override
     public String getUsage() {
-        return "/ot leaderboard <type>";
+        return "/ot leaderboard <type> [page]";
     }
 
     @Override
@@ -10,7 +10,9 @@ import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 
@@ -75,21 +77,25 @@ public class SyncCommand extends AutorankCommand {
                     // Get all UUIDs.
                     List<UUID> storedUUIDsFlatfile = flatfileStorageProvider.getStoredPlayers(timeType);
 
+                    Map<UUID, Integer> databaseValues = new HashMap<>();
+
+                    try {
+                        databaseValues = databaseStorageProvider.getPlayerTimes(timeType, storedUUIDsFlatfile).get();
+                    } catch (InterruptedException | ExecutionException e) {
+                        e.printStackTrace();
+                    }
+
                     // For each uuid, set its time to that of the database.
                     for (UUID uuid : storedUUIDsFlatfile) {
-                        int databaseValue = 0;
-                        try {
-                            databaseValue = databaseStorageProvider.getPlayerTime(timeType, uuid).get();
-                        } catch (InterruptedException | ExecutionException e) {
-                            e.printStackTrace();
-                        }
+                        int databaseValue = databaseValues.getOrDefault(uuid, 0);
 
                         // Skip entries that are empty.
                         if (databaseValue <= 0) {
                             continue;
                         }
 
-                        flatfileStorageProvider.setPlayerTime(timeType, uuid, databaseValue);
+                        plugin.getPlayTimeStorageManager().setPlayerTime(PlayTimeStorageProvider.StorageType.FLAT_FILE,
+                                timeType, uuid, databaseValue);
                         count++;
                     }
 
@@ -109,14 +115,17 @@ public class SyncCommand extends AutorankCommand {
                     // Get all UUIDs.
                     List<UUID> storedUUIDsFlatfile = flatfileStorageProvider.getStoredPlayers(timeType);
 
+                    Map<UUID, Integer> flatfileValues = new HashMap<>();
+
+                    try {
+                        flatfileValues = flatfileStorageProvider.getPlayerTimes(timeType, storedUUIDsFlatfile).get();
+                    } catch (InterruptedException | ExecutionException e) {
+                        e.printStackTrace();
+                    }
+
                     // For each uuid, get the flatfile value and update the MYSQL database.
                     for (UUID uuid : storedUUIDsFlatfile) {
-                        int flatfileValue = 0;
-                        try {
-                            flatfileValue = flatfileStorageProvider.getPlayerTime(timeType, uuid).get();
-                        } catch (InterruptedException | ExecutionException e) {
-                            e.printStackTrace();
-                        }
+                        int flatfileValue = flatfileValues.getOrDefault(uuid, 0);
 
                         // Skip entries that are empty.
                         if (flatfileValue <= 0) {
@@ -124,7 +133,8 @@ public class SyncCommand extends AutorankCommand {
                         }
 
                         // Add time to database instead of overwriting it
-                        databaseStorageProvider.addPlayerTime(timeType, uuid, flatfileValue);
+                        plugin.getPlayTimeStorageManager().addPlayerTime(PlayTimeStorageProvider.StorageType.DATABASE,
+                                timeType, uuid, flatfileValue);
                     }
 
                 }
@@ -234,6 +234,56 @@ public class SettingsConfig extends AbstractConfig {
         return this.getConfig().getBoolean("sql.enabled");
     }
 
+    /**
+     * Get the number of seconds that changes to the time of players are buffered before they are written to the
+     * MySQL database.
+     *
+     * @return number of seconds between writes to the database.
+     */
+    public int getMySQLWriteFlushInterval() {
+        return Math.max(1, this.getConfig().getInt("sql.write flush interval", 5));
+    }
+
+    /**
+     * Get the maximum number of players of which the MySQL storage provider caches the time.
+     *
+     * @return maximum number of cached players.
+     */
+    public int getMySQLCacheSize() {
+        return Math.max(1, this.getConfig().getInt("sql.cache size", 10000));
+    }
+
+    /**
+     * Get the number of minutes after which a player whose time has not been requested is removed from the cache of
+     * the MySQL storage provider.
+     *
+     * @return number of minutes a player is cached without being requested.
+     */
+    public int getMySQLCacheExpiryTime() {
+        return Math.max(1, this.getConfig().getInt("sql.cache expiry", 30));
+    }
+
+    /**
+     * Get the number of rows that are read from the MySQL database at a time when reading the results of a query.
+     *
+     * @return number of rows per fetch.
+     */
+    public int getMySQLFetchSize() {
+        return Math.max(1, this.getConfig().getInt("sql.fetch size", 1000));
+    }
+
+    /**
+     * Get the layout of the MySQL tables that Autorank uses. Schema 1 has a table per type of time, schema 2 has a
+     * single row per player and schema 3 has a row per player per server.
+     *
+     * @return version of the schema (1, 2 or 3).
+     */
+    public int getMySQLSchemaVersion() {
+        int schema = this.getConfig().getInt("sql.schema", 1);
+
+        return schema == 2 || schema == 3 ? schema : 1;
+    }
+
     /**
      * Check whether Autorank should automatically remove old storage from its database.
      *
@@ -252,6 +302,69 @@ public class SettingsConfig extends AbstractConfig {
         return this.getConfig().getString("primary storage provider", "flatfile");
     }
 
+    /**
+     * Check whether the flatfile provider should store time in a binary file instead of YAML files.
+     *
+     * @return true if the binary format should be used, false otherwise.
+     */
+    public boolean useBinaryFlatFileStorage() {
+        return this.getConfig().getString("flatfile storage format", "yaml").equalsIgnoreCase("binary");
+    }
+
+    /**
+     * Check whether the flatfile provider should write every change to the time of players to a journal.
+     *
+     * @return true if the journal is enabled, false otherwise.
+     */
+    public boolean isFlatFileJournalEnabled() {
+        return this.getConfig().getBoolean("flatfile journal.enabled", true);
+    }
+
+    /**
+     * Get the number of minutes between saving the flatfile storage files when the journal is enabled.
+     *
+     * @return number of minutes.
+     */
+    public int getFlatFileSnapshotInterval() {
+        return Math.max(1, this.getConfig().getInt("flatfile journal.snapshot interval", 10));
+    }
+
+    /**
+     * Check whether Autorank should keep a history of the time players play per day.
+     *
+     * @return true if the history is enabled, false otherwise.
+     */
+    public boolean isPlayTimeHistoryEnabled() {
+        return this.getConfig().getBoolean("play time history.enabled", false);
+    }
+
+    /**
+     * Get the number of days of play time history that are kept for every player.
+     *
+     * @return number of days.
+     */
+    public int getPlayTimeHistoryDays() {
+        return Math.max(1, this.getConfig().getInt("play time history.days", 35));
+    }
+
+    /**
+     * Get the number of threads that are used to read and write storage.
+     *
+     * @return number of storage threads.
+     */
+    public int getStorageThreads() {
+        return Math.max(1, this.getConfig().getInt("storage threads", 4));
+    }
+
+    /**
+     * Get the maximum number of storage tasks that can wait for a storage thread.
+     *
+     * @return size of the queue of storage tasks.
+     */
+    public int getStorageQueueSize() {
+        return Math.max(1, this.getConfig().getInt("storage queue size", 1000));
+    }
+
     /**
      * Get the number of days after which Autorank can remove an old backup.
      *
@@ -5,6 +5,8 @@ import me.armar.plugins.autorank.pathbuilder.builders.RequirementBuilder;
 import me.armar.plugins.autorank.pathbuilder.builders.ResultBuilder;
 import me.armar.plugins.autorank.pathbuilder.requirement.AbstractRequirement;
 import me.armar.plugins.autorank.pathbuilder.result.AbstractResult;
+import me.armar.plugins.autorank.storage.PlayTimeStorageProvider;
+import me.armar.plugins.autorank.storage.StorageExecutor;
 
 import java.io.BufferedWriter;
 import java.io.File;
@@ -120,6 +122,37 @@ public class Debugger {
             out.write("");
             out.newLine();
 
+            out.write("Storage providers: ");
+            out.newLine();
+            for (String storageProviderName : plugin.getPlayTimeStorageManager().getActiveStorageProviders()) {
+                PlayTimeStorageProvider storageProvider =
+                        plugin.getPlayTimeStorageManager().getActiveStorageProvider(storageProviderName);
+
+                out.write(storageProviderName);
+                out.newLine();
+
+                for (String statistic : storageProvider.getDebugStatistics()) {
+                    out.write("  " + statistic);
+                    out.newLine();
+                }
+            }
+
+            StorageExecutor storageExecutor = plugin.getPlayTimeStorageManager().getStorageExecutor();
+
+            out.write("Storage executor: " + storageExecutor.getActiveThreads() + " active threads, " +
+                    storageExecutor.getQueueDepth() + " queued tasks, " + storageExecutor.getSubmittedTasks() +
+                    " submitted tasks");
+            out.newLine();
+            out.write(String.format("  Wait time: average %.2f ms, max %.2f ms", storageExecutor.getAverageWaitTime(),
+                    storageExecutor.getMaxWaitTime()));
+            out.newLine();
+            out.write("  Tasks run by submitter: " + storageExecutor.getCallerRunTasks() + ", handed to scheduler: " +
+                    storageExecutor.getOverflowTasks());
+            out.newLine();
+
+            out.write("");
+            out.newLine();
+
             out.write("Java version: " + System.getProperty("java.version"));
             out.newLine();
             out.write("");
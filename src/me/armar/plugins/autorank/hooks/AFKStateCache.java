@@ -0,0 +1,180 @@
+package me.armar.plugins.autorank.hooks;
+
+import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.listeners.EssentialsAFKListener;
+import me.armar.plugins.autorank.util.AutorankTools;
+import me.staartvin.utils.pluginlibrary.autorank.Library;
+import me.staartvin.utils.pluginlibrary.autorank.hooks.LibraryHook;
+import me.staartvin.utils.pluginlibrary.autorank.hooks.afkmanager.AFKManager;
+import org.bukkit.entity.Player;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class keeps track of whether players are AFK, so checking it only reads a flag. The flags are updated by the
+ * events of the AFK plugin if it has them (EssentialsX), and otherwise by asking the AFK plugin about all online
+ * players every couple of seconds.
+ * <br>
+ * <br>
+ * Besides the flag, the time at which a player went AFK is recorded. This is used to take the exact time a player
+ * has been AFK out of their play time, instead of skipping all time since their last update.
+ */
+public class AFKStateCache {
+
+    // Number of seconds between two polls of an AFK plugin that has no events.
+    private static final int POLL_INTERVAL = 5;
+
+    private final Autorank plugin;
+
+    private final Map<UUID, AFKState> states = new ConcurrentHashMap<>();
+
+    // AFK plugin that is used, or null if there is none.
+    private AFKManager afkManager;
+
+    public AFKStateCache(Autorank instance) {
+        this.plugin = instance;
+    }
+
+    /**
+     * Find the AFK plugin that should be used and start keeping track of it. This should be called after the
+     * libraries of Autorank have been loaded.
+     */
+    public void start() {
+        if (!plugin.getSettingsConfig().useAFKIntegration()) return;
+
+        afkManager = findAFKManager().orElse(null);
+
+        if (plugin.getServer().getPluginManager().isPluginEnabled("Essentials")) {
+            plugin.getServer().getPluginManager().registerEvents(new EssentialsAFKListener(plugin, this), plugin);
+
+            plugin.debugMessage("Using AFK events of Essentials");
+        } else if (afkManager != null) {
+            plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::pollAFKManager,
+                    AutorankTools.TICKS_PER_SECOND * POLL_INTERVAL, AutorankTools.TICKS_PER_SECOND * POLL_INTERVAL);
+        } else {
+            return;
+        }
+
+        // Players may already be AFK when we start.
+        if (afkManager != null) {
+            pollAFKManager();
+        }
+    }
+
+    /**
+     * Check whether a player is AFK.
+     *
+     * @param uuid UUID of the player
+     * @return true if the player is AFK, false otherwise.
+     */
+    public boolean isAFK(UUID uuid) {
+        AFKState state = states.get(uuid);
+
+        return state != null && state.afk;
+    }
+
+    /**
+     * Set whether a player is AFK. If the player goes AFK or comes back, the time is recorded.
+     *
+     * @param uuid UUID of the player
+     * @param afk  Whether the player is AFK
+     */
+    public void setAFK(UUID uuid, boolean afk) {
+        AFKState state = states.computeIfAbsent(uuid, id -> new AFKState());
+
+        synchronized (state) {
+            if (state.afk == afk) return;
+
+            long now = System.currentTimeMillis();
+
+            if (afk) {
+                state.afkSince = now;
+            } else {
+                state.afkMillis += now - state.afkSince;
+            }
+
+            state.afk = afk;
+        }
+    }
+
+    /**
+     * Take the time that a player has been AFK since the last time this method was called for the player. If the
+     * player is still AFK, the time up to now is included.
+     *
+     * @param uuid UUID of the player
+     * @return number of milliseconds the player was AFK.
+     */
+    public long takeAFKMillis(UUID uuid) {
+        AFKState state = states.get(uuid);
+
+        if (state == null) return 0;
+
+        synchronized (state) {
+            long afkMillis = state.afkMillis;
+
+            state.afkMillis = 0;
+
+            if (state.afk) {
+                long now = System.currentTimeMillis();
+
+                afkMillis += now - state.afkSince;
+                state.afkSince = now;
+            }
+
+            return afkMillis;
+        }
+    }
+
+    /**
+     * Forget the AFK state of a player, for example when they leave.
+     *
+     * @param uuid UUID of the player
+     */
+    public void removePlayer(UUID uuid) {
+        states.remove(uuid);
+    }
+
+    private void pollAFKManager() {
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            UUID uuid = player.getUniqueId();
+
+            setAFK(uuid, afkManager.isAFK(uuid));
+        }
+    }
+
+    private Optional<AFKManager> findAFKManager() {
+        DependencyManager dependencyManager = plugin.getDependencyManager();
+
+        for (Library library : Library.values()) {
+            Optional<LibraryHook> optional = dependencyManager.getLibraryHook(library);
+
+            // It seems that the library is not loaded.
+            if (!optional.isPresent()) continue;
+
+            LibraryHook libraryHook = optional.get();
+
+            // If this plugin cannot check for AFK, skip it.
+            if (!(libraryHook instanceof AFKManager)) continue;
+
+            // Check if the library is available.
+            if (!libraryHook.isHooked()) continue;
+
+            plugin.debugMessage("Using " + library.getHumanPluginName() + " for AFK");
+
+            return Optional.of((AFKManager) libraryHook);
+        }
+
+        return Optional.empty();
+    }
+
+    private static class AFKState {
+        private volatile boolean afk = false;
+        // Time (in ms) at which the player went AFK, or up to which their AFK time has been taken.
+        private long afkSince;
+        // Time (in ms) the player was AFK that has not been taken yet, not counting the current AFK period.
+        private long afkMillis = 0;
+    }
+}
@@ -9,7 +9,6 @@ import me.staartvin.utils.pluginlibrary.autorank.PluginLibrary;
 import me.staartvin.utils.pluginlibrary.autorank.hooks.LibraryHook;
 import me.staartvin.utils.pluginlibrary.autorank.hooks.QuestsAlternative;
 import me.staartvin.utils.pluginlibrary.autorank.hooks.QuestsHook;
-import me.staartvin.utils.pluginlibrary.autorank.hooks.afkmanager.AFKManager;
 import org.bukkit.entity.Player;
 
 import java.util.HashMap;
@@ -27,9 +26,11 @@ public class DependencyManager {
             DependencyHandler>();
     private final Autorank plugin;
     private PluginLibrary pluginLibrary;
+    private final AFKStateCache afkStateCache;
 
     public DependencyManager(final Autorank instance) {
         plugin = instance;
+        afkStateCache = new AFKStateCache(instance);
 
         // Register handlers
         handlers.put(AutorankDependency.STATZ, new StatzAPIHandler(instance));
@@ -61,32 +62,16 @@ public class DependencyManager {
      * @return true if the player is suspected of being AFK, false otherwise.
      */
     public boolean isAFK(final Player player) {
-        if (!plugin.getSettingsConfig().useAFKIntegration()) {
-            return false;
-        }
-
-        for (Library library : Library.values()) {
-            Optional<LibraryHook> optional = this.getLibraryHook(library);
-
-            // It seems that the library is not loaded.
-            if (!optional.isPresent()) continue;
-
-            LibraryHook libraryHook = optional.get();
-
-            // If this plugin cannot check for AFK, skip it.
-            if (!(libraryHook instanceof AFKManager)) continue;
-
-            // Check if the library is available.
-            if (!libraryHook.isHooked()) continue;
-
-            plugin.debugMessage("Using " + library.getHumanPluginName() + " for AFK");
-
-            // We found a library that supports checking AFK, so we use it.
-            return ((AFKManager) libraryHook).isAFK(player.getUniqueId());
-        }
+        return afkStateCache.isAFK(player.getUniqueId());
+    }
 
-        // No suitable plugin found
-        return false;
+    /**
+     * Get the cache that keeps track of which players are AFK.
+     *
+     * @return the {@linkplain AFKStateCache} of Autorank.
+     */
+    public AFKStateCache getAFKStateCache() {
+        return afkStateCache;
     }
 
     /**
@@ -124,6 +109,9 @@ public class DependencyManager {
 
         plugin.getLogger().info("Loaded libraries and dependencies");
 
+        // Start keeping track of AFK players now that the AFK plugin can be found.
+        afkStateCache.start();
+
         // After loading dependencies, search permissions plugin
         plugin.getPermPlugHandler().searchPermPlugin();
     }
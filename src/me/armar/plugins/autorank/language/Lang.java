@@ -241,6 +241,14 @@ public enum Lang {
      * &a-------- Leaderboard (Weekly time) --------
      */
     LEADERBOARD_HEADER_WEEKLY("leaderboard-header-weekly", "&a-------- Leaderboard (Weekly time) --------"),
+    /**
+     * &cThere are no players on page {0} of the leaderboard.
+     */
+    LEADERBOARD_PAGE_EMPTY("leaderboard-page-empty", "&cThere are no players on page {0} of the leaderboard."),
+    /**
+     * &a------------ Page {0} ------------
+     */
+    LEADERBOARD_PAGE_FOOTER("leaderboard-page-footer", "&a------------ Page {0} ------------"),
     /**
      * Be at {0}.
      */
@@ -347,6 +355,10 @@ public enum Lang {
      * and now completed his path.
      */
     COMPLETED_PATH_NOW("completed-path-now", " and now completed his path."),
+    /**
+     * Play for at least {0} in the last {1} days.
+     */
+    RECENT_TIME_REQUIREMENT("recent-time-requirement", "Play for at least {0} in the last {1} days."),
     /**
      * Progress of requirement {0}:
      */
@@ -661,6 +673,15 @@ public enum Lang {
         LANG = config;
     }
 
+    /**
+     * Get the {@code FileConfiguration} that is used.
+     *
+     * @return the config that the values are read from.
+     */
+    public static FileConfiguration getFile() {
+        return LANG;
+    }
+
     /**
      * Get the value in the config with certain arguments.
      *
@@ -2,14 +2,14 @@ package me.armar.plugins.autorank.leaderboard;
 
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.playerchecker.ExemptionIndex;
 import me.armar.plugins.autorank.storage.PlayTimeStorageProvider;
+import me.armar.plugins.autorank.storage.RankedIndex;
 import me.armar.plugins.autorank.storage.TimeType;
-import me.armar.plugins.autorank.util.AutorankTools;
 import me.armar.plugins.autorank.util.uuid.UUIDManager;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 
-import java.text.DecimalFormat;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.CompletableFuture;
@@ -18,7 +18,9 @@ import java.util.concurrent.ExecutionException;
 /**
  * This class is used to handle all leaderboard things. <br>
  * When a player calls /ot leaderboard, it will show the currently cached
- * leaderboard. <br>
+ * leaderboard. If all time of the players is written by this server and is ranked
+ * in memory, the leaderboard is created from the ranking instead, so it is always
+ * up to date. <br>
  * <i>/ot leaderboard force</i> can be used to forcefully update the current
  * leaderboard. <br>
  * <i>/ot leaderboard broadcast</i> can be used to broadcast the leaderboard
@@ -34,6 +36,8 @@ public class LeaderboardHandler {
     private final Autorank plugin;
     private String layout = "&6&r | &b&p - &7&d %day%, &h %hour% and &m %minute%.";
     private int leaderboardLength = 10;
+    // Compiled layout of the lines of players, see getLineTemplate().
+    private volatile LeaderboardLineTemplate lineTemplate;
 
     public LeaderboardHandler(final Autorank plugin) {
         this.plugin = plugin;
@@ -72,186 +76,45 @@ public class LeaderboardHandler {
      * @param type Type of leaderboard
      */
     public void broadcastLeaderboard(final TimeType type) {
-        if (shouldUpdateLeaderboard(type)) {
+        if (isRankedIndexUsed(type)) {
+            // The ranked index is always up to date, so only the messages have to be created.
+            createLeaderboardMessages(type).thenAccept(messages -> {
+                for (final String msg : messages) {
+                    plugin.getServer().broadcastMessage(msg);
+                }
+            });
+        } else if (shouldUpdateLeaderboard(type)) {
             // Update leaderboard because it is not valid anymore.
-            // Run async because it uses UUID lookup
-            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-                @Override
-                public void run() {
-                    plugin.debugMessage("Updating leaderboard because it's outdated");
-                    updateLeaderboard(type);
-
-                    // Send them afterwards, not at the same time.
-                    for (final String msg : plugin.getInternalPropertiesConfig().getCachedLeaderboard(type)) {
-                        plugin.getServer().broadcastMessage(ChatColor.translateAlternateColorCodes('&', msg));
-                    }
+            plugin.debugMessage("Updating leaderboard because it's outdated");
+
+            // Send them afterwards, not at the same time.
+            updateLeaderboard(type).thenRun(() -> {
+                for (final String msg : plugin.getInternalPropertiesConfig().getCachedLeaderboard(type)) {
+                    plugin.getServer().broadcastMessage(msg);
                 }
             });
         } else {
             // send them instantly
             for (final String msg : plugin.getInternalPropertiesConfig().getCachedLeaderboard(type)) {
-                plugin.getServer().broadcastMessage(ChatColor.translateAlternateColorCodes('&', msg));
+                plugin.getServer().broadcastMessage(msg);
             }
         }
     }
 
     /**
-     * Get a hashmap, the key is the UUID of a player and the value is time that
-     * player has played. <br>
-     * This map is sorted on player time.
+     * Get the storage provider that is used to build the leaderboard of a given time type. This is the primary
+     * storage provider, unless global time should be used for the total time leaderboard.
      *
-     * @param type TimeType to get the sort for.
-     * @return a sorted map.
+     * @param type TimeType of the leaderboard
+     * @return storage provider to obtain times from.
      */
-    private Map<UUID, Integer> getSortedTimesByUUID(final TimeType type) {
-
-        PlayTimeStorageProvider primaryStorageProvider = plugin.getPlayTimeStorageManager().getPrimaryStorageProvider();
-
-        final List<UUID> uuids = primaryStorageProvider.getStoredPlayers(type);
-
-        final HashMap<UUID, Integer> times = new HashMap<UUID, Integer>();
-
-        int size = uuids.size();
-
-        int lastSentPercentage = 0;
-
-        // Fill unsorted lists
-        for (int i = 0; i < uuids.size(); i++) {
-
-            UUID uuid = uuids.get(i);
-
-            // If UUID is null, we can't do anything with it.
-            if (uuid == null) {
-                continue;
-            }
-
-            // If player is exempted
-            if (plugin.getPlayerChecker().isExemptedFromLeaderboard(uuid)) {
-                continue;
-            }
-
-            DecimalFormat df = new DecimalFormat("#.#");
-            double percentage = ((i * 1.0) / size) * 100;
-            int floored = (int) Math.floor(percentage);
-
-            if (lastSentPercentage != floored && floored % 10 == 0) {
-                lastSentPercentage = floored;
-                plugin.debugMessage("Autorank leaderboard update is at " + df.format(percentage) + "%.");
-            }
-
-            // Use cache on .getTimeOfPlayer() so that we don't refresh all
-            // uuids in existence.
-            if (type == TimeType.TOTAL_TIME) {
-
-                if (plugin.getSettingsConfig().useGlobalTimeInLeaderboard() && plugin.getPlayTimeStorageManager()
-                        .isStorageTypeActive(PlayTimeStorageProvider.StorageType.DATABASE)) {
-
-                    try {
-                        times.put(uuid, plugin.getPlayTimeManager().getGlobalPlayTime(type, uuid).get());
-                    } catch (InterruptedException | ExecutionException e) {
-                        e.printStackTrace();
-                    }
-                } else {
-
-                    try {
-                        times.put(uuid, primaryStorageProvider.getPlayerTime(type, uuid).get());
-                    } catch (InterruptedException | ExecutionException e) {
-                        e.printStackTrace();
-                    }
-                }
-            } else {
-                try {
-                    times.put(uuid, primaryStorageProvider.getPlayerTime(type, uuid).get());
-                } catch (InterruptedException | ExecutionException e) {
-                    e.printStackTrace();
-                }
-            }
+    private PlayTimeStorageProvider getLeaderboardStorageProvider(final TimeType type) {
+        if (type == TimeType.TOTAL_TIME && plugin.getSettingsConfig().useGlobalTimeInLeaderboard() && plugin
+                .getPlayTimeStorageManager().isStorageTypeActive(PlayTimeStorageProvider.StorageType.DATABASE)) {
+            return plugin.getPlayTimeStorageManager().getStorageProvider(PlayTimeStorageProvider.StorageType.DATABASE);
         }
 
-        // Sort all values
-
-        return LeaderboardHandler.sortByValue(times);
-    }
-
-    private Map<String, Integer> getSortedTimesByNames(final TimeType type) {
-
-        PlayTimeStorageProvider primaryStorageProvider = plugin.getPlayTimeStorageManager().getPrimaryStorageProvider();
-
-        final List<String> playerNames = plugin.getUUIDStorage().getStoredPlayerNames();
-
-        final Map<String, Integer> times = new HashMap<String, Integer>();
-
-        int size = playerNames.size();
-
-        int lastSentPercentage = 0;
-
-        // Fill unsorted lists
-        for (int i = 0; i < playerNames.size(); i++) {
-
-            String playerName = playerNames.get(i);
-
-            if (playerName == null) {
-                continue;
-            }
-
-            UUID uuid = null;
-            try {
-                uuid = UUIDManager.getUUID(playerName).get();
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
-            }
-
-            if (uuid == null) {
-                continue;
-            }
-
-            // If player is exempted
-            if (plugin.getPlayerChecker().isExemptedFromLeaderboard(uuid)) {
-                continue;
-            }
-
-            DecimalFormat df = new DecimalFormat("#.#");
-            double percentage = ((i * 1.0) / size) * 100;
-            int floored = (int) Math.floor(percentage);
-
-            if (lastSentPercentage != floored) {
-                lastSentPercentage = floored;
-                plugin.debugMessage("Autorank leaderboard update is at " + df.format(percentage) + "%.");
-            }
-
-            // Use cache on .getTimeOfPlayer() so that we don't refresh all
-            // uuids in existence.
-            if (type == TimeType.TOTAL_TIME) {
-
-                if (plugin.getSettingsConfig().useGlobalTimeInLeaderboard() && plugin.getPlayTimeStorageManager()
-                        .isStorageTypeActive(PlayTimeStorageProvider.StorageType.DATABASE)) {
-
-                    try {
-                        times.put(playerName, plugin.getPlayTimeManager().getGlobalPlayTime(type, uuid).get());
-                    } catch (InterruptedException | ExecutionException e) {
-                        e.printStackTrace();
-                    }
-                } else {
-                    try {
-                        times.put(playerName, primaryStorageProvider.getPlayerTime(type, uuid).get());
-                    } catch (InterruptedException | ExecutionException e) {
-                        e.printStackTrace();
-                    }
-                }
-            } else {
-                try {
-                    times.put(playerName, primaryStorageProvider.getPlayerTime(type, uuid).get());
-                } catch (InterruptedException | ExecutionException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        // Sort all values
-        // final Map<String, Integer> sortedMap = sortByComparatorString(times,
-        // false);
-
-        return LeaderboardHandler.sortByValue(times);
+        return plugin.getPlayTimeStorageManager().getPrimaryStorageProvider();
     }
 
     /**
@@ -261,25 +124,46 @@ public class LeaderboardHandler {
      * @param type   Type of leaderboard to send.
      */
     public void sendLeaderboard(final CommandSender sender, final TimeType type) {
-        if (shouldUpdateLeaderboard(type)) {
-            // Update leaderboard because it is not valid anymore.
-            // Run async because it uses UUID lookup
-            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
-                @Override
-                public void run() {
-                    plugin.debugMessage("Updating leaderboard because it's outdated");
-                    updateLeaderboard(type);
-
-                    // Send them afterwards, not at the same time.
-                    sendMessages(sender, type);
+        if (isRankedIndexUsed(type)) {
+            // The ranked index is always up to date, so only the messages have to be created.
+            createLeaderboardMessages(type).thenAccept(messages -> {
+                for (final String msg : messages) {
+                    sender.sendMessage(ChatColor.GREEN + msg);
                 }
             });
+        } else if (shouldUpdateLeaderboard(type)) {
+            // Update leaderboard because it is not valid anymore.
+            plugin.debugMessage("Updating leaderboard because it's outdated");
+
+            // Send them afterwards, not at the same time.
+            updateLeaderboard(type).thenRun(() -> sendMessages(sender, type));
         } else {
             // send them instantly
             sendMessages(sender, type);
         }
     }
 
+    /**
+     * Send a page of the leaderboard to a {@linkplain CommandSender}. Only the first page is cached, other pages
+     * are created when they are requested.
+     *
+     * @param sender Sender to send it to.
+     * @param type   Type of leaderboard to send.
+     * @param page   Page of the leaderboard to send, starting at 1.
+     */
+    public void sendLeaderboard(final CommandSender sender, final TimeType type, final int page) {
+        if (page <= 1) {
+            sendLeaderboard(sender, type);
+            return;
+        }
+
+        createLeaderboardMessages(type, page).thenAccept(messages -> {
+            for (final String msg : messages) {
+                sender.sendMessage(ChatColor.GREEN + msg);
+            }
+        });
+    }
+
     /**
      * Send the given message to a {@linkplain CommandSender}.
      *
@@ -287,11 +171,29 @@ public class LeaderboardHandler {
      * @param type   Type of leaderboard to send
      */
     public void sendMessages(final CommandSender sender, final TimeType type) {
+        // Colour codes are translated when the leaderboard is created, so the lines are sent as they are.
         for (final String msg : plugin.getInternalPropertiesConfig().getCachedLeaderboard(type)) {
-            AutorankTools.sendColoredMessage(sender, msg);
+            sender.sendMessage(ChatColor.GREEN + msg);
         }
     }
 
+    /**
+     * Check whether a leaderboard is created from the ranked index of the primary storage provider (see
+     * {@link me.armar.plugins.autorank.storage.PlayTimeStorageManager#getRankedIndex(TimeType)}). This is only
+     * done if the primary storage provider is local (see
+     * {@link me.armar.plugins.autorank.storage.PlayTimeStorageManager#isPrimaryStorageProviderLocal()}), as every
+     * change then passes through the index and the leaderboard does not have to be cached. Time that other servers
+     * write to a database is not in the index, so such a leaderboard is read from the database and cached instead.
+     *
+     * @param type Type of leaderboard
+     * @return true if the leaderboard is created from the ranked index.
+     */
+    private boolean isRankedIndexUsed(TimeType type) {
+        return plugin.getPlayTimeStorageManager().isPrimaryStorageProviderLocal()
+                && getLeaderboardStorageProvider(type) == plugin.getPlayTimeStorageManager().getPrimaryStorageProvider()
+                && plugin.getPlayTimeStorageManager().getRankedIndex(type).isPresent();
+    }
+
     /**
      * Check whether we should update a leaderboard.
      *
@@ -306,112 +208,131 @@ public class LeaderboardHandler {
     }
 
     /**
-     * Update all leaderboards
+     * Update all leaderboards that are outdated. The storage is read only once for all of them: the best players of
+     * every type of time are collected in a single pass, after which the leaderboards are created in parallel.
      */
     public void updateAllLeaderboards() {
 
         plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
             @Override
             public void run() {
-                plugin.debugMessage("Updating all leaderboards forcefully");
+                // Outdated leaderboards, grouped by the storage provider they are read from.
+                Map<PlayTimeStorageProvider, Set<TimeType>> outdatedLeaderboards = new HashMap<>();
+
                 for (final TimeType type : TimeType.values()) {
-                    if (!shouldUpdateLeaderboard(type))
+                    if (isRankedIndexUsed(type) || !shouldUpdateLeaderboard(type))
                         continue;
 
-                    updateLeaderboard(type);
+                    outdatedLeaderboards.computeIfAbsent(getLeaderboardStorageProvider(type),
+                            provider -> EnumSet.noneOf(TimeType.class)).add(type);
                 }
+
+                if (outdatedLeaderboards.isEmpty()) {
+                    return;
+                }
+
+                plugin.debugMessage("Updating all leaderboards forcefully");
+
+                long startTime = System.currentTimeMillis();
+
+                List<CompletableFuture<Void>> updates = new ArrayList<>();
+
+                outdatedLeaderboards.forEach((storageProvider, types) ->
+                        updates.addAll(updateLeaderboards(storageProvider, types)));
+
+                CompletableFuture.allOf(updates.toArray(new CompletableFuture[0])).join();
+
+                plugin.debugMessage("Updated " + updates.size() + " leaderboard(s) in " +
+                        (System.currentTimeMillis() - startTime) + " ms");
             }
         });
     }
 
     /**
-     * Forcefully update a leaderboard (ignoring cached versions).
+     * Update the leaderboards of the given types of time, which are all read from the given storage provider. The
+     * best players of all types are requested at once, after which the names of the players on each leaderboard are
+     * looked up.
      *
-     * @param type Type of leaderboard to update.
+     * @param storageProvider Storage provider to read the time of players from
+     * @param types           Types of leaderboards to update
+     * @return a future for every leaderboard that is being created.
      */
-    public void updateLeaderboard(final TimeType type) {
-        plugin.debugMessage(ChatColor.BLUE + "Updating leaderboard '" + type.toString() + "'!");
+    private List<CompletableFuture<Void>> updateLeaderboards(PlayTimeStorageProvider storageProvider,
+                                                             Set<TimeType> types) {
+        ExemptionIndex exemptionIndex = plugin.getPlayerChecker().getExemptionIndex();
 
-        // Store messages to make leaderboard
-        final List<String> stringList = new ArrayList<String>();
+        // Request enough players to fill the leaderboards, even if all exempted players are among the best.
+        int limit = leaderboardLength +
+                exemptionIndex.getNumberOfExemptedPlayers(ExemptionIndex.ExemptionType.LEADERBOARD);
 
-        if (type == TimeType.TOTAL_TIME) {
-            stringList.add(Lang.LEADERBOARD_HEADER_ALL_TIME.getConfigValue());
-        } else if (type == TimeType.DAILY_TIME) {
-            stringList.add(Lang.LEADERBOARD_HEADER_DAILY.getConfigValue());
-        } else if (type == TimeType.WEEKLY_TIME) {
-            stringList.add(Lang.LEADERBOARD_HEADER_WEEKLY.getConfigValue());
-        } else if (type == TimeType.MONTHLY_TIME) {
-            stringList.add(Lang.LEADERBOARD_HEADER_MONTHLY.getConfigValue());
-        }
+        long startTime = System.currentTimeMillis();
+
+        Map<TimeType, Map<UUID, Integer>> topPlayers;
 
-        // Only store the users that should appear on the leaderboard, along with their time.
-        AutorankLeaderboard finalLeaderboard = null;
         try {
-            finalLeaderboard = getSortedLeaderboard(type).get();
+            topPlayers = storageProvider.getTopPlayers(types, limit).get();
         } catch (InterruptedException | ExecutionException e) {
             e.printStackTrace();
+            return Collections.emptyList();
         }
 
-        // The leaderboard couldn't get created for some reason.
-        if (finalLeaderboard == null) {
-            return;
-        }
-
-        Iterator<Entry<String, Integer>> iterator = finalLeaderboard.getLeaderboard().entrySet().iterator();
+        plugin.debugMessage("Read the best " + limit + " players of " + types + " from " + storageProvider.getName()
+                + " in " + (System.currentTimeMillis() - startTime) + " ms");
 
-        for (int i = 0; i < leaderboardLength && iterator.hasNext(); i++) {
+        List<CompletableFuture<Void>> updates = new ArrayList<>();
 
-            final Entry<String, Integer> entry = iterator.next();
+        topPlayers.forEach((type, players) -> {
+            long leaderboardStartTime = System.currentTimeMillis();
 
-            int time = entry.getValue();
+            Map<UUID, Integer> leaderboardPlayers = new LinkedHashMap<>();
 
-            String message = layout.replace("&p", entry.getKey());
+            for (Entry<UUID, Integer> entry : players.entrySet()) {
+                if (leaderboardPlayers.size() >= leaderboardLength) break;
 
-            // divided by 1440
-            final int days = (time / 1440);
-
-            // (time - days) / 60
-            final int hours = (time - (days * 1440)) / 60;
+                // If player is exempted
+                if (exemptionIndex.isExempted(ExemptionIndex.ExemptionType.LEADERBOARD, entry.getKey())) {
+                    continue;
+                }
 
-            // (time - days - hours)
-            final int minutes = time - (days * 1440) - (hours * 60);
+                leaderboardPlayers.put(entry.getKey(), entry.getValue());
+            }
 
-            message = message.replace("&r", Integer.toString(i + 1));
-            message = message.replace("&tm", Integer.toString(time));
-            message = message.replace("&th", Integer.toString(time / 60));
-            message = message.replace("&d", Integer.toString(days));
-            time = time - ((time / 1440) * 1440);
-            message = message.replace("&h", Integer.toString(hours));
-            time = time - ((time / 60) * 60);
+            updates.add(createLeaderboardMessages(type, 1, leaderboardPlayers).thenAccept(messages -> {
+                cacheLeaderboard(type, messages);
 
-            message = message.replace("&m", Integer.toString(minutes));
-            message = ChatColor.translateAlternateColorCodes('&', message);
+                plugin.debugMessage("Updated leaderboard '" + type + "' in " +
+                        (System.currentTimeMillis() - leaderboardStartTime) + " ms");
+            }));
+        });
 
-            // Correctly show plural or singular format.
-            if (days > 1 || days == 0) {
-                message = message.replace("%day%", Lang.DAY_PLURAL.getConfigValue());
-            } else {
-                message = message.replace("%day%", Lang.DAY_SINGULAR.getConfigValue());
-            }
+        return updates;
+    }
 
-            if (hours > 1 || hours == 0) {
-                message = message.replace("%hour%", Lang.HOUR_PLURAL.getConfigValue());
-            } else {
-                message = message.replace("%hour%", Lang.HOUR_SINGULAR.getConfigValue());
-            }
+    /**
+     * Forcefully update a leaderboard (ignoring cached versions). The leaderboard is created without waiting for
+     * the storage, so this can be called from any thread.
+     *
+     * @param type Type of leaderboard to update.
+     * @return a future that completes when the leaderboard has been cached.
+     */
+    public CompletableFuture<Void> updateLeaderboard(final TimeType type) {
+        plugin.debugMessage(ChatColor.BLUE + "Updating leaderboard '" + type.toString() + "'!");
 
-            if (minutes > 1 || minutes == 0) {
-                message = message.replace("%minute%", Lang.MINUTE_PLURAL.getConfigValue());
-            } else {
-                message = message.replace("%minute%", Lang.MINUTE_SINGULAR.getConfigValue());
-            }
+        return createLeaderboardMessages(type).thenAccept(messages -> cacheLeaderboard(type, messages));
+    }
 
-            stringList.add(message);
+    /**
+     * Store the messages of a leaderboard, so they can be shown until the leaderboard is outdated.
+     *
+     * @param type       Type of leaderboard
+     * @param stringList Messages of the leaderboard
+     */
+    private void cacheLeaderboard(final TimeType type, final List<String> stringList) {
+        // The leaderboard couldn't get created for some reason.
+        if (stringList.isEmpty()) {
+            return;
         }
 
-        stringList.add(Lang.LEADERBOARD_FOOTER.getConfigValue());
-
         // Cache this leaderboard
         plugin.getInternalPropertiesConfig().setCachedLeaderboard(type, stringList);
 
@@ -420,52 +341,178 @@ public class LeaderboardHandler {
     }
 
     /**
-     * Get the sorted leaderboard of play time for a specific time type. Note that the leaderboard is limited to
-     * {@link LeaderboardHandler#leaderboardLength} entries.
+     * Create the messages that show the first page of a leaderboard.
      *
-     * @param type Type of time to get the leaderboard for.
-     * @return sorted leaderboard.
+     * @param type Type of leaderboard to create.
+     * @return messages of the leaderboard, or an empty list if it could not be created.
      */
-    private CompletableFuture<AutorankLeaderboard> getSortedLeaderboard(TimeType type) {
-        return CompletableFuture.supplyAsync(() -> {
+    private CompletableFuture<List<String>> createLeaderboardMessages(final TimeType type) {
+        return createLeaderboardMessages(type, 1);
+    }
 
-            AutorankLeaderboard finalLeaderboard = new AutorankLeaderboard(type);
+    /**
+     * Create the messages that show a page of a leaderboard. Only the players on the page are looked up.
+     *
+     * @param type Type of leaderboard to create.
+     * @param page Page of the leaderboard, starting at 1.
+     * @return messages of the leaderboard, or an empty list if it could not be created.
+     */
+    private CompletableFuture<List<String>> createLeaderboardMessages(final TimeType type, final int page) {
+        // Only the players that should appear on this page, along with their time.
+        return getLeaderboardPage(type, page).thenCompose(players -> createLeaderboardMessages(type, page, players))
+                .exceptionally(throwable -> {
+                    throwable.printStackTrace();
+                    // The leaderboard couldn't get created for some reason.
+                    return Collections.emptyList();
+                });
+    }
 
-            // We can ask all UUIDs in the uuids file and sort the playtime
-            // After we sorted the playtime, we collect the playernames of the top x (leaderboard length variable).
-            final Map<UUID, Integer> sortedPlaytimes = getSortedTimesByUUID(type);
+    /**
+     * Create the messages that show a page of a leaderboard with the given players.
+     *
+     * @param type    Type of leaderboard to create.
+     * @param page    Page of the leaderboard, starting at 1.
+     * @param players Players on the page and their time, sorted on time (descending).
+     * @return messages of the leaderboard, once the names of the players have been looked up.
+     */
+    private CompletableFuture<List<String>> createLeaderboardMessages(final TimeType type, final int page,
+                                                                      final Map<UUID, Integer> players) {
+        // Store messages to make leaderboard
+        final List<String> stringList = new ArrayList<String>();
+
+        if (type == TimeType.TOTAL_TIME) {
+            stringList.add(Lang.LEADERBOARD_HEADER_ALL_TIME.getConfigValue());
+        } else if (type == TimeType.DAILY_TIME) {
+            stringList.add(Lang.LEADERBOARD_HEADER_DAILY.getConfigValue());
+        } else if (type == TimeType.WEEKLY_TIME) {
+            stringList.add(Lang.LEADERBOARD_HEADER_WEEKLY.getConfigValue());
+        } else if (type == TimeType.MONTHLY_TIME) {
+            stringList.add(Lang.LEADERBOARD_HEADER_MONTHLY.getConfigValue());
+        }
 
-            Iterator<Entry<UUID, Integer>> itr = sortedPlaytimes.entrySet().iterator();
+        if (players.isEmpty() && page > 1) {
+            return CompletableFuture.completedFuture(Collections.singletonList(
+                    Lang.LEADERBOARD_PAGE_EMPTY.getConfigValue(page)));
+        }
 
-            plugin.debugMessage("Size leaderboard: " + sortedPlaytimes.size());
+        LeaderboardLineTemplate template = getLineTemplate();
 
-            for (int i = 0; i < leaderboardLength && itr.hasNext(); i++) {
-                final Entry<UUID, Integer> entry = itr.next();
+        // Look up the names of all players on the page at once, and create the lines once they are known.
+        return UUIDManager.getPlayerNames(new ArrayList<>(players.keySet())).exceptionally(throwable -> {
+            throwable.printStackTrace();
+            return Collections.emptyMap();
+        }).thenApply(names -> {
+            int rank = (page - 1) * leaderboardLength + 1;
 
-                final UUID uuid = entry.getKey();
+            for (Entry<UUID, Integer> entry : players.entrySet()) {
+                String name = names.get(entry.getKey());
 
-                // Grab playername from here so it doesn't load all player names
-                // ever.
-                // Get the cached value of this uuid to improve performance
-                String name = null;
-                try {
-                    name = UUIDManager.getPlayerName(uuid).get();
-                } catch (InterruptedException | ExecutionException e) {
-                    e.printStackTrace();
-                }
+                // Show the UUID if the name is not known, so the ranks of the other players stay right.
+                stringList.add(template.getLine(type, rank++, entry.getKey(), name == null ?
+                        entry.getKey().toString() : name, entry.getValue()));
+            }
+
+            stringList.add(page > 1 ? Lang.LEADERBOARD_PAGE_FOOTER.getConfigValue(page) :
+                    Lang.LEADERBOARD_FOOTER.getConfigValue());
 
-                // No cached name found, don't use this name.
-                if (name == null)
+            return stringList;
+        });
+    }
+
+    /**
+     * Get the template of the lines of players on the leaderboard. The template is compiled again if the language
+     * has been reloaded since it was compiled.
+     *
+     * @return template of the lines of players.
+     */
+    private LeaderboardLineTemplate getLineTemplate() {
+        LeaderboardLineTemplate template = lineTemplate;
+
+        if (template == null || !template.isCurrentLanguage()) {
+            template = new LeaderboardLineTemplate(layout);
+            lineTemplate = template;
+        }
+
+        return template;
+    }
+
+    /**
+     * Get a page of the leaderboard of a specific time type. Pages have {@link LeaderboardHandler#leaderboardLength}
+     * entries. The players are read from the ranked index if it can be used, and otherwise from the storage
+     * provider, so only the players up to the requested page are loaded. Exempted players are skipped.
+     *
+     * @param type Type of time to get the leaderboard for.
+     * @param page Page of the leaderboard, starting at 1.
+     * @return an ordered map of the players on the page and their time (in minutes), sorted on time (descending).
+     * The map is empty if there are no players on the page.
+     */
+    public CompletableFuture<Map<UUID, Integer>> getLeaderboardPage(TimeType type, int page) {
+        if (page < 1) return CompletableFuture.completedFuture(new LinkedHashMap<>());
+
+        // Ask for the best players up to the end of the page, plus a bit extra as some players may be exempted.
+        // If we still have too few players, we request the next batch.
+        int batchSize = (page + 1) * leaderboardLength;
+
+        // Requests are chained instead of waited for, so this can be called from a thread of the storage executor.
+        return collectLeaderboardPage(type, page, batchSize, 0, 0, new LinkedHashMap<>());
+    }
+
+    /**
+     * Request a batch of the best players and add the players that belong on a page of the leaderboard. The next
+     * batch is requested if the page is not full yet.
+     *
+     * @param type            Type of time to get the leaderboard for.
+     * @param page            Page of the leaderboard, starting at 1.
+     * @param batchSize       Number of players to request at once.
+     * @param offset          Number of best players that were requested before.
+     * @param position        Number of players that can be shown that we have passed so far.
+     * @param leaderboardPage Players that have been added to the page so far.
+     * @return the players on the page, once there are no more players to request or the page is full.
+     */
+    private CompletableFuture<Map<UUID, Integer>> collectLeaderboardPage(TimeType type, int page, int batchSize,
+                                                                         int offset, int position,
+                                                                         Map<UUID, Integer> leaderboardPage) {
+        Optional<RankedIndex> rankedIndex = isRankedIndexUsed(type) ?
+                plugin.getPlayTimeStorageManager().getRankedIndex(type) : Optional.empty();
+
+        CompletableFuture<Map<UUID, Integer>> request = rankedIndex.isPresent() ?
+                CompletableFuture.completedFuture(rankedIndex.get().getTopPlayers(batchSize, offset)) :
+                getLeaderboardStorageProvider(type).getTopPlayers(type, batchSize, offset);
+
+        return request.exceptionally(throwable -> {
+            throwable.printStackTrace();
+            return Collections.emptyMap();
+        }).thenCompose(topPlayers -> {
+            ExemptionIndex exemptionIndex = plugin.getPlayerChecker().getExemptionIndex();
+
+            // Number of players that are shown before the first player of the page.
+            int start = (page - 1) * leaderboardLength;
+            int nextPosition = position;
+
+            for (Entry<UUID, Integer> entry : topPlayers.entrySet()) {
+                // If player is exempted
+                if (exemptionIndex.isExempted(ExemptionIndex.ExemptionType.LEADERBOARD, entry.getKey())) {
                     continue;
+                }
+
+                if (nextPosition++ < start) continue;
+
+                leaderboardPage.put(entry.getKey(), entry.getValue());
 
-                finalLeaderboard.add(name, entry.getValue());
+                if (leaderboardPage.size() >= leaderboardLength) {
+                    break;
+                }
             }
 
+            // The page is full or there are no more players to request.
+            if (leaderboardPage.size() >= leaderboardLength || topPlayers.size() < batchSize) {
+                plugin.debugMessage("Size of page " + page + " of leaderboard: " + leaderboardPage.size() + " " +
+                        "(requested up to " + (offset + batchSize) + " players)");
 
-            // Sort the leaderboard before returning it.
-            finalLeaderboard.sortLeaderboard();
+                return CompletableFuture.completedFuture(leaderboardPage);
+            }
 
-            return finalLeaderboard;
+            return collectLeaderboardPage(type, page, batchSize, offset + batchSize, nextPosition, leaderboardPage);
         });
     }
 
@@ -0,0 +1,235 @@
+package me.armar.plugins.autorank.leaderboard;
+
+import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.storage.TimeType;
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class renders the line of a player on a leaderboard. The layout of a line (see 'leaderboard layout' in the
+ * Settings.yml) is compiled once into pieces of literal text and slots, so a line is rendered by appending the
+ * pieces to a reused {@link StringBuilder} instead of replacing every placeholder in turn. Colour codes and the
+ * names of units of time are resolved when the template is compiled.
+ * <br>
+ * <br>
+ * Rendered lines are cached for every type of leaderboard and rank. A cached line is used until the player, name or
+ * time at that rank changes. A template belongs to the language it was compiled with (see
+ * {@link #isCurrentLanguage()}), so the cache is dropped with it when the language file is reloaded.
+ */
+public class LeaderboardLineTemplate {
+
+    // Maximum number of lines that are cached for a type of leaderboard.
+    private static final int MAX_CACHED_LINES = 1000;
+
+    // Pieces of the layout. A piece is literal text if it has no slot.
+    private final String[] literals;
+    private final Slot[] slots;
+
+    // Names of the units of time, in the language that the template was compiled with.
+    private final String daySingular, dayPlural, hourSingular, hourPlural, minuteSingular, minutePlural;
+    private final FileConfiguration language;
+
+    private final Map<TimeType, Map<Integer, RenderedLine>> renderedLines = new EnumMap<>(TimeType.class);
+
+    private final ThreadLocal<StringBuilder> builders = ThreadLocal.withInitial(() -> new StringBuilder(64));
+
+    /**
+     * Compile the layout of a line.
+     *
+     * @param layout Layout of a line, with placeholders such as &amp;p (name) and &amp;r (rank)
+     */
+    public LeaderboardLineTemplate(String layout) {
+        List<String> literals = new ArrayList<>();
+        List<Slot> slots = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+
+        int position = 0;
+
+        while (position < layout.length()) {
+            Slot slot = Slot.at(layout, position);
+
+            if (slot == null) {
+                literal.append(layout.charAt(position++));
+                continue;
+            }
+
+            if (literal.length() > 0) {
+                literals.add(ChatColor.translateAlternateColorCodes('&', literal.toString()));
+                slots.add(null);
+                literal.setLength(0);
+            }
+
+            literals.add(null);
+            slots.add(slot);
+            position += slot.placeholder.length();
+        }
+
+        if (literal.length() > 0) {
+            literals.add(ChatColor.translateAlternateColorCodes('&', literal.toString()));
+            slots.add(null);
+        }
+
+        this.literals = literals.toArray(new String[0]);
+        this.slots = slots.toArray(new Slot[0]);
+
+        this.daySingular = Lang.DAY_SINGULAR.getConfigValue();
+        this.dayPlural = Lang.DAY_PLURAL.getConfigValue();
+        this.hourSingular = Lang.HOUR_SINGULAR.getConfigValue();
+        this.hourPlural = Lang.HOUR_PLURAL.getConfigValue();
+        this.minuteSingular = Lang.MINUTE_SINGULAR.getConfigValue();
+        this.minutePlural = Lang.MINUTE_PLURAL.getConfigValue();
+        this.language = Lang.getFile();
+
+        for (TimeType timeType : TimeType.values()) {
+            renderedLines.put(timeType, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Check whether the template was compiled with the language that is currently used.
+     *
+     * @return true if the language has not been reloaded since the template was compiled.
+     */
+    public boolean isCurrentLanguage() {
+        return language == Lang.getFile();
+    }
+
+    /**
+     * Get the line of a player on a leaderboard. The line is only rendered if the row of the leaderboard has
+     * changed since it was last rendered.
+     *
+     * @param type Type of leaderboard
+     * @param rank Position of the player
+     * @param uuid UUID of the player
+     * @param name Name of the player
+     * @param time Time of the player (in minutes)
+     * @return line of the player, with colour codes translated.
+     */
+    public String getLine(TimeType type, int rank, UUID uuid, String name, int time) {
+        Map<Integer, RenderedLine> lines = renderedLines.get(type);
+
+        RenderedLine renderedLine = lines.get(rank);
+
+        if (renderedLine != null && renderedLine.matches(uuid, name, time)) {
+            return renderedLine.line;
+        }
+
+        if (lines.size() >= MAX_CACHED_LINES) {
+            lines.clear();
+        }
+
+        String line = render(rank, name, time);
+
+        lines.put(rank, new RenderedLine(uuid, name, time, line));
+
+        return line;
+    }
+
+    /**
+     * Render the line of a player.
+     *
+     * @param rank Position of the player
+     * @param name Name of the player
+     * @param time Time of the player (in minutes)
+     * @return line of the player.
+     */
+    private String render(int rank, String name, int time) {
+        final int days = time / 1440;
+        final int hours = (time - (days * 1440)) / 60;
+        final int minutes = time - (days * 1440) - (hours * 60);
+
+        StringBuilder builder = builders.get();
+
+        builder.setLength(0);
+
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] == null) {
+                builder.append(literals[i]);
+                continue;
+            }
+
+            switch (slots[i]) {
+                case RANK:
+                    builder.append(rank);
+                    break;
+                case NAME:
+                    builder.append(name);
+                    break;
+                case TOTAL_MINUTES:
+                    builder.append(time);
+                    break;
+                case TOTAL_HOURS:
+                    builder.append(time / 60);
+                    break;
+                case DAYS:
+                    builder.append(days);
+                    break;
+                case HOURS:
+                    builder.append(hours);
+                    break;
+                case MINUTES:
+                    builder.append(minutes);
+                    break;
+                // Correctly show plural or singular format.
+                case DAY_UNIT:
+                    builder.append(days == 1 ? daySingular : dayPlural);
+                    break;
+                case HOUR_UNIT:
+                    builder.append(hours == 1 ? hourSingular : hourPlural);
+                    break;
+                case MINUTE_UNIT:
+                    builder.append(minutes == 1 ? minuteSingular : minutePlural);
+                    break;
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private enum Slot {
+        RANK("&r"), NAME("&p"), TOTAL_MINUTES("&tm"), TOTAL_HOURS("&th"), DAYS("&d"), HOURS("&h"), MINUTES("&m"),
+        DAY_UNIT("%day%"), HOUR_UNIT("%hour%"), MINUTE_UNIT("%minute%");
+
+        private final String placeholder;
+
+        Slot(String placeholder) {
+            this.placeholder = placeholder;
+        }
+
+        /**
+         * Get the slot whose placeholder starts at the given position of the layout.
+         *
+         * @return slot at the position, or null if there is none.
+         */
+        private static Slot at(String layout, int position) {
+            for (Slot slot : values()) {
+                if (layout.startsWith(slot.placeholder, position)) {
+                    return slot;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private static class RenderedLine {
+        private final UUID uuid;
+        private final String name;
+        private final int time;
+        private final String line;
+
+        private RenderedLine(UUID uuid, String name, int time, String line) {
+            this.uuid = uuid;
+            this.name = name;
+            this.time = time;
+            this.line = line;
+        }
+
+        private boolean matches(UUID uuid, String name, int time) {
+            return this.time == time && this.uuid.equals(uuid) && this.name.equals(name);
+        }
+    }
+}
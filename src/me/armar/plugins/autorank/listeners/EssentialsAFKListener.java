@@ -0,0 +1,37 @@
+package me.armar.plugins.autorank.listeners;
+
+import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.hooks.AFKStateCache;
+import net.ess3.api.events.AfkStatusChangeEvent;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+
+/**
+ * This listener will listen to players going AFK or coming back according to Essentials. It is only registered when
+ * Essentials is enabled.
+ *
+ * @author Staartvin
+ */
+public class EssentialsAFKListener implements Listener {
+
+    private final Autorank plugin;
+    private final AFKStateCache afkStateCache;
+
+    public EssentialsAFKListener(final Autorank instance, final AFKStateCache afkStateCache) {
+        this.plugin = instance;
+        this.afkStateCache = afkStateCache;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onAfkStatusChange(final AfkStatusChangeEvent event) {
+        Player player = event.getAffected().getBase();
+
+        if (player == null) return;
+
+        afkStateCache.setAFK(player.getUniqueId(), event.getValue());
+
+        plugin.debugMessage("Player " + player.getName() + " is " + (event.getValue() ? "now" : "no longer") + " AFK");
+    }
+}
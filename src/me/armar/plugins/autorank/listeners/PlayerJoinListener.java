@@ -13,7 +13,6 @@ import org.bukkit.event.player.PlayerJoinEvent;
 
 import java.util.Collection;
 import java.util.Optional;
-import java.util.concurrent.ExecutionException;
 
 /**
  * This listener will listen to players joining and perform actions based on the player.
@@ -24,22 +23,22 @@ public class PlayerJoinListener implements Listener {
 
     private final Autorank plugin;
 
-    public PlayerJoinListener(final Autorank instance) {
+    private final PlayerPreLoginListener preLoginListener;
+
+    public PlayerJoinListener(final Autorank instance, final PlayerPreLoginListener preLoginListener) {
         plugin = instance;
+        this.preLoginListener = preLoginListener;
     }
 
     @EventHandler(priority = EventPriority.HIGH)
     public void onPlayerJoin(final PlayerJoinEvent event) {
         final Player player = event.getPlayer();
 
-        // Refresh uuid of the player
-        try {
-            plugin.getUUIDStorage().storeUUID(player.getName(), player.getUniqueId()).get();
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
+        // Refresh uuid of the player, unless it was already done before joining. Don't wait for it to be stored.
+        if (!preLoginListener.consumePreparedPlayer(player.getUniqueId())) {
+            plugin.getUUIDStorage().storeUUID(player.getName(), player.getUniqueId());
         }
 
-
         // Save whether this player is exempted from the leaderboard.
         plugin.getPlayerChecker().doOfflineExemptionChecks(player);
 
@@ -0,0 +1,124 @@
+package me.armar.plugins.autorank.listeners;
+
+import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.pathbuilder.playerdata.PlayerDataManager;
+import me.armar.plugins.autorank.pathbuilder.playerdata.global.GlobalPlayerDataStorage;
+import me.armar.plugins.autorank.storage.PlayTimeStorageProvider;
+import me.armar.plugins.autorank.storage.TimeType;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This listener will listen to players that are about to join. The pre-login event is called on an async thread, so
+ * it is used to store the UUID of the player and to load their data into the caches before they have joined. This
+ * way, the join event itself does not have to wait for any storage.
+ * <br>
+ * <br>
+ * A player is only remembered until they join. Players that are refused at login are forgotten right away, and
+ * players that never join (for example, because they disconnect first) are forgotten after a minute.
+ *
+ * @author Staartvin
+ */
+public class PlayerPreLoginListener implements Listener {
+
+    // Maximum time (in seconds) to wait for the data of a player to be loaded, so logging in is not held up forever.
+    private static final int PREFETCH_TIMEOUT_SECONDS = 5;
+    // Time (in ms) after which a player whose data was loaded, but who has not joined, is forgotten.
+    private static final long PREPARED_PLAYER_EXPIRY_TIME = TimeUnit.MINUTES.toMillis(1);
+
+    private final Autorank plugin;
+
+    // Players whose data has been loaded, but that have not joined yet, and when their data was loaded.
+    private final Map<UUID, Long> preparedPlayers = new ConcurrentHashMap<>();
+
+    public PlayerPreLoginListener(final Autorank instance) {
+        plugin = instance;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerPreLogin(final AsyncPlayerPreLoginEvent event) {
+
+        // Don't load anything for players that are not allowed to join.
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+
+        UUID uuid = event.getUniqueId();
+
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+
+        // Refresh uuid of the player
+        futures.add(plugin.getUUIDStorage().storeUUID(event.getName(), uuid));
+
+        // Load the play time of every type, so it is cached when the player is checked.
+        for (String providerName : plugin.getPlayTimeStorageManager().getActiveStorageProviders()) {
+            PlayTimeStorageProvider storageProvider =
+                    plugin.getPlayTimeStorageManager().getActiveStorageProvider(providerName);
+
+            if (storageProvider == null) continue;
+
+            for (TimeType timeType : TimeType.values()) {
+                futures.add(storageProvider.getPlayerTime(timeType, uuid));
+            }
+        }
+
+        // Load the paths the player has completed on other servers.
+        plugin.getPlayerDataManager().getDataStorage(PlayerDataManager.PlayerDataStorageType.GLOBAL)
+                .filter(storage -> storage instanceof GlobalPlayerDataStorage)
+                .ifPresent(storage -> futures.add(CompletableFuture.runAsync(() ->
+                        ((GlobalPlayerDataStorage) storage).updateCacheFromRemote(uuid))));
+
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                    .get(PREFETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        } catch (TimeoutException e) {
+            plugin.debugMessage("Could not load data of " + event.getName() + " within " +
+                    PREFETCH_TIMEOUT_SECONDS + " seconds, it will be loaded when needed.");
+        }
+
+        long now = System.currentTimeMillis();
+
+        // Forget players that were prepared, but never joined.
+        preparedPlayers.values().removeIf(preparedAt -> now - preparedAt >= PREPARED_PLAYER_EXPIRY_TIME);
+
+        preparedPlayers.put(uuid, now);
+
+        plugin.debugMessage("Loaded data of " + event.getName() + " before joining.");
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerLogin(final PlayerLoginEvent event) {
+        // The player was refused after pre-login (for example, because of the whitelist or a full server).
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            preparedPlayers.remove(event.getPlayer().getUniqueId());
+        }
+    }
+
+    /**
+     * Check whether the data of a player was loaded before they joined. The player is forgotten afterwards, so this
+     * only returns true once per login.
+     *
+     * @param uuid UUID of the player
+     * @return true if the UUID of the player was stored and their data was loaded, false otherwise.
+     */
+    public boolean consumePreparedPlayer(UUID uuid) {
+        Long preparedAt = preparedPlayers.remove(uuid);
+
+        return preparedAt != null && System.currentTimeMillis() - preparedAt < PREPARED_PLAYER_EXPIRY_TIME;
+    }
+}
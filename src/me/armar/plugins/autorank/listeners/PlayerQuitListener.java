@@ -1,11 +1,13 @@
 package me.armar.plugins.autorank.listeners;
 
 import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.hooks.AFKStateCache;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerQuitEvent;
 
+import java.util.Collections;
 import java.util.UUID;
 
 /**
@@ -28,25 +30,18 @@ public class PlayerQuitListener implements Listener {
         // Stop task that updates the play time of a player
         plugin.getTaskManager().stopUpdatePlayTimeTask(uuid);
 
-        // Check to see when the last time was that we updated the time.
-        long lastPlayTimeUpdate = plugin.getTaskManager().getLastPlayTimeUpdate(uuid);
+        AFKStateCache afkStateCache = plugin.getDependencyManager().getAFKStateCache();
 
-        // Let's check how long it's been since we updated the time of the player.
-        if (lastPlayTimeUpdate > 0) {
+        // Store the whole minutes that were played since the last update, leaving out the time the player was AFK.
+        // Seconds that are left over are discarded, so players that left are not kept in memory.
+        int minutes = plugin.getPlayTimeManager().getPlayTimeAccumulator().stopTracking(uuid,
+                afkStateCache.takeAFKMillis(uuid));
 
-            double difference = (System.currentTimeMillis() - lastPlayTimeUpdate) / 1000.0 / 60;
+        afkStateCache.removePlayer(uuid);
 
-            if (difference > 1.0) {
-
-                // Round to the nearest integer as we store time as an integer.
-                int roundedDiff = (int) Math.round(difference);
-
-                // Add the 'lost' time to the player's current time.
-                plugin.getPlayTimeStorageManager().addPlayerTime(uuid, roundedDiff);
-
-                // Remove the old time.
-                plugin.getTaskManager().setLastPlayTimeUpdate(uuid, -1);
-            }
+        if (minutes > 0) {
+            // Add the 'lost' time to the player's current time.
+            plugin.getPlayTimeManager().addPlayedTime(Collections.singletonMap(uuid, minutes));
         }
 
         // Check any of the exemptions and store them so when the user is offline, we can still check them.
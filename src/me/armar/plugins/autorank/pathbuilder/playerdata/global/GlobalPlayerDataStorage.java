@@ -10,15 +10,10 @@ import me.armar.plugins.autorank.util.AutorankTools;
 import me.armar.plugins.autorank.warningmanager.WarningManager;
 import org.apache.commons.lang.Validate;
 import org.bukkit.ChatColor;
-import org.jetbrains.annotations.NotNull;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.Collection;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 
 public class GlobalPlayerDataStorage implements PlayerDataStorage {
 
@@ -34,18 +29,13 @@ public class GlobalPlayerDataStorage implements PlayerDataStorage {
         this.plugin = instance;
 
 
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+        plugin.getPlayTimeStorageManager().getStorageExecutor().execute(() -> {
             // Load the database connection.
-            try {
-                boolean loadedDatabase = this.loadDatabaseConnection().get();
+            boolean loadedDatabase = this.loadDatabaseConnection();
 
-                if (loadedDatabase) {
-                    this.loadServerRegister();
-                    this.loadPlayerData();
-                }
-
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
+            if (loadedDatabase) {
+                this.loadServerRegister();
+                this.loadPlayerData();
             }
         });
 
@@ -61,32 +51,28 @@ public class GlobalPlayerDataStorage implements PlayerDataStorage {
         }, AutorankTools.TICKS_PER_SECOND * 30, AutorankTools.TICKS_PER_SECOND * 30);
     }
 
-    @NotNull
-    private CompletableFuture<Boolean> loadDatabaseConnection() {
-
-        return CompletableFuture.supplyAsync(() -> {
-            SettingsConfig configHandler = plugin.getSettingsConfig();
+    private boolean loadDatabaseConnection() {
+        SettingsConfig configHandler = plugin.getSettingsConfig();
 
-            if (!configHandler.useMySQL()) {
-                plugin.getServer().getConsoleSender().sendMessage(ChatColor.RED + "Can't load MySQL database, as " +
-                        "you've disabled the MySQL server.");
-                return false;
-            }
+        if (!configHandler.useMySQL()) {
+            plugin.getServer().getConsoleSender().sendMessage(ChatColor.RED + "Can't load MySQL database, as " +
+                    "you've disabled the MySQL server.");
+            return false;
+        }
 
-            connection = SQLConnection.getInstance(configHandler);
-
-            if (connection.connect()) {
-                plugin.getServer().getConsoleSender().sendMessage(ChatColor.GREEN + "Successfully attached to your " +
-                        "MySQL database to retrieve playerdata");
-                return true;
-            } else {
-                plugin.getServer().getConsoleSender().sendMessage(ChatColor.RED + "Could not attach to your " +
-                        "MySQL database to retrieve playerdata");
-                plugin.getWarningManager().registerWarning("Could not attach to your " +
-                        "MySQL database to retrieve playerdata", WarningManager.HIGH_PRIORITY_WARNING);
-                return false;
-            }
-        });
+        connection = SQLConnection.getInstance(configHandler);
+
+        if (connection.connect()) {
+            plugin.getServer().getConsoleSender().sendMessage(ChatColor.GREEN + "Successfully attached to your " +
+                    "MySQL database to retrieve playerdata");
+            return true;
+        } else {
+            plugin.getServer().getConsoleSender().sendMessage(ChatColor.RED + "Could not attach to your " +
+                    "MySQL database to retrieve playerdata");
+            plugin.getWarningManager().registerWarning("Could not attach to your " +
+                    "MySQL database to retrieve playerdata", WarningManager.HIGH_PRIORITY_WARNING);
+            return false;
+        }
     }
 
     private SQLConnection getConnection() {
@@ -101,10 +87,9 @@ public class GlobalPlayerDataStorage implements PlayerDataStorage {
                 "(server_name varchar(36) NOT NULL, hostname varchar(55) NOT NULL, last_updated timestamp DEFAULT " +
                 "CURRENT_TIMESTAMP, UNIQUE(server_name, hostname))");
 
-        getConnection().execute("INSERT INTO " + tableServerRegister + " VALUES ('" +
-                plugin.getSettingsConfig().getMySQLSetting(SettingsConfig.MySQLSettings.SERVER_NAME) + "', " +
-                "'" + getHostname() + "', " +
-                "CURRENT_TIMESTAMP) ON DUPLICATE KEY UPDATE last_updated=CURRENT_TIMESTAMP");
+        getConnection().update("INSERT INTO " + tableServerRegister + " VALUES (?, ?, CURRENT_TIMESTAMP) ON " +
+                        "DUPLICATE KEY UPDATE last_updated=CURRENT_TIMESTAMP",
+                plugin.getSettingsConfig().getMySQLSetting(SettingsConfig.MySQLSettings.SERVER_NAME), getHostname());
 
         plugin.debugMessage("Loaded online server register.");
 
@@ -129,47 +114,61 @@ public class GlobalPlayerDataStorage implements PlayerDataStorage {
     }
 
     private void updateCacheFromRemote() {
-        Optional<ResultSet> resultSet =
-                getConnection().executeQuery("SELECT * FROM " + tablePlayerdataStorageCompletedPaths + " ORDER BY" +
-                        " uuid");
+        boolean updated = getConnection().query("SELECT server_name, uuid, completed_path FROM " +
+                tablePlayerdataStorageCompletedPaths + " ORDER BY uuid", result -> {
+
+            String serverName = result.getString("server_name");
+            String uuidString = result.getString("uuid");
+            String completedPath = result.getString("completed_path");
+
+            if (uuidString == null || serverName == null || completedPath == null) {
+                return;
+            }
+
+            CachedPlayerData cachedPlayerData = this.playerDataCache.getCachedPlayerData(UUID.fromString(uuidString));
+
+            cachedPlayerData.addCachedEntry(completedPath, serverName);
+        });
 
-        if (!resultSet.isPresent()) {
+        if (!updated) {
             plugin.debugMessage("Could not update cache of global player data storage because the connection is not " +
                     "valid.");
-            return;
         }
+    }
 
-        ResultSet result = resultSet.get();
-
-        while (true) {
+    /**
+     * Load the globally completed paths of a single player into the cache, so they are available before the
+     * periodic update has run. This method blocks until the database has responded, so don't call it on the main
+     * thread.
+     *
+     * @param uuid UUID of the player
+     */
+    public void updateCacheFromRemote(@NonNull UUID uuid) {
+        if (getConnection() == null || getConnection().isClosed()) {
+            return;
+        }
 
-            try {
-                if (!result.next()) break;
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+        CachedPlayerData cachedPlayerData = new CachedPlayerData();
 
-            String serverName = null, completedPath = null;
-            UUID uuid = null;
+        boolean updated = getConnection().query("SELECT server_name, completed_path FROM " +
+                tablePlayerdataStorageCompletedPaths + " WHERE uuid = ?", result -> {
 
-            try {
-                serverName = result.getString("server_name");
-                uuid = UUID.fromString(result.getString("uuid"));
-                completedPath = result.getString("completed_path");
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+            String serverName = result.getString("server_name");
+            String completedPath = result.getString("completed_path");
 
-            if (uuid == null || serverName == null || completedPath == null) {
-                continue;
+            if (serverName == null || completedPath == null) {
+                return;
             }
 
-            CachedPlayerData cachedPlayerData = this.playerDataCache.getCachedPlayerData(uuid);
-
             cachedPlayerData.addCachedEntry(completedPath, serverName);
-        }
+        }, uuid.toString());
 
-        getConnection().close(null, null, result);
+        if (updated) {
+            this.playerDataCache.setCachedPlayerData(uuid, cachedPlayerData);
+        } else {
+            plugin.debugMessage("Could not load global player data of " + uuid + " because the connection is not " +
+                    "valid.");
+        }
     }
 
     @Override
@@ -306,12 +305,12 @@ public class GlobalPlayerDataStorage implements PlayerDataStorage {
         String serverName = plugin.getSettingsConfig().getMySQLSetting(SettingsConfig.MySQLSettings.SERVER_NAME);
 
         // Add item to indicate that a path has been completed.
-        getConnection().execute("INSERT INTO " + tablePlayerdataStorageCompletedPaths + " VALUES ('" + serverName + "', '" + uuid.toString() + "', '" + completedPath + "') ON " +
-                "DUPLICATE KEY UPDATE uuid=uuid;");
+        getConnection().update("INSERT INTO " + tablePlayerdataStorageCompletedPaths + " VALUES (?, ?, ?) ON " +
+                "DUPLICATE KEY UPDATE uuid=uuid", serverName, uuid.toString(), completedPath);
 
         // Update the last time a server has updated values.
-        getConnection().execute("UPDATE " + tableServerRegister + " SET last_updated = CURRENT_TIMESTAMP " +
-                "WHERE server_name = '" + serverName + "';");
+        getConnection().update("UPDATE " + tableServerRegister + " SET last_updated = CURRENT_TIMESTAMP " +
+                "WHERE server_name = ?", serverName);
 
     }
 
@@ -320,8 +319,8 @@ public class GlobalPlayerDataStorage implements PlayerDataStorage {
         String serverName = plugin.getSettingsConfig().getMySQLSetting(SettingsConfig.MySQLSettings.SERVER_NAME);
 
         // Remove path that matches the name of the path.
-        getConnection().execute("DELETE FROM " + tablePlayerdataStorageCompletedPaths + " WHERE uuid='"
-                + uuid.toString() + "' AND server_name='" + serverName + "' AND completed_path='" + pathName + "';");
+        getConnection().update("DELETE FROM " + tablePlayerdataStorageCompletedPaths + " WHERE uuid = ? AND " +
+                "server_name = ? AND completed_path = ?", uuid.toString(), serverName, pathName);
     }
 
     @Override
@@ -329,8 +328,8 @@ public class GlobalPlayerDataStorage implements PlayerDataStorage {
         String serverName = plugin.getSettingsConfig().getMySQLSetting(SettingsConfig.MySQLSettings.SERVER_NAME);
 
         // First remove all paths that are currently stored there.
-        getConnection().execute("DELETE FROM " + tablePlayerdataStorageCompletedPaths + " WHERE uuid='"
-                + uuid.toString() + "' AND server_name='" + serverName + "';");
+        getConnection().update("DELETE FROM " + tablePlayerdataStorageCompletedPaths + " WHERE uuid = ? AND " +
+                "server_name = ?", uuid.toString(), serverName);
 
         // For each path, add them again.
         paths.forEach(completedPath -> this.addCompletedPath(uuid, completedPath));
@@ -3,22 +3,17 @@ package me.armar.plugins.autorank.pathbuilder.playerdata.global;
 import io.reactivex.annotations.NonNull;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 public class PlayerDataCache {
 
-    private final Map<UUID, CachedPlayerData> cache = new HashMap<>();
+    // The cache is filled from async threads (such as pre-login) and read on the main thread.
+    private final Map<UUID, CachedPlayerData> cache = new ConcurrentHashMap<>();
 
     public CachedPlayerData getCachedPlayerData(@NonNull UUID uuid) {
-
-        CachedPlayerData cachedPlayerData = this.cache.get(uuid);
-
-        if (cachedPlayerData == null) {
-            cachedPlayerData = new CachedPlayerData();
-            this.setCachedPlayerData(uuid, cachedPlayerData);
-        }
-
-        return cachedPlayerData;
+        return this.cache.computeIfAbsent(uuid, id -> new CachedPlayerData());
     }
 
     public void setCachedPlayerData(@NonNull UUID uuid, CachedPlayerData cachedPlayerData) {
@@ -32,7 +27,7 @@ public class PlayerDataCache {
 
 class CachedPlayerData {
 
-    List<CachedPlayerDataEntry> cachedEntries = new ArrayList<>();
+    List<CachedPlayerDataEntry> cachedEntries = new CopyOnWriteArrayList<>();
 
     public void addCachedEntry(String completedPath, String serverName) {
         if (!hasCachedEntry(completedPath, serverName)) {
@@ -520,6 +520,25 @@ public class LocalPlayerDataStorage extends AbstractConfig implements PlayerData
         return PlayerDataManager.PlayerDataStorageType.LOCAL;
     }
 
+    /**
+     * Get the UUIDs of all players that have data stored in this storage.
+     *
+     * @return a collection of UUIDs.
+     */
+    public Collection<UUID> getStoredPlayers() {
+        List<UUID> uuids = new ArrayList<>();
+
+        for (String uuidString : this.getConfig().getKeys(false)) {
+            try {
+                uuids.add(UUID.fromString(uuidString));
+            } catch (IllegalArgumentException e) {
+                // Not a UUID, so it is an old (name-based) entry.
+            }
+        }
+
+        return uuids;
+    }
+
     // ------------ CONFIGURATION SECTIONS ------------
 
     @NotNull
@@ -0,0 +1,83 @@
+package me.armar.plugins.autorank.pathbuilder.requirement;
+
+import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.playtimes.PlayTimeHistory;
+import me.armar.plugins.autorank.util.AutorankTools;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This requirement checks for play time in the last couple of days (including today). It uses the play time
+ * history, which needs to be enabled in the Settings.yml.
+ */
+public class RecentTimeRequirement extends AbstractRequirement {
+
+    int timeNeeded = -1;
+    int days = 7;
+
+    @Override
+    public String getDescription() {
+        return Lang.RECENT_TIME_REQUIREMENT.getConfigValue(AutorankTools.timeToString(timeNeeded,
+                TimeUnit.MINUTES), days);
+    }
+
+    @Override
+    public String getProgressString(UUID uuid) {
+        return AutorankTools.timeToString(getRecentTime(uuid), TimeUnit.MINUTES) + "/" +
+                AutorankTools.timeToString(timeNeeded, TimeUnit.MINUTES);
+    }
+
+    @Override
+    protected boolean meetsRequirement(UUID uuid) {
+        return timeNeeded != -1 && getRecentTime(uuid) >= timeNeeded;
+    }
+
+    @Override
+    public boolean initRequirement(final String[] options) {
+
+        if (options.length > 0) {
+            timeNeeded = AutorankTools.stringToTime(options[0], TimeUnit.MINUTES);
+        }
+
+        if (options.length > 1) {
+            try {
+                days = Integer.parseInt(options[1].trim());
+            } catch (NumberFormatException e) {
+                this.registerWarningMessage("Number of days is not a valid number.");
+                return false;
+            }
+        }
+
+        if (timeNeeded < 0) {
+            this.registerWarningMessage("No number is provided or smaller than 0.");
+            return false;
+        }
+
+        Optional<PlayTimeHistory> history = getAutorank().getPlayTimeManager().getPlayTimeHistory();
+
+        if (!history.isPresent()) {
+            this.registerWarningMessage("Play time history is not enabled in the Settings.yml.");
+            return false;
+        }
+
+        if (days <= 0 || days > history.get().getRetentionDays()) {
+            this.registerWarningMessage("Number of days must be between 1 and " + history.get().getRetentionDays()
+                    + " (the number of days of play time history that is kept).");
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public double getProgressPercentage(UUID uuid) {
+        return getRecentTime(uuid) * 1.0d / timeNeeded;
+    }
+
+    private int getRecentTime(UUID uuid) {
+        return getAutorank().getPlayTimeManager().getPlayTimeHistory()
+                .map(history -> history.getTime(uuid, days)).orElse(0);
+    }
+}
@@ -121,6 +121,14 @@ public class AutorankPlaceholder extends PlaceholderExpansion {
             } catch (InterruptedException | ExecutionException e) {
                 return "Couldn't obtain global time (formatted) of " + player.getName();
             }
+        } else if (params.equalsIgnoreCase("rank_total")) {
+            return getRank(TimeType.TOTAL_TIME, player);
+        } else if (params.equalsIgnoreCase("rank_daily")) {
+            return getRank(TimeType.DAILY_TIME, player);
+        } else if (params.equalsIgnoreCase("rank_weekly")) {
+            return getRank(TimeType.WEEKLY_TIME, player);
+        } else if (params.equalsIgnoreCase("rank_monthly")) {
+            return getRank(TimeType.MONTHLY_TIME, player);
         } else if (params.equalsIgnoreCase("completed_paths")) {
             return plugin.getAPI().getCompletedPaths(player.getUniqueId())
                     .stream().map(Path::getDisplayName).collect(Collectors.joining(","));
@@ -136,6 +144,13 @@ public class AutorankPlaceholder extends PlaceholderExpansion {
         return null;
     }
 
+    private String getRank(TimeType timeType, OfflinePlayer player) {
+        int rank = plugin.getPlayTimeManager().getRank(timeType, player.getUniqueId());
+
+        // Players without a rank show a dash, so scoreboards do not show '#-1'.
+        return rank < 0 ? "-" : Integer.toString(rank);
+    }
+
     @Override
     public boolean persist() {
         return true;
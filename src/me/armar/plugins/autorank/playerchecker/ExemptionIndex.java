@@ -0,0 +1,137 @@
+package me.armar.plugins.autorank.playerchecker;
+
+import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.pathbuilder.playerdata.PlayerDataStorage;
+import me.armar.plugins.autorank.pathbuilder.playerdata.local.LocalPlayerDataStorage;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class keeps the UUIDs of exempted players in memory, for every type of exemption. The exemptions are loaded
+ * from the primary player data storage once, and updated whenever the exemptions of an online player are checked.
+ * This way, checking whether a player is exempted (for example, for every player on the leaderboard) is a single set
+ * lookup, instead of a lookup of the player and their stored data.
+ */
+public class ExemptionIndex {
+
+    private final Autorank plugin;
+
+    private final Map<ExemptionType, Set<UUID>> exemptedPlayers = new EnumMap<>(ExemptionType.class);
+
+    public ExemptionIndex(Autorank instance) {
+        this.plugin = instance;
+
+        for (ExemptionType type : ExemptionType.values()) {
+            exemptedPlayers.put(type, ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    /**
+     * Load the exemptions of all players from the primary player data storage. Exemptions are only stored in the
+     * local player data storage, so nothing is loaded if the primary storage is of another type.
+     */
+    public void load() {
+        Optional<LocalPlayerDataStorage> storage = plugin.getPlayerDataManager().getPrimaryDataStorage()
+                .filter(dataStorage -> dataStorage instanceof LocalPlayerDataStorage)
+                .map(dataStorage -> (LocalPlayerDataStorage) dataStorage);
+
+        if (!storage.isPresent()) return;
+
+        int numberOfExemptions = 0;
+
+        for (UUID uuid : storage.get().getStoredPlayers()) {
+            for (ExemptionType type : ExemptionType.values()) {
+                if (type.isStored(storage.get(), uuid)) {
+                    exemptedPlayers.get(type).add(uuid);
+                    numberOfExemptions++;
+                }
+            }
+        }
+
+        plugin.debugMessage("Loaded " + numberOfExemptions + " exemptions of players.");
+    }
+
+    /**
+     * Check whether a player is exempted.
+     *
+     * @param type Type of exemption
+     * @param uuid UUID of the player
+     * @return true if the player has the given exemption, false otherwise.
+     */
+    public boolean isExempted(ExemptionType type, UUID uuid) {
+        return exemptedPlayers.get(type).contains(uuid);
+    }
+
+    /**
+     * Set whether a player is exempted. The exemption is also stored in the primary player data storage, but only if
+     * it has changed.
+     *
+     * @param type     Type of exemption
+     * @param uuid     UUID of the player
+     * @param exempted Whether the player is exempted.
+     */
+    public void setExempted(ExemptionType type, UUID uuid, boolean exempted) {
+        Set<UUID> players = exemptedPlayers.get(type);
+
+        boolean changed = exempted ? players.add(uuid) : players.remove(uuid);
+
+        if (!changed) return;
+
+        plugin.getPlayerDataManager().getPrimaryDataStorage().ifPresent(s -> type.store(s, uuid, exempted));
+    }
+
+    /**
+     * Get the players that have an exemption.
+     *
+     * @param type Type of exemption
+     * @return an unmodifiable view of the exempted players, which reflects later changes.
+     */
+    public Set<UUID> getExemptedPlayers(ExemptionType type) {
+        return Collections.unmodifiableSet(exemptedPlayers.get(type));
+    }
+
+    /**
+     * Get the number of players that have an exemption.
+     *
+     * @param type Type of exemption
+     * @return number of exempted players.
+     */
+    public int getNumberOfExemptedPlayers(ExemptionType type) {
+        return exemptedPlayers.get(type).size();
+    }
+
+    public enum ExemptionType {
+        LEADERBOARD, AUTOMATIC_CHECKING, TIME_ADDITION;
+
+        private boolean isStored(PlayerDataStorage storage, UUID uuid) {
+            switch (this) {
+                case LEADERBOARD:
+                    return storage.hasLeaderboardExemption(uuid);
+                case AUTOMATIC_CHECKING:
+                    return storage.hasAutoCheckingExemption(uuid);
+                default:
+                    return storage.hasTimeAdditionExemption(uuid);
+            }
+        }
+
+        private void store(PlayerDataStorage storage, UUID uuid, boolean exempted) {
+            switch (this) {
+                case LEADERBOARD:
+                    storage.setLeaderboardExemption(uuid, exempted);
+                    break;
+                case AUTOMATIC_CHECKING:
+                    storage.setAutoCheckingExemption(uuid, exempted);
+                    break;
+                default:
+                    storage.setTimeAdditionExemption(uuid, exempted);
+                    break;
+            }
+        }
+    }
+}
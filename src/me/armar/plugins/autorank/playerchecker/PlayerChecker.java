@@ -7,7 +7,6 @@ import me.armar.plugins.autorank.pathbuilder.holders.CompositeRequirement;
 import me.armar.plugins.autorank.pathbuilder.result.AbstractResult;
 import me.armar.plugins.autorank.permissions.AutorankPermission;
 import me.armar.plugins.autorank.util.AutorankTools;
-import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.entity.Player;
 
@@ -30,8 +29,22 @@ public class PlayerChecker {
 
     private final Autorank plugin;
 
+    private final ExemptionIndex exemptionIndex;
+
     public PlayerChecker(final Autorank plugin) {
         this.plugin = plugin;
+
+        this.exemptionIndex = new ExemptionIndex(plugin);
+        this.exemptionIndex.load();
+    }
+
+    /**
+     * Get the index that holds the exemptions of all players.
+     *
+     * @return the exemption index.
+     */
+    public ExemptionIndex getExemptionIndex() {
+        return exemptionIndex;
     }
 
     public boolean checkPlayer(UUID uuid) {
@@ -70,18 +83,18 @@ public class PlayerChecker {
     }
 
     public void doLeaderboardExemptCheck(final Player player) {
-        plugin.getPlayerDataManager().getPrimaryDataStorage().ifPresent(s -> s.setLeaderboardExemption(player.getUniqueId(),
-                player.hasPermission(AutorankPermission.EXCLUDE_FROM_LEADERBOARD)));
+        exemptionIndex.setExempted(ExemptionIndex.ExemptionType.LEADERBOARD, player.getUniqueId(),
+                player.hasPermission(AutorankPermission.EXCLUDE_FROM_LEADERBOARD));
     }
 
     public void doAutomaticCheckingExemptionCheck(Player player) {
-        plugin.getPlayerDataManager().getPrimaryDataStorage().ifPresent(s -> s.setAutoCheckingExemption(player.getUniqueId(),
-                AutorankTools.isExcludedFromRanking(player)));
+        exemptionIndex.setExempted(ExemptionIndex.ExemptionType.AUTOMATIC_CHECKING, player.getUniqueId(),
+                AutorankTools.isExcludedFromRanking(player));
     }
 
     public void doTimeAdditionExemptionCheck(Player player) {
-        plugin.getPlayerDataManager().getPrimaryDataStorage().ifPresent(s -> s.setTimeAdditionExemption(player.getUniqueId(),
-                player.hasPermission(AutorankPermission.EXCLUDE_FROM_TIME_UPDATES)));
+        exemptionIndex.setExempted(ExemptionIndex.ExemptionType.TIME_ADDITION, player.getUniqueId(),
+                player.hasPermission(AutorankPermission.EXCLUDE_FROM_TIME_UPDATES));
     }
 
     /**
@@ -91,14 +104,14 @@ public class PlayerChecker {
      * @return true if the player should not be shown on the leaderboard, false otherwise.
      */
     public boolean isExemptedFromLeaderboard(UUID uuid) {
-        Player player = Bukkit.getOfflinePlayer(uuid).getPlayer();
+        Player player = plugin.getServer().getPlayer(uuid);
 
         // If player is online, check their permission.
         if (player != null) {
             return player.hasPermission(AutorankPermission.EXCLUDE_FROM_LEADERBOARD);
         }
 
-        return plugin.getPlayerDataManager().getPrimaryDataStorage().map(s -> s.hasLeaderboardExemption(uuid)).orElse(false);
+        return exemptionIndex.isExempted(ExemptionIndex.ExemptionType.LEADERBOARD, uuid);
     }
 
     /**
@@ -108,14 +121,14 @@ public class PlayerChecker {
      * @return true if the player is excluded and hence may not be checked., false otherwise.
      */
     public boolean isExemptedFromAutomaticChecking(UUID uuid) {
-        Player player = Bukkit.getOfflinePlayer(uuid).getPlayer();
+        Player player = plugin.getServer().getPlayer(uuid);
 
         // If player is online, check their permission.
         if (player != null) {
             return AutorankTools.isExcludedFromRanking(player);
         }
 
-        return plugin.getPlayerDataManager().getPrimaryDataStorage().map(s -> s.hasAutoCheckingExemption(uuid)).orElse(false);
+        return exemptionIndex.isExempted(ExemptionIndex.ExemptionType.AUTOMATIC_CHECKING, uuid);
     }
 
     /**
@@ -126,14 +139,14 @@ public class PlayerChecker {
      * @return true if the player will not gain any time, false otherwise.
      */
     public boolean isExemptedFromTimeAddition(UUID uuid) {
-        Player player = Bukkit.getOfflinePlayer(uuid).getPlayer();
+        Player player = plugin.getServer().getPlayer(uuid);
 
         // If player is online, check their permission.
         if (player != null) {
             return player.hasPermission(AutorankPermission.EXCLUDE_FROM_TIME_UPDATES);
         }
 
-        return plugin.getPlayerDataManager().getPrimaryDataStorage().map(s -> s.hasTimeAdditionExemption(uuid)).orElse(false);
+        return exemptionIndex.isExempted(ExemptionIndex.ExemptionType.TIME_ADDITION, uuid);
     }
 
     public List<String> formatRequirementsToList(final List<CompositeRequirement> holders,
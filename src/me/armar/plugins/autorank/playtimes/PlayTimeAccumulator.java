@@ -0,0 +1,159 @@
+package me.armar.plugins.autorank.playtimes;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * This class keeps track of the time that online players have played, with a precision of seconds. Storage only
+ * stores whole minutes, so only whole minutes are taken out of the accumulator. The seconds that are left over are
+ * kept, and count towards the next minute, so no time is lost when the time of a player is updated.
+ * <br>
+ * <br>
+ * Only players that are tracked are kept. When a player leaves, their whole minutes are collected and the seconds
+ * that are left over are discarded, so the accumulator never holds more players than are online. The counters of a
+ * player are kept in a slot of primitive arrays, and the slot is reused by the next player that joins.
+ */
+public class PlayTimeAccumulator {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Slot of every tracked player in the arrays below. The fields of this class are guarded by this.
+    private final Map<UUID, Integer> slots = new HashMap<>();
+    // Time (in ms) up to which the time of the player in a slot has been counted.
+    private long[] lastSamples = new long[INITIAL_CAPACITY];
+    // Seconds of the player in a slot that have been counted, but not collected.
+    private int[] seconds = new int[INITIAL_CAPACITY];
+    // Slots that were used by players that are no longer tracked, so they can be reused.
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int numberOfFreeSlots = 0;
+    // Number of slots that have ever been used.
+    private int usedSlots = 0;
+
+    /**
+     * Start counting the time of a player, for example when they join.
+     *
+     * @param uuid UUID of the player
+     */
+    public synchronized void startTracking(UUID uuid) {
+        Integer slot = slots.get(uuid);
+
+        if (slot == null) {
+            slot = allocateSlot();
+            seconds[slot] = 0;
+            slots.put(uuid, slot);
+        }
+
+        lastSamples[slot] = System.currentTimeMillis();
+    }
+
+    /**
+     * Take the whole minutes that a player has played since they were last collected.
+     *
+     * @param uuid      UUID of the player
+     * @param countTime Whether the time since the last collection should count as play time. If false (for
+     *                  example, because the player is AFK), the time is skipped.
+     * @return number of whole minutes that the player has played.
+     */
+    public synchronized int collectMinutes(UUID uuid, boolean countTime) {
+        Integer slot = slots.get(uuid);
+
+        if (slot == null) return 0;
+
+        return collectMinutes(slot, countTime, 0);
+    }
+
+    /**
+     * Take the whole minutes that a player has played since they were last collected, leaving out time that should
+     * not count as play time.
+     *
+     * @param uuid           UUID of the player
+     * @param excludedMillis Number of milliseconds since the last collection that should not count, for example
+     *                       because the player was AFK.
+     * @return number of whole minutes that the player has played.
+     */
+    public synchronized int collectMinutes(UUID uuid, long excludedMillis) {
+        Integer slot = slots.get(uuid);
+
+        if (slot == null) return 0;
+
+        return collectMinutes(slot, true, excludedMillis);
+    }
+
+    /**
+     * Stop counting the time of a player, for example when they leave. The whole minutes since the last collection
+     * are returned, and the seconds that are left over are discarded.
+     *
+     * @param uuid           UUID of the player
+     * @param excludedMillis Number of milliseconds since the last collection that should not count.
+     * @return number of whole minutes that the player has played since the last collection.
+     */
+    public synchronized int stopTracking(UUID uuid, long excludedMillis) {
+        Integer slot = slots.remove(uuid);
+
+        if (slot == null) return 0;
+
+        int minutes = collectMinutes(slot, true, excludedMillis);
+
+        freeSlots[numberOfFreeSlots++] = slot;
+
+        return minutes;
+    }
+
+    /**
+     * Get the number of seconds of a player that are not part of a whole minute yet.
+     *
+     * @param uuid UUID of the player
+     * @return number of seconds that are left over.
+     */
+    public synchronized int getLeftoverSeconds(UUID uuid) {
+        Integer slot = slots.get(uuid);
+
+        if (slot == null) return 0;
+
+        return seconds[slot];
+    }
+
+    /**
+     * Get the number of players whose time is counted.
+     *
+     * @return number of tracked players.
+     */
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    private int collectMinutes(int slot, boolean countTime, long excludedMillis) {
+        long elapsedSeconds = (System.currentTimeMillis() - lastSamples[slot]) / 1000;
+
+        // Only move up by whole seconds, so the milliseconds count towards the next sample.
+        lastSamples[slot] += elapsedSeconds * 1000;
+
+        if (countTime) {
+            seconds[slot] += Math.max(0, elapsedSeconds - excludedMillis / 1000);
+        }
+
+        int minutes = seconds[slot] / 60;
+
+        seconds[slot] %= 60;
+
+        return minutes;
+    }
+
+    private int allocateSlot() {
+        if (numberOfFreeSlots > 0) {
+            return freeSlots[--numberOfFreeSlots];
+        }
+
+        if (usedSlots == lastSamples.length) {
+            int capacity = lastSamples.length * 2;
+
+            lastSamples = Arrays.copyOf(lastSamples, capacity);
+            seconds = Arrays.copyOf(seconds, capacity);
+            freeSlots = Arrays.copyOf(freeSlots, capacity);
+        }
+
+        return usedSlots++;
+    }
+}
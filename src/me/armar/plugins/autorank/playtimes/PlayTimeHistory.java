@@ -0,0 +1,242 @@
+package me.armar.plugins.autorank.playtimes;
+
+import me.armar.plugins.autorank.Autorank;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class keeps a history of how much time players have played on every day, for a configurable number of days.
+ * It can be used to check how much a player has played in the last couple of days, which is not possible with
+ * daily, weekly and monthly time.
+ * <br>
+ * <br>
+ * The history of a player is a ring buffer with one short (minutes) per day. Recording time only changes a single
+ * day in memory. The history is written to a binary file periodically, not every time it changes.
+ */
+public class PlayTimeHistory {
+
+    // Identifies a history file, reads 'ARPH'.
+    private static final int MAGIC_NUMBER = 0x41525048;
+    private static final int FILE_VERSION = 1;
+
+    private final Autorank plugin;
+
+    private final File file;
+
+    // Number of days of history that are kept per player.
+    private final int retentionDays;
+
+    private final Map<UUID, DayHistory> histories = new ConcurrentHashMap<>();
+
+    // Whether the history has changed since it was last saved.
+    private volatile boolean changed = false;
+
+    public PlayTimeHistory(Autorank instance, File file, int retentionDays) {
+        this.plugin = instance;
+        this.file = file;
+        this.retentionDays = Math.max(1, retentionDays);
+    }
+
+    /**
+     * Record time that a player has played today.
+     *
+     * @param uuid    UUID of the player
+     * @param minutes Number of minutes played
+     */
+    public void recordTime(UUID uuid, int minutes) {
+        if (minutes <= 0) return;
+
+        DayHistory history = histories.computeIfAbsent(uuid, id -> new DayHistory(retentionDays));
+
+        history.add((int) LocalDate.now().toEpochDay(), minutes);
+
+        changed = true;
+    }
+
+    /**
+     * Get the time a player has played in the last couple of days, including today.
+     *
+     * @param uuid UUID of the player
+     * @param days Number of days to look back. Must not exceed the number of days that are kept.
+     * @return number of minutes played in the given number of days.
+     */
+    public int getTime(UUID uuid, int days) {
+        DayHistory history = histories.get(uuid);
+
+        if (history == null) return 0;
+
+        return history.sum((int) LocalDate.now().toEpochDay(), Math.min(days, retentionDays));
+    }
+
+    /**
+     * Get the number of days of history that are kept for every player.
+     *
+     * @return number of days.
+     */
+    public int getRetentionDays() {
+        return retentionDays;
+    }
+
+    /**
+     * Get the number of players that have a history.
+     *
+     * @return number of players.
+     */
+    public int size() {
+        return histories.size();
+    }
+
+    /**
+     * Load the history from its file. Players whose history is entirely older than the number of days that are
+     * kept are left out.
+     */
+    public void load() {
+        if (!file.exists()) return;
+
+        int today = (int) LocalDate.now().toEpochDay();
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != MAGIC_NUMBER || input.readInt() != FILE_VERSION) {
+                plugin.getLogger().warning(file.getName() + " is not a valid play time history file, ignoring it.");
+                return;
+            }
+
+            int storedRetentionDays = input.readInt();
+            int numberOfPlayers = input.readInt();
+
+            for (int i = 0; i < numberOfPlayers; i++) {
+                UUID uuid = new UUID(input.readLong(), input.readLong());
+                int lastDay = input.readInt();
+
+                short[] minutes = new short[storedRetentionDays];
+
+                for (int day = 0; day < storedRetentionDays; day++) {
+                    minutes[day] = input.readShort();
+                }
+
+                if (today - lastDay >= retentionDays) continue;
+
+                // Time may have been recorded already while loading, so add to it.
+                DayHistory history = histories.computeIfAbsent(uuid, id -> new DayHistory(retentionDays));
+
+                // Copy the days one by one, as the number of days that are kept may have changed.
+                for (int day = Math.max(lastDay - storedRetentionDays, lastDay - retentionDays) + 1; day <= lastDay;
+                     day++) {
+                    history.add(day, minutes[Math.floorMod(day, storedRetentionDays)]);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        plugin.debugMessage("Loaded play time history of " + histories.size() + " players.");
+    }
+
+    /**
+     * Write the history to its file, if it has changed since the last save. The file is replaced at once, so it is
+     * never left half-written.
+     */
+    public synchronized void save() {
+        if (!changed) return;
+
+        changed = false;
+
+        File temporaryFile = new File(file.getPath() + ".tmp");
+
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+
+        try (DataOutputStream output =
+                     new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            output.writeInt(MAGIC_NUMBER);
+            output.writeInt(FILE_VERSION);
+            output.writeInt(retentionDays);
+
+            // Players may be added while writing, so only write as many as the header says.
+            int numberOfPlayers = histories.size();
+            int writtenPlayers = 0;
+
+            output.writeInt(numberOfPlayers);
+
+            for (Map.Entry<UUID, DayHistory> entry : histories.entrySet()) {
+                if (writtenPlayers++ == numberOfPlayers) break;
+
+                output.writeLong(entry.getKey().getMostSignificantBits());
+                output.writeLong(entry.getKey().getLeastSignificantBits());
+
+                entry.getValue().write(output);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            changed = true;
+            return;
+        }
+
+        try {
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+            changed = true;
+        }
+    }
+
+    private static class DayHistory {
+        // Minutes played per day, at the index of the epoch day modulo the number of days.
+        private final short[] minutes;
+        // Most recent epoch day that is stored.
+        private int lastDay = Integer.MIN_VALUE;
+
+        private DayHistory(int days) {
+            this.minutes = new short[days];
+        }
+
+        private synchronized void add(int day, int minutesToAdd) {
+            if (day > lastDay) {
+                // Clear the days that were skipped, they still hold time of the previous round.
+                int daysToClear = lastDay == Integer.MIN_VALUE ? minutes.length :
+                        (int) Math.min((long) day - lastDay, minutes.length);
+
+                for (int i = 0; i < daysToClear; i++) {
+                    minutes[Math.floorMod(day - i, minutes.length)] = 0;
+                }
+
+                lastDay = day;
+            } else if (lastDay - day >= minutes.length) {
+                // Too old to be stored.
+                return;
+            }
+
+            int index = Math.floorMod(day, minutes.length);
+
+            minutes[index] = (short) Math.min(Short.MAX_VALUE, minutes[index] + minutesToAdd);
+        }
+
+        private synchronized int sum(int today, int days) {
+            int total = 0;
+
+            for (int day = today - days + 1; day <= today; day++) {
+                // Days after the last stored day have not been played.
+                if (day > lastDay || lastDay - day >= minutes.length) continue;
+
+                total += minutes[Math.floorMod(day, minutes.length)];
+            }
+
+            return total;
+        }
+
+        private synchronized void write(DataOutputStream output) throws IOException {
+            output.writeInt(lastDay);
+
+            for (short dayMinutes : minutes) {
+                output.writeShort(dayMinutes);
+            }
+        }
+    }
+}
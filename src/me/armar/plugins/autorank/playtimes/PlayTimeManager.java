@@ -1,9 +1,15 @@
 package me.armar.plugins.autorank.playtimes;
 
 import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.playerchecker.ExemptionIndex;
 import me.armar.plugins.autorank.storage.PlayTimeStorageProvider;
 import me.armar.plugins.autorank.storage.TimeType;
+import me.armar.plugins.autorank.util.AutorankTools;
 
+import java.io.File;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
@@ -31,12 +37,66 @@ public class PlayTimeManager {
 
     private final Autorank plugin;
 
+    // Keep track of the time of online players in seconds.
+    private final PlayTimeAccumulator playTimeAccumulator = new PlayTimeAccumulator();
+
+    // History of time played per day, or null if it is disabled.
+    private PlayTimeHistory playTimeHistory = null;
+
     public PlayTimeManager(final Autorank plugin) {
         this.plugin = plugin;
 
         INTERVAL_MINUTES = plugin.getSettingsConfig().getIntervalTime();
 
         plugin.getLogger().info("Interval check every " + INTERVAL_MINUTES + " minutes.");
+
+        if (plugin.getSettingsConfig().isPlayTimeHistoryEnabled()) {
+            this.loadPlayTimeHistory();
+        }
+    }
+
+    private void loadPlayTimeHistory() {
+        File file = new File(plugin.getDataFolder().getAbsolutePath() + File.separator + "data" + File.separator +
+                "History.dat");
+
+        playTimeHistory = new PlayTimeHistory(plugin, file, plugin.getSettingsConfig().getPlayTimeHistoryDays());
+
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> playTimeHistory.load());
+
+        // Save the history every five minutes.
+        plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, () -> playTimeHistory.save(),
+                AutorankTools.TICKS_PER_MINUTE * 5, AutorankTools.TICKS_PER_MINUTE * 5);
+    }
+
+    /**
+     * Get the history of time played per day.
+     *
+     * @return the history, or nothing if it is disabled in the Settings.yml.
+     */
+    public Optional<PlayTimeHistory> getPlayTimeHistory() {
+        return Optional.ofNullable(playTimeHistory);
+    }
+
+    /**
+     * Record time that players have played, both in storage and in the history of time played per day.
+     *
+     * @param timesToAdd Time to add for each player
+     */
+    public void addPlayedTime(Map<UUID, Integer> timesToAdd) {
+        plugin.getPlayTimeStorageManager().addPlayerTimes(timesToAdd);
+
+        if (playTimeHistory != null) {
+            timesToAdd.forEach(playTimeHistory::recordTime);
+        }
+    }
+
+    /**
+     * Get the accumulator that counts the time of online players that is not stored yet.
+     *
+     * @return accumulator of play time.
+     */
+    public PlayTimeAccumulator getPlayTimeAccumulator() {
+        return playTimeAccumulator;
     }
 
     /**
@@ -68,8 +128,8 @@ public class PlayTimeManager {
             return;
         }
 
-        plugin.getPlayTimeStorageManager().getStorageProvider(PlayTimeStorageProvider.StorageType.DATABASE).setPlayerTime(timeType,
-                uuid, value);
+        plugin.getPlayTimeStorageManager().setPlayerTime(PlayTimeStorageProvider.StorageType.DATABASE, timeType, uuid,
+                value);
     }
 
     /**
@@ -84,8 +144,8 @@ public class PlayTimeManager {
             return;
         }
 
-        plugin.getPlayTimeStorageManager().getStorageProvider(PlayTimeStorageProvider.StorageType.DATABASE).addPlayerTime(timeType,
-                uuid, valueToAdd);
+        plugin.getPlayTimeStorageManager().addPlayerTime(PlayTimeStorageProvider.StorageType.DATABASE, timeType, uuid,
+                valueToAdd);
     }
 
     /**
@@ -116,8 +176,8 @@ public class PlayTimeManager {
             return;
         }
 
-        plugin.getPlayTimeStorageManager().getStorageProvider(PlayTimeStorageProvider.StorageType.FLAT_FILE).setPlayerTime(timeType,
-                uuid, value);
+        plugin.getPlayTimeStorageManager().setPlayerTime(PlayTimeStorageProvider.StorageType.FLAT_FILE, timeType, uuid,
+                value);
     }
 
     /**
@@ -132,8 +192,8 @@ public class PlayTimeManager {
             return;
         }
 
-        plugin.getPlayTimeStorageManager().getStorageProvider(PlayTimeStorageProvider.StorageType.FLAT_FILE).addPlayerTime(timeType,
-                uuid, valueToAdd);
+        plugin.getPlayTimeStorageManager().addPlayerTime(PlayTimeStorageProvider.StorageType.FLAT_FILE, timeType, uuid,
+                valueToAdd);
     }
 
     /**
@@ -179,4 +239,28 @@ public class PlayTimeManager {
         });
     }
 
+    /**
+     * Get the position of a player on the leaderboard of the primary storage provider, where the player with the
+     * most time has rank 1. The rank is read from a ranked index, so it is cheap to call often. Players that are
+     * exempted from the leaderboard are skipped, like on /ar leaderboard. A stored player without time still has a
+     * rank.
+     * <br>
+     * <br>
+     * If the primary storage provider is a database that is shared by a network of servers, time that other
+     * servers add is only counted once the ranking is loaded again, see
+     * {@link me.armar.plugins.autorank.storage.PlayTimeStorageManager#getRankedIndex(TimeType)}.
+     *
+     * @param timeType Type of time
+     * @param uuid     UUID of the player
+     * @return rank of the player, or -1 if the player is not stored, is exempted from the leaderboard or the ranking
+     * has not been loaded yet.
+     */
+    public int getRank(TimeType timeType, UUID uuid) {
+        Set<UUID> exemptedPlayers = plugin.getPlayerChecker().getExemptionIndex()
+                .getExemptedPlayers(ExemptionIndex.ExemptionType.LEADERBOARD);
+
+        return plugin.getPlayTimeStorageManager().getRankedIndex(timeType)
+                .map(index -> index.getRank(uuid, exemptedPlayers)).orElse(-1);
+    }
+
 }
@@ -1,74 +1,97 @@
 package me.armar.plugins.autorank.playtimes;
 
 import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.hooks.AFKStateCache;
 import me.armar.plugins.autorank.permissions.AutorankPermission;
-import me.armar.plugins.autorank.storage.TimeType;
 import org.bukkit.entity.Player;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
- * This class is responsible for updating a player's play time every x minutes.
+ * This class is responsible for updating the play time of a group of players. The whole minutes that the players
+ * have played since their last update are taken from the {@link PlayTimeAccumulator} and stored in a single batch.
  */
 public class UpdateTimePlayedTask implements Runnable {
 
     private final Autorank plugin;
 
-    // UUID of player to keep track of.
-    private final UUID uuid;
+    // UUIDs of players to keep track of.
+    private final Collection<UUID> uuids;
 
-    public UpdateTimePlayedTask(Autorank instance, UUID uuid) {
+    public UpdateTimePlayedTask(Autorank instance, Collection<UUID> uuids) {
         this.plugin = instance;
-        this.uuid = uuid;
+        this.uuids = uuids;
     }
 
     @Override
     public void run() {
 
-        plugin.debugMessage("Run task to update play time of " + uuid);
+        plugin.debugMessage("Run task to update play time of " + uuids.size() + " players");
 
-        Player player = plugin.getServer().getPlayer(uuid);
+        Map<UUID, Integer> timesToAdd = new HashMap<>();
+        List<Player> updatedPlayers = new ArrayList<>();
 
-        // Cancel task as player is not online anymore.
-        if (player == null || !player.isOnline()) {
-            plugin.debugMessage("Cancelling update play time of " + uuid + " as he's not online.");
+        PlayTimeAccumulator accumulator = plugin.getPlayTimeManager().getPlayTimeAccumulator();
+        AFKStateCache afkStateCache = plugin.getDependencyManager().getAFKStateCache();
 
-            return;
-        }
+        for (UUID uuid : uuids) {
+            Player player = plugin.getServer().getPlayer(uuid);
 
-        // Set when we last updated this player's time.
-        plugin.getTaskManager().setLastPlayTimeUpdate(uuid, System.currentTimeMillis());
+            // Skip player as they are not online anymore.
+            if (player == null || !player.isOnline()) {
+                plugin.debugMessage("Not updating play time of " + uuid + " as they're not online.");
+                continue;
+            }
 
-        // Provide debug message so we know what's going on
-        plugin.debugMessage("Updating play time of " + player.getName());
+            // Provide debug message so we know what's going on
+            plugin.debugMessage("Updating play time of " + player.getName());
 
-        // Do checks for offline exemptions
-        plugin.getPlayerChecker().doOfflineExemptionChecks(player);
+            // Do checks for offline exemptions
+            plugin.getPlayerChecker().doOfflineExemptionChecks(player);
 
-        // Don't add extra time to the player when he is excluded from time updates.
-        if (player.hasPermission(AutorankPermission.EXCLUDE_FROM_TIME_UPDATES)) {
-            plugin.debugMessage("Player " + player.getName() + " is excluded from time updates by given permissions.");
-            return;
-        }
+            // Don't add extra time to the player when they are excluded from time updates.
+            if (player.hasPermission(AutorankPermission.EXCLUDE_FROM_TIME_UPDATES)) {
+                plugin.debugMessage("Player " + player.getName() + " is excluded from time updates by given " +
+                        "permissions.");
+                accumulator.collectMinutes(uuid, false);
+                afkStateCache.takeAFKMillis(uuid);
+                continue;
+            }
 
-        // Check to see if player is afk
-        if (plugin.getDependencyManager().isAFK(player)) {
-            plugin.debugMessage("Player " + player.getName() + " is AFK and so we don't add time.");
-            return;
-        }
+            // Take the whole minutes the player has played, the seconds that are left over are kept for later. Time
+            // that the player was AFK since the last update is left out, so time before they went AFK still counts.
+            int minutes = accumulator.collectMinutes(uuid, afkStateCache.takeAFKMillis(uuid));
 
-        // Add time to a player's current time for all storage providers.
-        for (final TimeType type : TimeType.values()) {
-            plugin.getPlayTimeStorageManager().addPlayerTime(type, uuid, PlayTimeManager.INTERVAL_MINUTES);
+            if (minutes > 0) {
+                timesToAdd.put(uuid, minutes);
+            }
+
+            // Check to see if player is afk
+            if (afkStateCache.isAFK(uuid)) {
+                plugin.debugMessage("Player " + player.getName() + " is AFK and so we don't check their paths.");
+                continue;
+            }
+
+            updatedPlayers.add(player);
         }
 
-        // Auto assign path (if possible)
-        plugin.getPathManager().autoAssignPaths(player.getUniqueId());
+        // Add time to the current time of all players at once for all storage providers.
+        plugin.getPlayTimeManager().addPlayedTime(timesToAdd);
+
+        for (Player player : updatedPlayers) {
+            // Auto assign path (if possible)
+            plugin.getPathManager().autoAssignPaths(player.getUniqueId());
 
-        // Only check a player if it is not disabled in the Settings.yml
-        if (!plugin.getSettingsConfig().isAutomaticPathDisabled()) {
-            // Check if player meets requirements
-            plugin.getPlayerChecker().checkPlayer(player.getUniqueId());
+            // Only check a player if it is not disabled in the Settings.yml
+            if (!plugin.getSettingsConfig().isAutomaticPathDisabled()) {
+                // Check if player meets requirements
+                plugin.getPlayerChecker().checkPlayer(player.getUniqueId());
+            }
         }
     }
 }
@@ -2,13 +2,22 @@ package me.armar.plugins.autorank.storage;
 
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.language.Lang;
+import me.armar.plugins.autorank.storage.flatfile.FlatFileStorageProvider;
+import me.armar.plugins.autorank.storage.mysql.MySQLStorageProvider;
 
 import java.time.LocalDate;
 import java.time.temporal.WeekFields;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * The StorageManager class is responsible for connection with the registered storage providers. It allows you to
@@ -30,8 +39,44 @@ public class PlayTimeStorageManager {
 
     private final Autorank plugin;
 
+    // Run storage work on a bounded set of threads.
+    private final StorageExecutor storageExecutor;
+
+    // Time of the primary storage provider, ranked per type of time.
+    private final Map<TimeType, RankedIndex> rankedIndexes = new EnumMap<>(TimeType.class);
+    private volatile boolean rankedIndexesLoaded = false;
+    // Changes to a ranked index that were made while a new index is loaded, so they can be replayed on the new
+    // index. A type of time only has an entry while it is loaded. Guarded by the lock of the ranked index.
+    private final Map<TimeType, List<Consumer<RankedIndex>>> bufferedIndexChanges = new EnumMap<>(TimeType.class);
+    // Number of minutes after which the ranked indexes of a storage provider that is not local are loaded again.
+    private static final int RANKED_INDEX_RELOAD_TIME = 30;
+
     public PlayTimeStorageManager(Autorank instance) {
         this.plugin = instance;
+
+        this.storageExecutor = new StorageExecutor(instance, instance.getSettingsConfig().getStorageThreads(),
+                instance.getSettingsConfig().getStorageQueueSize());
+
+        for (TimeType timeType : TimeType.values()) {
+            rankedIndexes.put(timeType, new RankedIndex(timeType));
+        }
+
+        // Other servers can change the time of a database, which this server does not see, so the ranking is loaded
+        // again periodically (as often as the leaderboards are updated).
+        storageExecutor.scheduleAtFixedRate(() -> {
+            if (rankedIndexesLoaded && !isPrimaryStorageProviderLocal()) {
+                loadRankedIndexes();
+            }
+        }, RANKED_INDEX_RELOAD_TIME, RANKED_INDEX_RELOAD_TIME, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Get the executor that should be used to run storage work, such as database queries, off the main thread.
+     *
+     * @return executor for storage work.
+     */
+    public StorageExecutor getStorageExecutor() {
+        return storageExecutor;
     }
 
     /**
@@ -55,6 +100,22 @@ public class PlayTimeStorageManager {
         }
 
         this.primaryStorageProvider = storageProvider;
+
+        // The ranked indexes follow the primary storage provider.
+        rankedIndexesLoaded = false;
+    }
+
+    /**
+     * Check whether the primary storage provider stores its time locally, so no other server can change it. All
+     * changes to the time of the primary storage provider are then made through this storage manager.
+     *
+     * @return true if the primary storage provider is a flatfile storage provider.
+     */
+    public boolean isPrimaryStorageProviderLocal() {
+        PlayTimeStorageProvider storageProvider = primaryStorageProvider;
+
+        return storageProvider != null && storageProvider.getStorageType() == PlayTimeStorageProvider.StorageType
+                .FLAT_FILE;
     }
 
     /**
@@ -128,6 +189,28 @@ public class PlayTimeStorageManager {
         }
     }
 
+    /**
+     * Shut down the storage providers. Storage work that is still queued is finished first, after which connections
+     * to databases and journals of flatfile storage are closed.
+     */
+    public void shutdown() {
+        plugin.debugMessage("Awaiting termination of storage threads...");
+
+        // The executor is shared by all storage providers, so it is stopped before any of them disconnects.
+        if (!storageExecutor.isShutdown() && !storageExecutor.shutdown(30, TimeUnit.SECONDS)) {
+            plugin.getLogger().warning("Not all storage tasks finished within 30 seconds, " +
+                    storageExecutor.getQueueDepth() + " tasks were still queued.");
+        }
+
+        for (PlayTimeStorageProvider storageProvider : activeStorageProviders) {
+            if (storageProvider instanceof MySQLStorageProvider) {
+                ((MySQLStorageProvider) storageProvider).disconnectDatabase();
+            } else if (storageProvider instanceof FlatFileStorageProvider) {
+                ((FlatFileStorageProvider) storageProvider).closeJournal();
+            }
+        }
+    }
+
     /**
      * Do a calendar check for all storage providers to see whether a certain storage file is outdated.
      */
@@ -147,7 +230,7 @@ public class PlayTimeStorageManager {
      */
     public void setPlayerTime(TimeType timeType, UUID uuid, int value) {
         for (PlayTimeStorageProvider storageProvider : activeStorageProviders) {
-            storageProvider.setPlayerTime(timeType, uuid, value);
+            setPlayerTime(storageProvider, timeType, uuid, value);
         }
     }
 
@@ -183,7 +266,7 @@ public class PlayTimeStorageManager {
             if (storageProvider.getStorageType() != storageType) return;
 
             // Set player time to this storage type.
-            storageProvider.setPlayerTime(timeType, uuid, value);
+            setPlayerTime(storageProvider, timeType, uuid, value);
         });
     }
 
@@ -196,7 +279,7 @@ public class PlayTimeStorageManager {
      */
     public void addPlayerTime(TimeType timeType, UUID uuid, int value) {
         for (PlayTimeStorageProvider storageProvider : activeStorageProviders) {
-            storageProvider.addPlayerTime(timeType, uuid, value);
+            addPlayerTime(storageProvider, timeType, uuid, value);
         }
     }
 
@@ -212,6 +295,176 @@ public class PlayTimeStorageManager {
         }
     }
 
+    /**
+     * Add time to the current time of multiple players (for all time types) for all storage providers at once.
+     *
+     * @param timesToAdd Time to add for each player
+     */
+    public void addPlayerTimes(Map<UUID, Integer> timesToAdd) {
+        if (timesToAdd.isEmpty()) return;
+
+        // Copy the times, as the change may be replayed on a ranked index later.
+        Map<UUID, Integer> times = new HashMap<>(timesToAdd);
+
+        for (TimeType timeType : TimeType.values()) {
+            for (PlayTimeStorageProvider storageProvider : activeStorageProviders) {
+                if (storageProvider != primaryStorageProvider) {
+                    storageProvider.addPlayerTimes(timeType, times);
+                    continue;
+                }
+
+                // Change the index together with the storage provider, so a load of the index does not miss it.
+                synchronized (rankedIndexes.get(timeType)) {
+                    storageProvider.addPlayerTimes(timeType, times);
+
+                    changeRankedIndex(timeType, rankedIndex -> times.forEach(rankedIndex::addTime));
+                }
+            }
+        }
+    }
+
+    private void setPlayerTime(PlayTimeStorageProvider storageProvider, TimeType timeType, UUID uuid, int value) {
+        if (storageProvider != primaryStorageProvider) {
+            storageProvider.setPlayerTime(timeType, uuid, value);
+            return;
+        }
+
+        synchronized (rankedIndexes.get(timeType)) {
+            storageProvider.setPlayerTime(timeType, uuid, value);
+
+            changeRankedIndex(timeType, rankedIndex -> rankedIndex.setTime(uuid, value));
+        }
+    }
+
+    private void addPlayerTime(PlayTimeStorageProvider storageProvider, TimeType timeType, UUID uuid, int value) {
+        if (storageProvider != primaryStorageProvider) {
+            storageProvider.addPlayerTime(timeType, uuid, value);
+            return;
+        }
+
+        synchronized (rankedIndexes.get(timeType)) {
+            storageProvider.addPlayerTime(timeType, uuid, value);
+
+            changeRankedIndex(timeType, rankedIndex -> rankedIndex.addTime(uuid, value));
+        }
+    }
+
+    /**
+     * Apply a change to the ranked index of a type of time. If a new index is being loaded, the change is also
+     * kept so it can be replayed on the new index. The lock of the ranked index should be held.
+     */
+    private void changeRankedIndex(TimeType timeType, Consumer<RankedIndex> change) {
+        change.accept(rankedIndexes.get(timeType));
+
+        List<Consumer<RankedIndex>> bufferedChanges = bufferedIndexChanges.get(timeType);
+
+        if (bufferedChanges != null) {
+            bufferedChanges.add(change);
+        }
+    }
+
+    /**
+     * Get the time of the players of the primary storage provider, ranked on time. The index is kept up to date
+     * with every change that is made through this storage manager. If the primary storage provider is not local
+     * (see {@link #isPrimaryStorageProviderLocal()}), time that other servers add is only included once the index
+     * is loaded again, which happens every 30 minutes.
+     *
+     * @param timeType Type of time
+     * @return ranked index of the given type of time, or empty if it has not been loaded yet.
+     */
+    public Optional<RankedIndex> getRankedIndex(TimeType timeType) {
+        if (!rankedIndexesLoaded) return Optional.empty();
+
+        return Optional.of(rankedIndexes.get(timeType));
+    }
+
+    /**
+     * Load the time of all players of the primary storage provider into the ranked indexes, see
+     * {@link #getRankedIndex(TimeType)}. This should be done when the storage providers have been loaded, and
+     * after time has been changed in the storage provider directly (for example by importing or purging data).
+     * <br>
+     * <br>
+     * The times are loaded into new indexes, so the current indexes can still be changed in the meantime. Those
+     * changes are replayed on the new indexes before they replace the current ones. A change that is made while the
+     * times are being read may already be included in them, in which case it is counted twice until the next load.
+     */
+    public void loadRankedIndexes() {
+        PlayTimeStorageProvider storageProvider = primaryStorageProvider;
+
+        if (storageProvider == null) return;
+
+        long startTime = System.currentTimeMillis();
+
+        List<CompletableFuture<Boolean>> loads = new ArrayList<>();
+
+        for (TimeType timeType : TimeType.values()) {
+            loads.add(loadRankedIndex(storageProvider, timeType));
+        }
+
+        CompletableFuture.allOf(loads.toArray(new CompletableFuture[0])).thenRun(() -> {
+            // The primary storage provider may have changed in the meantime.
+            if (storageProvider != primaryStorageProvider) return;
+
+            if (!loads.stream().allMatch(CompletableFuture::join)) {
+                plugin.getLogger().warning("Could not load the ranked indexes of " + storageProvider.getName() + ".");
+                return;
+            }
+
+            rankedIndexesLoaded = true;
+
+            plugin.debugMessage("Loaded ranked indexes of " + storageProvider.getName() + " in " +
+                    (System.currentTimeMillis() - startTime) + " ms.");
+        });
+    }
+
+    /**
+     * Load the time of all players of a storage provider into a new index and let it replace the ranked index of
+     * the given type of time. No thread of the storage executor waits for another task while this is done.
+     *
+     * @return a future that is true if the index was replaced, or false if it could not be loaded.
+     */
+    private CompletableFuture<Boolean> loadRankedIndex(PlayTimeStorageProvider storageProvider, TimeType timeType) {
+        RankedIndex rankedIndex = rankedIndexes.get(timeType);
+
+        List<Consumer<RankedIndex>> bufferedChanges = new ArrayList<>();
+
+        // Keep the changes that are made from now on, so they can be replayed on the new index.
+        synchronized (rankedIndex) {
+            bufferedIndexChanges.put(timeType, bufferedChanges);
+        }
+
+        return CompletableFuture.supplyAsync(() -> storageProvider.getStoredPlayers(timeType), storageExecutor)
+                .thenCompose(uuids -> storageProvider.getPlayerTimes(timeType, uuids))
+                .thenApply(times -> {
+                    RankedIndex loadedIndex = new RankedIndex(timeType);
+
+                    loadedIndex.load(times);
+
+                    synchronized (rankedIndex) {
+                        // A newer load has started, which will replace the index instead.
+                        if (bufferedIndexChanges.get(timeType) != bufferedChanges) return true;
+
+                        bufferedIndexChanges.remove(timeType);
+
+                        bufferedChanges.forEach(change -> change.accept(loadedIndex));
+
+                        rankedIndex.replaceWith(loadedIndex);
+                    }
+
+                    return true;
+                }).exceptionally(throwable -> {
+                    throwable.printStackTrace();
+
+                    synchronized (rankedIndex) {
+                        if (bufferedIndexChanges.get(timeType) == bufferedChanges) {
+                            bufferedIndexChanges.remove(timeType);
+                        }
+                    }
+
+                    return false;
+                });
+    }
+
     /**
      * Add time to a player's current time for specific storage providers. This means that the player time will only
      * be updated for a player if the storage type of the storage provider matches the given storage type.
@@ -232,7 +485,7 @@ public class PlayTimeStorageManager {
             if (storageProvider.getStorageType() != storageType) return;
 
             // Add player time to this storage type.
-            storageProvider.addPlayerTime(timeType, uuid, value);
+            addPlayerTime(storageProvider, timeType, uuid, value);
         });
     }
 
@@ -280,6 +533,8 @@ public class PlayTimeStorageManager {
 
             storageProvider.importData();
         }
+
+        loadRankedIndexes();
     }
 
     /**
@@ -306,32 +561,28 @@ public class PlayTimeStorageManager {
     }
 
     /**
-     * Check whether all the storage files are still up-to-date or if they should be
-     * reset. Autorank stores what values were previously found for the day,
-     * week and month and compares these to the current values. If a new day has
-     * arrived, the daily time file has to be reset.
+     * Check whether a new day, week or month has started since the last check. Storage providers store the period
+     * (see {@link TimeType#getPeriod(LocalDate)}) along with the daily, weekly and monthly time, so time of an
+     * earlier period is ignored without having to reset any data. This check only announces the new period and
+     * refreshes the leaderboards.
      * <br>
      * <br>
      * Also see {@link #isDataFileOutdated(TimeType)} for more info.
      */
     public void checkDataIsUpToDate() {
-        // Check if all storage files are still up to date.
-        // Check if daily, weekly or monthly files should be reset.
+        // Check if daily, weekly or monthly time has rolled over to a new period.
 
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+        storageExecutor.execute(() -> {
             LocalDate today = LocalDate.now();
 
-            plugin.debugMessage("Running check to see if data files are still up to date.");
+            plugin.debugMessage("Running check to see if a new period has started.");
 
             for (final TimeType type : TimeType.values()) {
-                // If data file is not outdated, leave it be.
+                // If the period has not changed, leave it be.
                 if (!PlayTimeStorageManager.this.isDataFileOutdated(type)) {
                     continue;
                 }
 
-                // We should reset it now, it has expired.
-                activeStorageProviders.forEach(provider -> provider.resetData(type));
-
                 int value = 0;
 
                 String broadcastMessage = "";
@@ -363,6 +614,18 @@ public class PlayTimeStorageManager {
         });
     }
 
+    /**
+     * Get the period of time that was stored by a version of Autorank that did not store periods yet. Those versions
+     * reset the time when a new period started, so the stored time belongs to the current period, unless the period
+     * has changed since Autorank last checked.
+     *
+     * @param timeType Type of time
+     * @return the current period, or -1 if the stored time belongs to an earlier period.
+     */
+    public int getLegacyPeriod(TimeType timeType) {
+        return isDataFileOutdated(timeType) ? -1 : timeType.getCurrentPeriod();
+    }
+
 
     /**
      * Check whether a storage file for a given time type is outdated. Autorank stores players' time in different
@@ -3,8 +3,7 @@ package me.armar.plugins.autorank.storage;
 import me.armar.plugins.autorank.Autorank;
 
 import java.time.LocalDate;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -47,6 +46,77 @@ public abstract class PlayTimeStorageProvider {
      */
     public abstract CompletableFuture<Integer> getPlayerTime(TimeType timeType, UUID uuid);
 
+    /**
+     * Get time of multiple players at once (for a given type of time). By default, the time of every player is
+     * requested separately. Storage providers should override this if they can retrieve the time of many players
+     * more efficiently.
+     *
+     * @param timeType Type of time to request.
+     * @param uuids    UUIDs of the players.
+     * @return a map with the (possibly cached) time of each player. Players that are not stored have a time of zero.
+     */
+    public CompletableFuture<Map<UUID, Integer>> getPlayerTimes(TimeType timeType, Collection<UUID> uuids) {
+        Map<UUID, CompletableFuture<Integer>> futures = new HashMap<>();
+
+        for (UUID uuid : uuids) {
+            futures.put(uuid, this.getPlayerTime(timeType, uuid));
+        }
+
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).thenApply(v -> {
+            Map<UUID, Integer> times = new HashMap<>();
+
+            futures.forEach((uuid, future) -> times.put(uuid, future.join()));
+
+            return times;
+        });
+    }
+
+    /**
+     * Get the players with the most time (for a given type of time), sorted from most to least time. By default,
+     * the time of all stored players is requested and the best players are selected in memory. Storage providers
+     * should override this if they can select the best players more efficiently.
+     *
+     * @param timeType Type of time
+     * @param limit    Maximum number of players to return
+     * @param offset   Number of best players to skip
+     * @return an ordered map of players and their time, starting with the player that has the most time.
+     */
+    public CompletableFuture<Map<UUID, Integer>> getTopPlayers(TimeType timeType, int limit, int offset) {
+        return this.getPlayerTimes(timeType, this.getStoredPlayers(timeType)).thenApply(times -> {
+            TopPlayersCollector collector = new TopPlayersCollector(limit + offset);
+
+            times.forEach(collector::offer);
+
+            return collector.getSortedPlayers(offset);
+        });
+    }
+
+    /**
+     * Get the players with the most time for several types of time at once, sorted from most to least time. By
+     * default, the best players of every type of time are requested separately. Storage providers should override
+     * this if they can read the time of all types of time in a single pass.
+     *
+     * @param timeTypes Types of time
+     * @param limit     Maximum number of players to return for each type of time
+     * @return for each of the given types of time, an ordered map of players and their time, starting with the
+     * player that has the most time.
+     */
+    public CompletableFuture<Map<TimeType, Map<UUID, Integer>>> getTopPlayers(Set<TimeType> timeTypes, int limit) {
+        Map<TimeType, CompletableFuture<Map<UUID, Integer>>> futures = new EnumMap<>(TimeType.class);
+
+        for (TimeType timeType : timeTypes) {
+            futures.put(timeType, this.getTopPlayers(timeType, limit, 0));
+        }
+
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).thenApply(v -> {
+            Map<TimeType, Map<UUID, Integer>> topPlayers = new EnumMap<>(TimeType.class);
+
+            futures.forEach((timeType, future) -> topPlayers.put(timeType, future.join()));
+
+            return topPlayers;
+        });
+    }
+
     /**
      * Reset data for a given type of time, setting all times (for the given time type) to zero for all players.
      *
@@ -63,6 +133,18 @@ public abstract class PlayTimeStorageProvider {
      */
     public abstract void addPlayerTime(TimeType timeType, UUID uuid, int timeToAdd);
 
+    /**
+     * Add time to the time of multiple players at once, for a given time type. By default, the time is added to every
+     * player separately. Storage providers should override this if they can add time to many players more
+     * efficiently.
+     *
+     * @param timeType   Type of time
+     * @param timesToAdd Time to add for each player
+     */
+    public void addPlayerTimes(TimeType timeType, Map<UUID, Integer> timesToAdd) {
+        timesToAdd.forEach((uuid, timeToAdd) -> this.addPlayerTime(timeType, uuid, timeToAdd));
+    }
+
     /**
      * Get the name of this storage provider.
      *
@@ -159,6 +241,16 @@ public abstract class PlayTimeStorageProvider {
      */
     public abstract boolean isLoaded();
 
+    /**
+     * Get statistics about the internals of this storage provider, such as caches or buffers. These are shown in the
+     * debug file of Autorank. Storage providers that have nothing to report return an empty list.
+     *
+     * @return a list of lines that describe the state of this storage provider.
+     */
+    public List<String> getDebugStatistics() {
+        return new ArrayList<>();
+    }
+
     /**
      * Different types of storage that a StorageProvider may use.
      */
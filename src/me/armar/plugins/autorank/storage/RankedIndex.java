@@ -0,0 +1,377 @@
+package me.armar.plugins.autorank.storage;
+
+import java.util.*;
+import java.util.function.IntSupplier;
+
+/**
+ * This class keeps the time of all players of a single type of time ranked in memory, so the leaderboard never has
+ * to be rebuilt. It is an order-statistic tree (a treap where every node knows the size of its subtree), ordered on
+ * time (descending) and UUID, the same order as the {@link TopPlayersCollector}.
+ * <br>
+ * <br>
+ * Changing the time of a player, finding the rank of a player and finding the player at a given rank all take
+ * O(log n) time. Getting K players from a given rank takes O(log n + K) time.
+ * <br>
+ * <br>
+ * Daily, weekly and monthly time only count for the current period (see {@link TimeType#getCurrentPeriod()}).
+ * When a new period starts, the index is cleared.
+ */
+public class RankedIndex {
+
+    // Supplies the current period of the type of time.
+    private final IntSupplier currentPeriod;
+
+    // Node of every player in the tree.
+    private Map<UUID, Node> nodes = new HashMap<>();
+    private Node root;
+
+    // Period that the times in the index belong to.
+    private int period;
+
+    // Seed of the generator of the priorities of nodes (xorshift).
+    private long seed = 0x2545F4914F6CDD1DL;
+
+    public RankedIndex(TimeType timeType) {
+        this(timeType::getCurrentPeriod);
+    }
+
+    /**
+     * Create an index that gets the current period from the given supplier, for example to test the start of a new
+     * period.
+     *
+     * @param currentPeriod Supplier of the current period
+     */
+    RankedIndex(IntSupplier currentPeriod) {
+        this.currentPeriod = currentPeriod;
+        this.period = currentPeriod.getAsInt();
+    }
+
+    /**
+     * Replace the contents of the index.
+     *
+     * @param times Time of every player
+     */
+    public synchronized void load(Map<UUID, Integer> times) {
+        clear();
+
+        times.forEach(this::setTime);
+    }
+
+    /**
+     * Replace the contents of the index by the contents of another index, for example one that was loaded while
+     * this index was in use. The other index should not be used afterwards.
+     *
+     * @param other Index to take the contents of
+     */
+    public synchronized void replaceWith(RankedIndex other) {
+        synchronized (other) {
+            nodes = other.nodes;
+            root = other.root;
+            period = other.period;
+            seed = other.seed;
+
+            other.nodes = new HashMap<>();
+            other.root = null;
+        }
+    }
+
+    /**
+     * Set the time of a player.
+     *
+     * @param uuid UUID of the player
+     * @param time New time of the player
+     */
+    public synchronized void setTime(UUID uuid, int time) {
+        checkPeriod();
+
+        Node node = nodes.get(uuid);
+
+        if (node != null) {
+            if (node.time == time) return;
+
+            root = remove(root, node);
+        } else {
+            node = new Node(uuid, nextPriority());
+
+            nodes.put(uuid, node);
+        }
+
+        node.time = time;
+        node.left = null;
+        node.right = null;
+        node.size = 1;
+
+        root = insert(root, node);
+    }
+
+    /**
+     * Add time to the time of a player.
+     *
+     * @param uuid      UUID of the player
+     * @param timeToAdd Time to add, may be negative
+     */
+    public synchronized void addTime(UUID uuid, int timeToAdd) {
+        if (timeToAdd == 0) return;
+
+        setTime(uuid, getTime(uuid) + timeToAdd);
+    }
+
+    /**
+     * Remove a player from the index.
+     *
+     * @param uuid UUID of the player
+     */
+    public synchronized void remove(UUID uuid) {
+        Node node = nodes.remove(uuid);
+
+        if (node != null) {
+            root = remove(root, node);
+        }
+    }
+
+    /**
+     * Remove all players from the index.
+     */
+    public synchronized void clear() {
+        nodes.clear();
+        root = null;
+        period = currentPeriod.getAsInt();
+    }
+
+    /**
+     * Get the time of a player.
+     *
+     * @param uuid UUID of the player
+     * @return time of the player, or zero if the player is not in the index.
+     */
+    public synchronized int getTime(UUID uuid) {
+        checkPeriod();
+
+        Node node = nodes.get(uuid);
+
+        return node == null ? 0 : node.time;
+    }
+
+    /**
+     * Get the rank of a player, where the player with the most time has rank 1. A player that is in the index has a
+     * rank, even if the player has no time.
+     *
+     * @param uuid UUID of the player
+     * @return rank of the player, or -1 if the player is not in the index.
+     */
+    public int getRank(UUID uuid) {
+        return getRank(uuid, Collections.emptySet());
+    }
+
+    /**
+     * Get the rank of a player, where the player with the most time has rank 1, while skipping some players (for
+     * example, players that are exempted from the leaderboard). This takes O(log n + e) time, where e is the number
+     * of skipped players.
+     *
+     * @param uuid            UUID of the player
+     * @param excludedPlayers Players that do not take up a rank
+     * @return rank of the player, or -1 if the player is not in the index or is excluded.
+     */
+    public synchronized int getRank(UUID uuid, Collection<UUID> excludedPlayers) {
+        checkPeriod();
+
+        Node target = nodes.get(uuid);
+
+        if (target == null || excludedPlayers.contains(uuid)) return -1;
+
+        // Excluded players that are ranked before the player.
+        int excludedBefore = 0;
+
+        for (UUID excludedPlayer : excludedPlayers) {
+            Node node = nodes.get(excludedPlayer);
+
+            if (node != null && compare(node, target) < 0) {
+                excludedBefore++;
+            }
+        }
+
+        int rank = 1;
+        Node node = root;
+
+        while (node != target) {
+            if (compare(target, node) < 0) {
+                node = node.left;
+            } else {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+
+        return rank + size(node.left) - excludedBefore;
+    }
+
+    /**
+     * Get the players with the most time.
+     *
+     * @param limit  Maximum number of players to return
+     * @param offset Number of best players to skip
+     * @return an ordered map of players and their time, sorted on time (descending).
+     */
+    public synchronized Map<UUID, Integer> getTopPlayers(int limit, int offset) {
+        checkPeriod();
+
+        Map<UUID, Integer> topPlayers = new LinkedHashMap<>();
+
+        int from = Math.max(offset, 0);
+        long to = Math.min((long) from + Math.max(limit, 0), size(root));
+
+        collect(root, 0, from, (int) to, topPlayers);
+
+        return topPlayers;
+    }
+
+    /**
+     * Get the number of players in the index.
+     *
+     * @return number of players.
+     */
+    public synchronized int size() {
+        checkPeriod();
+
+        return nodes.size();
+    }
+
+    private void checkPeriod() {
+        if (period != currentPeriod.getAsInt()) {
+            clear();
+        }
+    }
+
+    /**
+     * Add the players with an index in [from, to) of the given subtree to the map, in order.
+     *
+     * @param node  Root of the subtree
+     * @param first Index of the first player of the subtree
+     */
+    private static void collect(Node node, int first, int from, int to, Map<UUID, Integer> players) {
+        if (node == null || first >= to || first + node.size <= from) return;
+
+        int index = first + size(node.left);
+
+        collect(node.left, first, from, to, players);
+
+        if (index >= from && index < to) {
+            players.put(node.uuid, node.time);
+        }
+
+        collect(node.right, index + 1, from, to, players);
+    }
+
+    private static Node insert(Node tree, Node node) {
+        if (tree == null) return node;
+
+        // The node becomes the root of this subtree, with the nodes before and after it as children.
+        if (node.priority > tree.priority) {
+            Node[] parts = split(tree, node);
+
+            node.left = parts[0];
+            node.right = parts[1];
+
+            return update(node);
+        }
+
+        if (compare(node, tree) < 0) {
+            tree.left = insert(tree.left, node);
+        } else {
+            tree.right = insert(tree.right, node);
+        }
+
+        return update(tree);
+    }
+
+    private static Node remove(Node tree, Node node) {
+        if (tree == node) return merge(tree.left, tree.right);
+
+        if (compare(node, tree) < 0) {
+            tree.left = remove(tree.left, node);
+        } else {
+            tree.right = remove(tree.right, node);
+        }
+
+        return update(tree);
+    }
+
+    /**
+     * Split a tree into the nodes before the given node and the nodes after it.
+     */
+    private static Node[] split(Node tree, Node node) {
+        if (tree == null) return new Node[2];
+
+        if (compare(tree, node) < 0) {
+            Node[] parts = split(tree.right, node);
+
+            tree.right = parts[0];
+            parts[0] = update(tree);
+
+            return parts;
+        } else {
+            Node[] parts = split(tree.left, node);
+
+            tree.left = parts[1];
+            parts[1] = update(tree);
+
+            return parts;
+        }
+    }
+
+    /**
+     * Merge two trees, where all nodes of the first tree come before the nodes of the second tree.
+     */
+    private static Node merge(Node first, Node second) {
+        if (first == null) return second;
+        if (second == null) return first;
+
+        if (first.priority > second.priority) {
+            first.right = merge(first.right, second);
+            return update(first);
+        } else {
+            second.left = merge(first, second.left);
+            return update(second);
+        }
+    }
+
+    private static Node update(Node node) {
+        node.size = size(node.left) + size(node.right) + 1;
+
+        return node;
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Compare two nodes in leaderboard order: most time first, then on UUID.
+     */
+    private static int compare(Node first, Node second) {
+        int comparison = Integer.compare(second.time, first.time);
+
+        return comparison != 0 ? comparison : first.uuid.compareTo(second.uuid);
+    }
+
+    private int nextPriority() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+
+        return (int) (seed >>> 32);
+    }
+
+    private static class Node {
+        private final UUID uuid;
+        private final int priority;
+        private int time;
+        private int size = 1;
+        private Node left, right;
+
+        private Node(UUID uuid, int priority) {
+            this.uuid = uuid;
+            this.priority = priority;
+        }
+    }
+}
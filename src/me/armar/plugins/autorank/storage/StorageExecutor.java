@@ -0,0 +1,210 @@
+package me.armar.plugins.autorank.storage;
+
+import me.armar.plugins.autorank.Autorank;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class runs all storage work (such as database queries) of Autorank on a fixed number of threads, so it does
+ * not compete with other plugins for the common thread pool or the scheduler of the server.
+ * <br>
+ * <br>
+ * Tasks wait in a queue of bounded size. When the queue is full, a task is run directly on the thread that submits
+ * it, which slows down the submitter until the queue has room again. The main thread of the server is never slowed
+ * down: tasks that it submits while the queue is full are handed to the scheduler of the server instead.
+ * <br>
+ * <br>
+ * Tasks that should run periodically are timed by a single timer thread, but run on the threads of the executor (see
+ * {@link #scheduleAtFixedRate(Runnable, long, long, TimeUnit)}).
+ */
+public class StorageExecutor implements Executor {
+
+    private final Autorank plugin;
+
+    private final ThreadPoolExecutor executor;
+
+    // Thread that submits periodic tasks to the executor.
+    private final ScheduledExecutorService timer;
+
+    // Statistics of the executor
+    private final AtomicLong submittedTasks = new AtomicLong();
+    private final AtomicLong callerRunTasks = new AtomicLong();
+    private final AtomicLong overflowTasks = new AtomicLong();
+    private final AtomicLong totalWaitTime = new AtomicLong();
+    private final AtomicLong maxWaitTime = new AtomicLong();
+    private final AtomicLong startedTasks = new AtomicLong();
+
+    /**
+     * Create a new executor.
+     *
+     * @param instance  Instance of Autorank
+     * @param threads   Number of threads that run storage tasks
+     * @param queueSize Maximum number of tasks that can wait for a thread
+     */
+    public StorageExecutor(Autorank instance, int threads, int queueSize) {
+        this.plugin = instance;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "Autorank-Storage-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, (runnable, pool) -> this.handleFullQueue(runnable));
+
+        // Don't keep idle threads around when there is nothing to do.
+        this.executor.allowCoreThreadTimeOut(true);
+
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Autorank-Storage-Timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Run a task periodically on this executor. A run is skipped if the previous run has not finished yet, so a
+     * slow task (for example, while the database cannot be reached) does not fill the queue.
+     *
+     * @param task         Task to run
+     * @param initialDelay Time before the first run
+     * @param period       Time between the start of two runs
+     * @param unit         Unit of the delay and period
+     * @return a future that can be used to cancel the task.
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        AtomicBoolean running = new AtomicBoolean();
+
+        return timer.scheduleAtFixedRate(() -> {
+            if (executor.isShutdown() || !running.compareAndSet(false, true)) return;
+
+            try {
+                this.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        running.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                running.set(false);
+            }
+        }, initialDelay, period, unit);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        submittedTasks.incrementAndGet();
+
+        long submitTime = System.nanoTime();
+
+        executor.execute(() -> {
+            long waitTime = System.nanoTime() - submitTime;
+
+            startedTasks.incrementAndGet();
+            totalWaitTime.addAndGet(waitTime);
+            maxWaitTime.accumulateAndGet(waitTime, Math::max);
+
+            task.run();
+        });
+    }
+
+    private void handleFullQueue(Runnable task) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Storage executor has been shut down.");
+        }
+
+        if (plugin.getServer().isPrimaryThread()) {
+            // Never block the main thread of the server.
+            overflowTasks.incrementAndGet();
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, task);
+        } else {
+            callerRunTasks.incrementAndGet();
+            task.run();
+        }
+    }
+
+    /**
+     * Stop accepting new tasks and wait for all queued tasks to finish.
+     *
+     * @param timeout Maximum time to wait
+     * @param unit    Unit of the timeout
+     * @return true if all tasks have finished, false if the timeout passed before that.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        timer.shutdownNow();
+        executor.shutdown();
+
+        try {
+            return executor.awaitTermination(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    /**
+     * Get the number of tasks that are waiting for a thread.
+     *
+     * @return number of queued tasks.
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveThreads() {
+        return executor.getActiveCount();
+    }
+
+    public long getSubmittedTasks() {
+        return submittedTasks.get();
+    }
+
+    /**
+     * Get the number of tasks that were run on the thread that submitted them, because the queue was full.
+     *
+     * @return number of tasks run by the submitter.
+     */
+    public long getCallerRunTasks() {
+        return callerRunTasks.get();
+    }
+
+    /**
+     * Get the number of tasks that the main thread submitted while the queue was full.
+     *
+     * @return number of tasks handed to the scheduler of the server.
+     */
+    public long getOverflowTasks() {
+        return overflowTasks.get();
+    }
+
+    /**
+     * Get the average time a task waited in the queue before it was started.
+     *
+     * @return wait time in milliseconds.
+     */
+    public double getAverageWaitTime() {
+        long started = startedTasks.get();
+
+        if (started == 0) return 0;
+
+        return totalWaitTime.get() / 1_000_000.0 / started;
+    }
+
+    /**
+     * Get the longest time a task waited in the queue before it was started.
+     *
+     * @return wait time in milliseconds.
+     */
+    public double getMaxWaitTime() {
+        return maxWaitTime.get() / 1_000_000.0;
+    }
+}
@@ -1,5 +1,9 @@
 package me.armar.plugins.autorank.storage;
 
+import java.time.LocalDate;
+import java.time.temporal.WeekFields;
+import java.util.Locale;
+
 /**
  * Represents a type of time that Autorank stores.
  * <br>
@@ -8,5 +12,35 @@ package me.armar.plugins.autorank.storage;
  * Every day, week or month these files are reset. The total time data is, trivially, never reset.
  */
 public enum TimeType {
-    DAILY_TIME, WEEKLY_TIME, MONTHLY_TIME, TOTAL_TIME
+    DAILY_TIME, WEEKLY_TIME, MONTHLY_TIME, TOTAL_TIME;
+
+    /**
+     * Get the period that a date belongs to for this type of time. Every day, week or month has its own period,
+     * which never occurs again in another year. Total time only has a single period.
+     *
+     * @param date Date to get the period of
+     * @return identifier of the period of the date.
+     */
+    public int getPeriod(LocalDate date) {
+        switch (this) {
+            case DAILY_TIME:
+                return (int) date.toEpochDay();
+            case WEEKLY_TIME:
+                WeekFields weekFields = WeekFields.of(Locale.getDefault());
+                return date.get(weekFields.weekBasedYear()) * 100 + date.get(weekFields.weekOfWeekBasedYear());
+            case MONTHLY_TIME:
+                return date.getYear() * 100 + date.getMonthValue();
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Get the period of today for this type of time. See {@link #getPeriod(LocalDate)}.
+     *
+     * @return identifier of the current period.
+     */
+    public int getCurrentPeriod() {
+        return getPeriod(LocalDate.now());
+    }
 }
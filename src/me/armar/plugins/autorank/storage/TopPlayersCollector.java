@@ -0,0 +1,89 @@
+package me.armar.plugins.autorank.storage;
+
+import java.util.*;
+
+/**
+ * This class collects the players with the most time out of a stream of players, without sorting all of them. It
+ * keeps a bounded heap of the best players it has seen so far, so collecting the top K of N players takes
+ * O(N log K) time and O(K) memory.
+ * <br>
+ * <br>
+ * Players are ordered on time (descending). Players with the same time are ordered on UUID, so the order is stable.
+ */
+public class TopPlayersCollector {
+
+    // Order of the leaderboard: most time first.
+    private static final Comparator<Map.Entry<UUID, Integer>> LEADERBOARD_ORDER =
+            Comparator.<Map.Entry<UUID, Integer>>comparingInt(Map.Entry::getValue).reversed()
+                    .thenComparing(Map.Entry::getKey);
+
+    private final int capacity;
+
+    // Heap with the worst of the collected players at the head.
+    private final PriorityQueue<Map.Entry<UUID, Integer>> heap;
+
+    /**
+     * Create a collector that keeps the given number of players.
+     *
+     * @param capacity Number of players to keep
+     */
+    public TopPlayersCollector(int capacity) {
+        this.capacity = Math.max(capacity, 0);
+        this.heap = new PriorityQueue<>(Math.max(this.capacity, 1), LEADERBOARD_ORDER.reversed());
+    }
+
+    /**
+     * Offer the time of a player. The player is only kept if it is among the best players seen so far.
+     *
+     * @param uuid UUID of the player
+     * @param time Time of the player
+     */
+    public void offer(UUID uuid, int time) {
+        if (capacity == 0) return;
+
+        if (heap.size() < capacity) {
+            heap.add(new AbstractMap.SimpleImmutableEntry<>(uuid, time));
+            return;
+        }
+
+        Map.Entry<UUID, Integer> worst = heap.peek();
+
+        // Only replace the worst player if the new player is better.
+        if (time > worst.getValue() || (time == worst.getValue() && uuid.compareTo(worst.getKey()) < 0)) {
+            heap.poll();
+            heap.add(new AbstractMap.SimpleImmutableEntry<>(uuid, time));
+        }
+    }
+
+    /**
+     * Offer all players that another collector has kept. This is used to combine collectors that each saw a part of
+     * the players.
+     *
+     * @param other Collector to take the players of
+     */
+    public void offerAll(TopPlayersCollector other) {
+        for (Map.Entry<UUID, Integer> entry : other.heap) {
+            offer(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Get the collected players, sorted on time (descending).
+     *
+     * @param offset Number of best players to skip
+     * @return an ordered map of the collected players (after the offset) and their time.
+     */
+    public Map<UUID, Integer> getSortedPlayers(int offset) {
+        List<Map.Entry<UUID, Integer>> entries = new ArrayList<>(heap);
+
+        entries.sort(LEADERBOARD_ORDER);
+
+        Map<UUID, Integer> sortedPlayers = new LinkedHashMap<>();
+
+        for (int i = Math.max(offset, 0); i < entries.size(); i++) {
+            sortedPlayers.put(entries.get(i).getKey(), entries.get(i).getValue());
+        }
+
+        return sortedPlayers;
+    }
+}
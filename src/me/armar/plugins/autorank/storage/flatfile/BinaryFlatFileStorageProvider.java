@@ -0,0 +1,358 @@
+package me.armar.plugins.autorank.storage.flatfile;
+
+import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.backup.BackupManager;
+import me.armar.plugins.autorank.storage.PlayTimeStorageProvider;
+import me.armar.plugins.autorank.storage.TimeType;
+import me.armar.plugins.autorank.storage.TopPlayersCollector;
+import me.armar.plugins.autorank.util.AutorankTools;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This storage provider stores the play time of players locally, like the {@link FlatFileStorageProvider}. Instead
+ * of four YAML files, it uses a single binary file ({@link PlayTimeDataFile}) that is memory-mapped. Time is updated
+ * in place and saving only writes the parts of the file that were changed.
+ * <br>
+ * <br>
+ * When the binary file does not exist yet, the data of the YAML files of the {@link FlatFileStorageProvider} is
+ * converted once. The conversion is written to a temporary file that replaces the binary file when it is complete,
+ * so a conversion that is interrupted is started over on the next start.
+ */
+public class BinaryFlatFileStorageProvider extends PlayTimeStorageProvider {
+
+    private final String pathDataFile = "/data/Playtime.dat";
+
+    // Files of the YAML storage provider that are converted when there is no binary file yet.
+    private final Map<TimeType, String> yamlDataPaths = new HashMap<TimeType, String>() {
+        {
+            put(TimeType.TOTAL_TIME, "/data/Total_time.yml");
+            put(TimeType.DAILY_TIME, "/data/Daily_time.yml");
+            put(TimeType.WEEKLY_TIME, "/data/Weekly_time.yml");
+            put(TimeType.MONTHLY_TIME, "/data/Monthly_time.yml");
+        }
+    };
+
+    private PlayTimeDataFile dataFile;
+
+    private boolean isLoaded = false;
+
+    public BinaryFlatFileStorageProvider(Autorank instance) {
+        super(instance);
+    }
+
+    @Override
+    public void setPlayerTime(TimeType timeType, UUID uuid, int time) {
+        plugin.debugMessage("Setting time of " + uuid.toString() + " to " + time + " (" + timeType.name() + ").");
+
+        plugin.getLoggerManager().logMessage("Setting (Binary flatfile) " + timeType.name() + " of " + uuid.toString()
+                + " to: " + time);
+
+        dataFile.setTime(timeType, uuid, time);
+    }
+
+    @Override
+    public CompletableFuture<Integer> getPlayerTime(TimeType timeType, UUID uuid) {
+        return CompletableFuture.completedFuture(dataFile.getTime(timeType, uuid));
+    }
+
+    @Override
+    public CompletableFuture<Map<UUID, Integer>> getPlayerTimes(TimeType timeType, Collection<UUID> uuids) {
+        return CompletableFuture.completedFuture(dataFile.getTimes(timeType, uuids));
+    }
+
+    @Override
+    public CompletableFuture<Map<UUID, Integer>> getTopPlayers(TimeType timeType, int limit, int offset) {
+        TopPlayersCollector collector = new TopPlayersCollector(limit + offset);
+
+        dataFile.collectTimes(timeType, collector);
+
+        return CompletableFuture.completedFuture(collector.getSortedPlayers(offset));
+    }
+
+    @Override
+    public CompletableFuture<Map<TimeType, Map<UUID, Integer>>> getTopPlayers(Set<TimeType> timeTypes, int limit) {
+        Map<TimeType, Map<UUID, Integer>> topPlayers = new EnumMap<>(TimeType.class);
+
+        dataFile.collectTimes(timeTypes, limit).forEach((timeType, collector) ->
+                topPlayers.put(timeType, collector.getSortedPlayers(0)));
+
+        return CompletableFuture.completedFuture(topPlayers);
+    }
+
+    @Override
+    public void resetData(TimeType timeType) {
+        plugin.debugMessage("Resetting binary storage of '" + timeType + "'!");
+
+        plugin.getLoggerManager().logMessage("Resetting " + timeType.name() + " in binary storage file");
+
+        dataFile.resetTime(timeType);
+    }
+
+    @Override
+    public void addPlayerTime(TimeType timeType, UUID uuid, int timeToAdd) {
+        plugin.debugMessage("Adding " + timeToAdd + " to " + uuid.toString() + " (" + timeType.name() + ")");
+
+        int newTime = dataFile.addTime(timeType, uuid, timeToAdd);
+
+        plugin.debugMessage("New time of " + uuid.toString() + " is " + newTime + " (" + timeType.name() + ")");
+    }
+
+    @Override
+    public String getName() {
+        return "BinaryFlatFileStorageProvider";
+    }
+
+    @Override
+    public CompletableFuture<Boolean> initialiseProvider() {
+        return CompletableFuture.supplyAsync(() -> {
+            File file = new File(plugin.getDataFolder().getAbsolutePath() + File.separator + pathDataFile);
+
+            try {
+                // Convert the old YAML files if there is no binary file yet.
+                if (!file.exists()) {
+                    BinaryFlatFileStorageProvider.this.convertYamlFiles(file);
+                }
+
+                dataFile = new PlayTimeDataFile(file);
+                dataFile.open();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+
+            BinaryFlatFileStorageProvider.this.setLegacyPeriods(dataFile);
+
+            plugin.debugMessage("Loaded " + dataFile.size() + " players from binary storage file.");
+
+            // Register task for saving data file.
+            BinaryFlatFileStorageProvider.this.registerTasks();
+
+            isLoaded = true;
+
+            return true;
+        }, plugin.getPlayTimeStorageManager().getStorageExecutor());
+    }
+
+    @Override
+    public int purgeOldEntries(int threshold) {
+        int entriesRemoved = 0;
+
+        long currentTime = System.currentTimeMillis();
+
+        for (final UUID uuid : getStoredPlayers(TimeType.TOTAL_TIME)) {
+            // Get the player object that represents this UUID
+            OfflinePlayer offPlayer = plugin.getServer().getOfflinePlayer(uuid);
+
+            // Check if this player has ever logged in on the server
+            if (offPlayer.getName() == null) {
+                // Remove record
+                dataFile.remove(uuid);
+                entriesRemoved++;
+                continue;
+            }
+
+            // Check when the player has last logged in.
+            long lastPlayed = offPlayer.getLastPlayed();
+
+            // Check if 'last played time' is over threshold time.
+            if (lastPlayed <= 0 || (currentTime - lastPlayed) / 86400000 >= threshold) {
+                // Remove record
+                dataFile.remove(uuid);
+                entriesRemoved++;
+            }
+        }
+
+        return entriesRemoved;
+    }
+
+    @Override
+    public CompletableFuture<Integer> getNumberOfStoredPlayers(TimeType timeType) {
+        if (timeType == TimeType.TOTAL_TIME) {
+            return CompletableFuture.completedFuture(dataFile.size());
+        }
+
+        return CompletableFuture.completedFuture(getStoredPlayers(timeType).size());
+    }
+
+    @Override
+    public List<UUID> getStoredPlayers(TimeType timeType) {
+        return dataFile.getStoredUUIDs(timeType);
+    }
+
+    @Override
+    public void saveData() {
+        if (dataFile == null) return;
+
+        int flushedSegments = dataFile.flush();
+
+        plugin.debugMessage("Flushed " + flushedSegments + " changed segment(s) of binary storage file.");
+    }
+
+    @Override
+    public StorageType getStorageType() {
+        return StorageType.FLAT_FILE;
+    }
+
+    @Override
+    public boolean canImportData() {
+        return false;
+    }
+
+    /**
+     * The binary file cannot be edited by hand, so there are no changes to import. This does nothing, see
+     * {@link #canImportData()}.
+     */
+    @Override
+    public void importData() {
+    }
+
+    @Override
+    public boolean canBackupData() {
+        return true;
+    }
+
+    @Override
+    public boolean backupData() {
+        File backupFile = new File(plugin.getDataFolder().getAbsolutePath() + File.separator + "backups"
+                + File.separator + "Playtime-backup-" + BackupManager.dateFormat.format(new Date()) + ".dat");
+
+        plugin.debugMessage("Making a backup of " + pathDataFile);
+
+        try {
+            dataFile.copyTo(backupFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public int clearBackupsBeforeDate(LocalDate date) {
+        // Backups are stored in the same folder as the YAML backups, so we can use the same logic.
+        return FlatFileStorageProvider.clearBackupsBeforeDate(plugin, date);
+    }
+
+    @Override
+    public boolean isLoaded() {
+        return isLoaded;
+    }
+
+    /**
+     * Set the period of every time type that has no period yet. Files of older versions of Autorank do not store a
+     * period.
+     *
+     * @param dataFile File to set the periods of
+     */
+    private void setLegacyPeriods(PlayTimeDataFile dataFile) {
+        for (TimeType timeType : TimeType.values()) {
+            if (timeType != TimeType.TOTAL_TIME && dataFile.getPeriod(timeType) == 0) {
+                dataFile.setPeriod(timeType, plugin.getPlayTimeStorageManager().getLegacyPeriod(timeType));
+            }
+        }
+    }
+
+    /**
+     * Create the binary storage file from the time of players stored in the YAML files. The players are written to a
+     * work file first. When all YAML files have been converted, the work file is copied to a temporary file, which is
+     * moved to the target.
+     * <br>
+     * <br>
+     * The work file is memory-mapped, and its mappings are only released when they are garbage collected. Some
+     * platforms (such as Windows) do not allow a mapped file to be moved, so the copy, which was never mapped, is
+     * moved instead.
+     *
+     * @param target Binary storage file to create
+     * @throws IOException if the binary storage file could not be created.
+     */
+    private void convertYamlFiles(File target) throws IOException {
+        File workFile = new File(target.getPath() + ".conversion");
+        File temporaryFile = new File(target.getPath() + ".tmp");
+
+        // Left behind by a conversion that was interrupted.
+        Files.deleteIfExists(workFile.toPath());
+        Files.deleteIfExists(temporaryFile.toPath());
+
+        PlayTimeDataFile convertedFile = new PlayTimeDataFile(workFile);
+
+        convertedFile.open();
+
+        setLegacyPeriods(convertedFile);
+
+        for (Map.Entry<TimeType, String> entry : yamlDataPaths.entrySet()) {
+            File yamlFile = new File(plugin.getDataFolder().getAbsolutePath() + File.separator + entry.getValue());
+
+            if (!yamlFile.exists()) continue;
+
+            YamlConfiguration data = YamlConfiguration.loadConfiguration(yamlFile);
+
+            int period = data.getInt(FlatFileStorageProvider.PERIOD_KEY,
+                    plugin.getPlayTimeStorageManager().getLegacyPeriod(entry.getKey()));
+
+            // Time of an earlier period is no longer needed.
+            if (entry.getKey() != TimeType.TOTAL_TIME && period != entry.getKey().getCurrentPeriod()) continue;
+
+            int convertedPlayers = 0;
+
+            for (String uuidString : data.getKeys(false)) {
+                UUID uuid;
+
+                try {
+                    uuid = UUID.fromString(uuidString);
+                } catch (final IllegalArgumentException e) {
+                    continue;
+                }
+
+                convertedFile.setTime(entry.getKey(), uuid, data.getInt(uuidString, 0));
+                convertedPlayers++;
+            }
+
+            plugin.getLogger().info("Converted " + convertedPlayers + " players from " + yamlFile.getName() + " to " +
+                    "binary storage.");
+        }
+
+        convertedFile.copyTo(temporaryFile);
+        convertedFile.close();
+
+        try {
+            try {
+                Files.move(temporaryFile.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporaryFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().severe("Could not move the converted play time from " + temporaryFile.getName() +
+                    " to " + target.getName() + ", so binary storage cannot be loaded. The YAML files are left " +
+                    "unchanged and are converted again on the next start.");
+            throw e;
+        }
+
+        // The work file cannot be deleted while it is still mapped. It is deleted on the next conversion otherwise.
+        if (!workFile.delete()) {
+            workFile.deleteOnExit();
+        }
+    }
+
+    /**
+     * Register task for saving the data file.
+     */
+    private void registerTasks() {
+        this.plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, new Runnable() {
+            @Override
+            public void run() {
+                saveData();
+            }
+        }, AutorankTools.TICKS_PER_SECOND, AutorankTools.TICKS_PER_MINUTE);
+    }
+}
@@ -2,38 +2,72 @@ package me.armar.plugins.autorank.storage.flatfile;
 
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.backup.BackupManager;
-import me.armar.plugins.autorank.config.SimpleYamlConfiguration;
 import me.armar.plugins.autorank.storage.PlayTimeStorageProvider;
 import me.armar.plugins.autorank.storage.TimeType;
+import me.armar.plugins.autorank.storage.TopPlayersCollector;
 import me.armar.plugins.autorank.util.AutorankTools;
 import org.bukkit.OfflinePlayer;
-import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.text.ParseException;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+/**
+ * This storage provider stores the time of players in a YAML file per type of time. The files are only read when the
+ * provider is loaded. After that, the time of players is kept in a {@link PlayTimeTable} and the files are written
+ * from it when they are saved.
+ * <br>
+ * <br>
+ * The files of daily, weekly and monthly time store the period (see {@link TimeType#getPeriod(LocalDate)}) that their
+ * time belongs to. Time of an earlier period is read as zero, and is cleared by the first write in the new period.
+ * <br>
+ * <br>
+ * When the journal is enabled, every change is also written to a {@link PlayTimeJournal} within a second. The YAML
+ * files are then only a snapshot that is saved every couple of minutes, and changes made after the last snapshot are
+ * restored from the journal when the server was not stopped properly.
+ */
 public class FlatFileStorageProvider extends PlayTimeStorageProvider {
 
+    // Key of the period of the time in a file.
+    static final String PERIOD_KEY = "period";
+
     private final String pathTotalTimeFile = "/data/Total_time.yml";
     private final String pathDailyTimeFile = "/data/Daily_time.yml";
     private final String pathWeeklyTimeFile = "/data/Weekly_time.yml";
     private final String pathMonthlyTimeFile = "/data/Monthly_time.yml";
+    private final String pathJournalFile = "/data/Playtime.journal";
     // Store where the file for each time type is saved.
     private final Map<TimeType, String> dataTypePaths = new HashMap<>();
-    // Store for each time type a file to store data about players.
-    private final Map<TimeType, SimpleYamlConfiguration> dataFiles = new HashMap<>();
+
+    // Time of all players, for every time type.
+    private final PlayTimeTable table = new PlayTimeTable();
+    // Time types whose time has changed since their file was last saved.
+    private final Set<TimeType> changedTimeTypes = ConcurrentHashMap.newKeySet();
+    // Changes to the table hold the read lock while they mark their time type as changed and change the table. A save
+    // holds the write lock while it begins a checkpoint of the journal and chooses the time types to save, so every
+    // change in the journal before the checkpoint has marked its time type by then.
+    private final ReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+
+    // Journal of changes since the last snapshot, or null if the journal is disabled.
+    private volatile PlayTimeJournal journal;
 
     private boolean isLoaded = false;
 
@@ -51,96 +85,78 @@ public class FlatFileStorageProvider extends PlayTimeStorageProvider {
         plugin.getLoggerManager().logMessage("Setting (Flatfile) " + timeType.name() + " of " + uuid.toString() + " " +
                 "to: " + time);
 
-        final SimpleYamlConfiguration data = this.getDataFile(timeType);
+        checkpointLock.readLock().lock();
 
-        data.set(uuid.toString(), time);
+        try {
+            changedTimeTypes.add(timeType);
+            table.setTime(timeType, uuid, time);
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
     }
 
     @Override
     public CompletableFuture<Integer> getPlayerTime(TimeType timeType, UUID uuid) {
         // Get time of a player with specific type
-        final SimpleYamlConfiguration data = this.getDataFile(timeType);
+        return CompletableFuture.completedFuture(table.getTime(timeType, uuid));
+    }
 
-        return CompletableFuture.completedFuture(data.getInt(uuid.toString(), 0));
+    @Override
+    public CompletableFuture<Map<UUID, Integer>> getPlayerTimes(TimeType timeType, Collection<UUID> uuids) {
+        return CompletableFuture.completedFuture(table.getTimes(timeType, uuids));
     }
 
     @Override
-    public void resetData(TimeType timeType) {
-        final SimpleYamlConfiguration data = this.getDataFile(timeType);
+    public CompletableFuture<Map<UUID, Integer>> getTopPlayers(TimeType timeType, int limit, int offset) {
+        TopPlayersCollector collector = new TopPlayersCollector(limit + offset);
 
-        plugin.debugMessage("Resetting storage file '" + timeType + "'!");
+        table.collectTimes(timeType, collector);
 
-        // Delete file
-        final boolean deleted = data.getInternalFile().delete();
+        return CompletableFuture.completedFuture(collector.getSortedPlayers(offset));
+    }
 
-        // Don't create a new file if it wasn't deleted in the first place.
-        if (!deleted) {
-            plugin.debugMessage("Tried deleting storage file, but could not delete!");
-            return;
-        }
+    @Override
+    public CompletableFuture<Map<TimeType, Map<UUID, Integer>>> getTopPlayers(Set<TimeType> timeTypes, int limit) {
+        Map<TimeType, Map<UUID, Integer>> topPlayers = new EnumMap<>(TimeType.class);
 
-        // Create a new file so it's empty
-        if (timeType == TimeType.DAILY_TIME) {
-            plugin.getLoggerManager().logMessage("Resetting daily time file");
+        table.collectTimes(timeTypes, limit).forEach((timeType, collector) ->
+                topPlayers.put(timeType, collector.getSortedPlayers(0)));
 
-            try {
-                dataFiles.put(TimeType.DAILY_TIME,
-                        new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.DAILY_TIME), "Daily storage"));
-            } catch (InvalidConfigurationException e) {
-                e.printStackTrace();
-            }
-        } else if (timeType == TimeType.WEEKLY_TIME) {
-            plugin.getLoggerManager().logMessage("Resetting weekly time file");
+        return CompletableFuture.completedFuture(topPlayers);
+    }
 
-            try {
-                dataFiles.put(TimeType.WEEKLY_TIME,
-                        new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.WEEKLY_TIME), "Weekly storage"));
-            } catch (InvalidConfigurationException e) {
-                e.printStackTrace();
-            }
-        } else if (timeType == TimeType.MONTHLY_TIME) {
-            plugin.getLoggerManager().logMessage("Resetting monthly time file");
+    @Override
+    public void resetData(TimeType timeType) {
+        plugin.debugMessage("Resetting storage file '" + timeType + "'!");
 
-            try {
-                dataFiles.put(TimeType.MONTHLY_TIME,
-                        new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.MONTHLY_TIME), "Monthly " +
-                                "storage"));
-            } catch (InvalidConfigurationException e) {
-                e.printStackTrace();
-            }
-        } else if (timeType == TimeType.TOTAL_TIME) {
-            plugin.getLoggerManager().logMessage("Resetting total time file");
+        plugin.getLoggerManager().logMessage("Resetting " + timeType.name().toLowerCase(Locale.ROOT) + " file");
 
-            try {
-                dataFiles.put(TimeType.TOTAL_TIME,
-                        new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.TOTAL_TIME), "Total storage"));
-            } catch (InvalidConfigurationException e) {
-                e.printStackTrace();
-            }
+        checkpointLock.readLock().lock();
+
+        try {
+            changedTimeTypes.add(timeType);
+            table.resetTime(timeType);
+        } finally {
+            checkpointLock.readLock().unlock();
         }
     }
 
     @Override
     public void addPlayerTime(TimeType timeType, UUID uuid, int timeToAdd) {
-        int time = 0;
-
         plugin.debugMessage("Adding " + timeToAdd + " to " + uuid.toString() + " (" + timeType.name() + ")");
 
-        try {
-            time = this.getPlayerTime(timeType, uuid).get();
-            plugin.debugMessage("Player " + uuid.toString() + " already has " + time + " for (" + timeType.name() +
-                    ")");
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
-        }
+        int newTime;
 
-        if (time < 0) {
-            time = 0;
-        }
+        checkpointLock.readLock().lock();
 
-        plugin.debugMessage("New time of " + uuid.toString() + " will be " + (time + timeToAdd) + " (" + timeType.name() + ")");
+        try {
+            changedTimeTypes.add(timeType);
+            newTime = table.addTime(timeType, uuid, timeToAdd);
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
 
-        this.setPlayerTime(timeType, uuid, time + timeToAdd);
+        plugin.debugMessage("New time of " + uuid.toString() + " is " + newTime + " (" + timeType.name() + ")");
     }
 
     @Override
@@ -154,21 +170,24 @@ public class FlatFileStorageProvider extends PlayTimeStorageProvider {
             // Load data files
             FlatFileStorageProvider.this.loadDataFiles();
 
+            // Restore the changes that were made after the files were last saved.
+            if (plugin.getSettingsConfig().isFlatFileJournalEnabled()) {
+                FlatFileStorageProvider.this.loadJournal();
+            }
+
             // Register task for saving data files.
             FlatFileStorageProvider.this.registerTasks();
 
             isLoaded = true;
 
             return true;
-        });
+        }, plugin.getPlayTimeStorageManager().getStorageExecutor());
     }
 
     @Override
     public int purgeOldEntries(int threshold) {
         int entriesRemoved = 0;
 
-        final SimpleYamlConfiguration data = this.getDataFile(TimeType.TOTAL_TIME);
-
         long currentTime = System.currentTimeMillis();
 
         for (final UUID uuid : getStoredPlayers(TimeType.TOTAL_TIME)) {
@@ -178,7 +197,7 @@ public class FlatFileStorageProvider extends PlayTimeStorageProvider {
             // Check if this player has ever logged in on the server
             if (offPlayer.getName() == null) {
                 // Remove record
-                data.set(uuid.toString(), null);
+                this.removePlayer(uuid);
                 entriesRemoved++;
                 continue;
             }
@@ -189,7 +208,7 @@ public class FlatFileStorageProvider extends PlayTimeStorageProvider {
             // Check if 'last played time' is over threshold time.
             if (lastPlayed <= 0 || (currentTime - lastPlayed) / 86400000 >= threshold) {
                 // Remove record
-                data.set(uuid.toString(), null);
+                this.removePlayer(uuid);
                 entriesRemoved++;
             }
         }
@@ -199,34 +218,53 @@ public class FlatFileStorageProvider extends PlayTimeStorageProvider {
 
     @Override
     public CompletableFuture<Integer> getNumberOfStoredPlayers(TimeType timeType) {
+        if (timeType == TimeType.TOTAL_TIME) {
+            return CompletableFuture.completedFuture(table.size());
+        }
+
         return CompletableFuture.completedFuture(getStoredPlayers(timeType).size());
     }
 
     @Override
     public List<UUID> getStoredPlayers(TimeType timeType) {
-        final List<UUID> uuids = new ArrayList<UUID>();
+        return table.getStoredUUIDs(timeType);
+    }
 
-        final SimpleYamlConfiguration data = this.getDataFile(timeType);
+    @Override
+    public synchronized void saveData() {
+        PlayTimeJournal playTimeJournal;
+        long checkpoint;
 
-        // Loop over all entries in the file and retrieve their uuids.
-        for (final String uuidString : data.getKeys(false)) {
-            UUID uuid = null;
-            try {
-                uuid = UUID.fromString(uuidString);
-            } catch (final IllegalArgumentException e) {
-                continue;
-            }
+        Set<TimeType> timeTypesToSave = EnumSet.noneOf(TimeType.class);
+
+        checkpointLock.writeLock().lock();
+
+        try {
+            playTimeJournal = journal;
+            checkpoint = playTimeJournal != null ? playTimeJournal.beginCheckpoint() : 0;
 
-            uuids.add(uuid);
+            // Mark the time types as saved first, so changes made while writing are saved the next time.
+            for (TimeType timeType : TimeType.values()) {
+                if (changedTimeTypes.remove(timeType)) {
+                    timeTypesToSave.add(timeType);
+                }
+            }
+        } finally {
+            checkpointLock.writeLock().unlock();
         }
 
-        return uuids;
-    }
+        boolean savedAllFiles = true;
 
-    @Override
-    public void saveData() {
-        for (final Map.Entry<TimeType, SimpleYamlConfiguration> entry : dataFiles.entrySet()) {
-            entry.getValue().saveFile();
+        for (TimeType timeType : timeTypesToSave) {
+            if (!this.writeDataFile(timeType)) {
+                changedTimeTypes.add(timeType);
+                savedAllFiles = false;
+            }
+        }
+
+        // The files now contain all changes up to the checkpoint, so they are no longer needed in the journal.
+        if (playTimeJournal != null && savedAllFiles) {
+            playTimeJournal.completeCheckpoint(checkpoint);
         }
     }
 
@@ -243,8 +281,18 @@ public class FlatFileStorageProvider extends PlayTimeStorageProvider {
 
     @Override
     public void importData() {
-        final SimpleYamlConfiguration data = this.getDataFile(TimeType.TOTAL_TIME);
-        data.reloadFile();
+        checkpointLock.readLock().lock();
+
+        try {
+            changedTimeTypes.add(TimeType.TOTAL_TIME);
+
+            // The total time file may have been changed by hand, so replace the total time with its contents.
+            table.resetTime(TimeType.TOTAL_TIME);
+
+            this.loadDataFile(TimeType.TOTAL_TIME);
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
     }
 
     @Override
@@ -255,6 +303,9 @@ public class FlatFileStorageProvider extends PlayTimeStorageProvider {
     @Override
     public boolean backupData() {
 
+        // Make sure the files on disk are up to date.
+        saveData();
+
         // Back up all files
         for (Map.Entry<TimeType, String> entry : dataTypePaths.entrySet()) {
             plugin.debugMessage("Making a backup of " + entry.getValue());
@@ -267,6 +318,17 @@ public class FlatFileStorageProvider extends PlayTimeStorageProvider {
 
     @Override
     public int clearBackupsBeforeDate(LocalDate date) {
+        return clearBackupsBeforeDate(plugin, date);
+    }
+
+    /**
+     * Remove all backup files in the backups folder of Autorank that were made before the given date.
+     *
+     * @param plugin Autorank instance
+     * @param date   Date before which backups should be removed
+     * @return number of removed backup files.
+     */
+    static int clearBackupsBeforeDate(Autorank plugin, LocalDate date) {
 
         String backupsFolder = plugin.getDataFolder().getAbsolutePath()
                 + File.separator + "backups";
@@ -322,13 +384,13 @@ public class FlatFileStorageProvider extends PlayTimeStorageProvider {
     }
 
     /**
-     * Get a storage file for a specific time type.
+     * Get the file that the time of a time type is stored in.
      *
-     * @param type Type of time
-     * @return a storage file where the given time type is stored.
+     * @param timeType Type of time
+     * @return file on disk.
      */
-    private SimpleYamlConfiguration getDataFile(final TimeType type) {
-        return dataFiles.get(type);
+    private File getDataFile(final TimeType timeType) {
+        return new File(plugin.getDataFolder().getAbsolutePath() + File.separator + dataTypePaths.get(timeType));
     }
 
     /**
@@ -342,35 +404,197 @@ public class FlatFileStorageProvider extends PlayTimeStorageProvider {
         dataTypePaths.put(TimeType.WEEKLY_TIME, pathWeeklyTimeFile);
         dataTypePaths.put(TimeType.MONTHLY_TIME, pathMonthlyTimeFile);
 
-        // Create new files for the time type.
+        for (TimeType timeType : TimeType.values()) {
+            this.loadDataFile(timeType);
+        }
+
+        plugin.debugMessage("Loaded " + table.size() + " players from flatfile storage.");
+    }
+
+    /**
+     * Load the time of players in the file of a time type into the table. The YAML file is not kept in memory.
+     *
+     * @param timeType Type of time
+     */
+    private void loadDataFile(TimeType timeType) {
+        File file = this.getDataFile(timeType);
+
+        if (!file.exists()) {
+            // Start with an empty file of the current period.
+            table.setPeriod(timeType, timeType.getCurrentPeriod());
+            return;
+        }
+
+        YamlConfiguration data = YamlConfiguration.loadConfiguration(file);
+
+        if (timeType != TimeType.TOTAL_TIME) {
+            // Files of older versions of Autorank do not store a period yet.
+            int period = data.getInt(PERIOD_KEY, plugin.getPlayTimeStorageManager().getLegacyPeriod(timeType));
+
+            table.setPeriod(timeType, period);
+
+            // Time of an earlier period would be read as zero, so there is no need to load it.
+            if (period != timeType.getCurrentPeriod()) {
+                changedTimeTypes.add(timeType);
+                return;
+            }
+        }
+
+        for (String uuidString : data.getKeys(false)) {
+            UUID uuid;
+
+            try {
+                uuid = UUID.fromString(uuidString);
+            } catch (final IllegalArgumentException e) {
+                continue;
+            }
+
+            table.setTime(timeType, uuid, data.getInt(uuidString, 0));
+        }
+    }
+
+    /**
+     * Remove a player from the table. The player is removed from every time type, so all of them are marked as
+     * changed.
+     *
+     * @param uuid UUID of the player
+     */
+    private void removePlayer(UUID uuid) {
+        checkpointLock.readLock().lock();
+
         try {
-            dataFiles.put(TimeType.TOTAL_TIME,
-                    new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.TOTAL_TIME), "Total storage"));
-            dataFiles.put(TimeType.DAILY_TIME,
-                    new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.DAILY_TIME), "Daily storage"));
-            dataFiles.put(TimeType.WEEKLY_TIME,
-                    new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.WEEKLY_TIME), "Weekly storage"));
-            dataFiles.put(TimeType.MONTHLY_TIME,
-                    new SimpleYamlConfiguration(plugin, dataTypePaths.get(TimeType.MONTHLY_TIME), "Monthly storage"));
-        } catch (InvalidConfigurationException e) {
+            changedTimeTypes.addAll(Arrays.asList(TimeType.values()));
+            table.remove(uuid);
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stop recording changes in the journal and close it, so the records that were not written yet are written to
+     * disk. This should be done when the server stops, after the data has been saved. Changes that are made after
+     * the last save are replayed from the journal on the next start.
+     */
+    public synchronized void closeJournal() {
+        PlayTimeJournal playTimeJournal = journal;
+
+        if (playTimeJournal == null) return;
+
+        checkpointLock.writeLock().lock();
+
+        try {
+            table.setChangeListener(null);
+            journal = null;
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+
+        playTimeJournal.close();
+    }
+
+    /**
+     * Open the journal, apply the changes in it to the table and record all further changes in it.
+     */
+    private void loadJournal() {
+        PlayTimeJournal playTimeJournal = new PlayTimeJournal(new File(plugin.getDataFolder().getAbsolutePath()
+                + File.separator + pathJournalFile));
+
+        int replayedRecords;
+
+        try {
+            playTimeJournal.open();
+            replayedRecords = playTimeJournal.replay(table);
+        } catch (IOException e) {
             e.printStackTrace();
+            plugin.getLogger().warning("Could not load the play time journal, changes to play time are only saved " +
+                    "periodically.");
+            return;
         }
 
+        if (replayedRecords > 0) {
+            plugin.getLogger().info("Restored " + replayedRecords + " changes to play time that were not saved yet.");
+
+            // Save the restored changes with the next snapshot.
+            changedTimeTypes.addAll(Arrays.asList(TimeType.values()));
+        }
+
+        table.setChangeListener(playTimeJournal);
+
+        this.journal = playTimeJournal;
     }
 
+    /**
+     * Write the time of all players of a time type to its file. The file is written line by line from the table and
+     * replaced at once, so it is never left half-written.
+     *
+     * @param timeType Type of time
+     * @return true if the file was written, false otherwise.
+     */
+    private boolean writeDataFile(TimeType timeType) {
+        File file = this.getDataFile(timeType);
+        File temporaryFile = new File(file.getPath() + ".tmp");
+
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(temporaryFile.toPath(),
+                StandardCharsets.UTF_8))) {
+
+            if (timeType != TimeType.TOTAL_TIME) {
+                writer.println(PERIOD_KEY + ": " + table.getPeriod(timeType));
+            }
+
+            table.forEachTime(timeType, (mostSignificantBits, leastSignificantBits, time) ->
+                    writer.println(new UUID(mostSignificantBits, leastSignificantBits) + ": " + time));
+
+            if (writer.checkError()) {
+                plugin.getLogger().warning("Could not write " + temporaryFile.getName());
+                return false;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        try {
+            Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        return true;
+    }
 
     /**
      * Register tasks for saving and updating time of players.
      */
     private void registerTasks() {
-        // Run save task every 30 seconds
+        // With a journal, changes are safe on disk within a second, so the files can be saved less often.
+        long saveInterval = journal != null ?
+                AutorankTools.TICKS_PER_MINUTE * plugin.getSettingsConfig().getFlatFileSnapshotInterval() :
+                AutorankTools.TICKS_PER_MINUTE;
+
+        // Run save task every minute (or every snapshot interval)
         this.plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, new Runnable() {
             @Override
             public void run() {
                 plugin.debugMessage("Periodically saving all flatfile storage files.");
                 saveData();
             }
-        }, AutorankTools.TICKS_PER_SECOND, AutorankTools.TICKS_PER_MINUTE);
+        }, AutorankTools.TICKS_PER_SECOND, saveInterval);
+
+        if (journal == null) return;
+
+        // Write the changes of the last second to the journal with a single fsync.
+        this.plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, () -> {
+            PlayTimeJournal playTimeJournal = journal;
+
+            if (playTimeJournal != null) {
+                playTimeJournal.commit();
+            }
+        }, AutorankTools.TICKS_PER_SECOND, AutorankTools.TICKS_PER_SECOND);
     }
 
     /**
@@ -384,22 +608,20 @@ public class FlatFileStorageProvider extends PlayTimeStorageProvider {
         // Keep a counter of archived items
         int counter = 0;
 
-        final SimpleYamlConfiguration data = this.getDataFile(TimeType.TOTAL_TIME);
-
-        for (final UUID uuid : getStoredPlayers(TimeType.TOTAL_TIME)) {
+        Map<UUID, Integer> times = new HashMap<>();
 
-            int time = 0;
-            try {
-                time = this.getPlayerTime(TimeType.TOTAL_TIME, uuid).get();
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
-            }
+        try {
+            times = this.getPlayerTimes(TimeType.TOTAL_TIME, getStoredPlayers(TimeType.TOTAL_TIME)).get();
+        } catch (InterruptedException | ExecutionException e) {
+            e.printStackTrace();
+        }
 
+        for (final Map.Entry<UUID, Integer> entry : times.entrySet()) {
             // Found a record to be archived
-            if (time < minimum) {
+            if (entry.getValue() < minimum) {
                 counter++;
                 // Remove record
-                data.set(uuid.toString(), null);
+                this.removePlayer(entry.getKey());
             }
         }
 
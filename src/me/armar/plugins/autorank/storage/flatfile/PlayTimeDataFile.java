@@ -0,0 +1,514 @@
+package me.armar.plugins.autorank.storage.flatfile;
+
+import me.armar.plugins.autorank.storage.TimeType;
+import me.armar.plugins.autorank.storage.TopPlayersCollector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * This class represents a binary file that stores the play time of players as fixed-width records. The file is
+ * memory-mapped in segments of {@link #SEGMENT_SIZE} bytes. Changing the time of a player only touches the record of
+ * that player and saving the file only writes the segments that were changed since the last save.
+ * <br>
+ * <br>
+ * The first {@link #RECORD_SIZE} bytes of the file are a header. Every record after it consists of the two longs
+ * of the UUID of a player, followed by one int per {@link TimeType} (in the order of its ordinal).
+ * <br>
+ * <br>
+ * The header stores for every time type the period (see {@link TimeType#getPeriod(java.time.LocalDate)}) that its
+ * counters belong to. Counters of an earlier period are read as zero, and are cleared by the first write in the
+ * new period.
+ */
+public class PlayTimeDataFile {
+
+    // Identifies a play time data file, reads 'ARPT'.
+    private static final int MAGIC_NUMBER = 0x41525054;
+    private static final int FILE_VERSION = 1;
+
+    // Size of a single record (and the header) in bytes.
+    static final int RECORD_SIZE = 32;
+    // Offset of the first time counter inside a record.
+    private static final int COUNTERS_OFFSET = 16;
+    // Offset of the period of the first time type inside the header.
+    private static final int PERIODS_OFFSET = 16;
+    // Size of a mapped region of the file. Must be a multiple of the record size, so records never cross segments.
+    static final int SEGMENT_SIZE = 1 << 20;
+
+    private final File file;
+
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+
+    // Mapped regions of the file, in order.
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    // Segments that have been written to since the last flush.
+    private final BitSet dirtySegments = new BitSet();
+
+    // Index of UUID to slot of the record in the file.
+    private final Map<UUID, Integer> slots = new HashMap<>();
+    private int recordCount = 0;
+
+    public PlayTimeDataFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Open the file and build the index of records. If the file does not exist yet, it will be created.
+     *
+     * @throws IOException if the file could not be opened or is not a valid play time data file.
+     */
+    public synchronized void open() throws IOException {
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+
+        boolean isNewFile = !file.exists() || file.length() == 0;
+
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+
+        if (isNewFile) {
+            mapSegment(0);
+            writeHeader();
+            return;
+        }
+
+        long numberOfSegments = (channel.size() + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+
+        for (int segment = 0; segment < numberOfSegments; segment++) {
+            mapSegment(segment);
+        }
+
+        MappedByteBuffer header = segments.get(0);
+
+        if (header.getInt(0) != MAGIC_NUMBER || header.getInt(4) != FILE_VERSION || header.getInt(12) != RECORD_SIZE) {
+            close();
+            throw new IOException(file.getName() + " is not a valid play time data file.");
+        }
+
+        recordCount = header.getInt(8);
+
+        for (int slot = 0; slot < recordCount; slot++) {
+            long offset = getOffset(slot);
+            MappedByteBuffer buffer = getSegment(offset);
+            int position = getPosition(offset);
+
+            slots.put(new UUID(buffer.getLong(position), buffer.getLong(position + 8)), slot);
+        }
+    }
+
+    /**
+     * Get the time of a player.
+     *
+     * @param timeType Type of time
+     * @param uuid     UUID of the player
+     * @return time of the player or 0 if the player is not stored in this file.
+     */
+    public synchronized int getTime(TimeType timeType, UUID uuid) {
+        Integer slot = slots.get(uuid);
+
+        if (slot == null || !isCurrentPeriod(timeType)) return 0;
+
+        return readCounter(slot, timeType);
+    }
+
+    /**
+     * Get the time of multiple players at once.
+     *
+     * @param timeType Type of time
+     * @param uuids    UUIDs of the players
+     * @return a map with the time of each player. Players that are not stored have a time of 0.
+     */
+    public synchronized Map<UUID, Integer> getTimes(TimeType timeType, Collection<UUID> uuids) {
+        Map<UUID, Integer> times = new HashMap<>();
+
+        boolean isCurrentPeriod = isCurrentPeriod(timeType);
+
+        for (UUID uuid : uuids) {
+            Integer slot = slots.get(uuid);
+
+            times.put(uuid, slot == null || !isCurrentPeriod ? 0 : readCounter(slot, timeType));
+        }
+
+        return times;
+    }
+
+    /**
+     * Offer the time of every stored player to a collector, in a single pass over the file. Like
+     * {@link #getStoredUUIDs(TimeType)}, players without time are skipped for all time types but total time.
+     *
+     * @param timeType  Type of time
+     * @param collector Collector to offer the time of each player to
+     */
+    public synchronized void collectTimes(TimeType timeType, TopPlayersCollector collector) {
+        if (!isCurrentPeriod(timeType)) return;
+
+        for (Map.Entry<UUID, Integer> entry : slots.entrySet()) {
+            int time = readCounter(entry.getValue(), timeType);
+
+            if (timeType == TimeType.TOTAL_TIME || time != 0) {
+                collector.offer(entry.getKey(), time);
+            }
+        }
+    }
+
+    /**
+     * Collect the best players of several time types in a single pass over the file, so the record of every player
+     * is read once for all time types. Like {@link #collectTimes(TimeType, TopPlayersCollector)}, players without
+     * time are skipped for all time types but total time.
+     *
+     * @param timeTypes Types of time
+     * @param capacity  Number of players to keep for each time type
+     * @return a collector with the best players of each of the given time types.
+     */
+    public synchronized Map<TimeType, TopPlayersCollector> collectTimes(Set<TimeType> timeTypes, int capacity) {
+        Map<TimeType, TopPlayersCollector> collectors = new EnumMap<>(TimeType.class);
+        List<TimeType> currentTimeTypes = new ArrayList<>();
+
+        for (TimeType timeType : timeTypes) {
+            collectors.put(timeType, new TopPlayersCollector(capacity));
+
+            if (isCurrentPeriod(timeType)) {
+                currentTimeTypes.add(timeType);
+            }
+        }
+
+        for (Map.Entry<UUID, Integer> entry : slots.entrySet()) {
+            for (TimeType timeType : currentTimeTypes) {
+                int time = readCounter(entry.getValue(), timeType);
+
+                if (timeType == TimeType.TOTAL_TIME || time != 0) {
+                    collectors.get(timeType).offer(entry.getKey(), time);
+                }
+            }
+        }
+
+        return collectors;
+    }
+
+    /**
+     * Set the time of a player. A new record is created if the player is not stored yet.
+     *
+     * @param timeType Type of time
+     * @param uuid     UUID of the player
+     * @param time     Time to set
+     */
+    public synchronized void setTime(TimeType timeType, UUID uuid, int time) {
+        startCurrentPeriod(timeType);
+
+        writeCounter(getOrCreateSlot(uuid), timeType, time);
+    }
+
+    /**
+     * Add time to the current time of a player. This is done in place, without reading other records.
+     *
+     * @param timeType  Type of time
+     * @param uuid      UUID of the player
+     * @param timeToAdd Time to add
+     * @return the new time of the player
+     */
+    public synchronized int addTime(TimeType timeType, UUID uuid, int timeToAdd) {
+        startCurrentPeriod(timeType);
+
+        int slot = getOrCreateSlot(uuid);
+
+        int newTime = Math.max(readCounter(slot, timeType), 0) + timeToAdd;
+
+        writeCounter(slot, timeType, newTime);
+
+        return newTime;
+    }
+
+    /**
+     * Set the time of all stored players for a given time type to zero.
+     *
+     * @param timeType Type of time to reset
+     */
+    public synchronized void resetTime(TimeType timeType) {
+        for (int slot = 0; slot < recordCount; slot++) {
+            writeCounter(slot, timeType, 0);
+        }
+
+        writePeriod(timeType, timeType.getCurrentPeriod());
+    }
+
+    /**
+     * Get the period that the counters of a time type belong to.
+     *
+     * @param timeType Type of time
+     * @return identifier of the period, or 0 if the file was created before periods were stored.
+     */
+    public synchronized int getPeriod(TimeType timeType) {
+        return segments.get(0).getInt(PERIODS_OFFSET + timeType.ordinal() * 4);
+    }
+
+    /**
+     * Set the period that the counters of a time type belong to, without changing the counters.
+     *
+     * @param timeType Type of time
+     * @param period   Identifier of the period
+     */
+    public synchronized void setPeriod(TimeType timeType, int period) {
+        writePeriod(timeType, period);
+    }
+
+    /**
+     * Remove the record of a player. The last record in the file is moved into the freed slot, so the file stays
+     * compact.
+     *
+     * @param uuid UUID of the player
+     * @return true if the player was removed, false if it was not stored.
+     */
+    public synchronized boolean remove(UUID uuid) {
+        Integer slot = slots.remove(uuid);
+
+        if (slot == null) return false;
+
+        int lastSlot = recordCount - 1;
+
+        if (slot != lastSlot) {
+            long sourceOffset = getOffset(lastSlot);
+            MappedByteBuffer source = getSegment(sourceOffset);
+            int sourcePosition = getPosition(sourceOffset);
+
+            long targetOffset = getOffset(slot);
+            MappedByteBuffer target = getSegment(targetOffset);
+            int targetPosition = getPosition(targetOffset);
+
+            for (int i = 0; i < RECORD_SIZE; i += 8) {
+                target.putLong(targetPosition + i, source.getLong(sourcePosition + i));
+            }
+
+            markDirty(targetOffset);
+
+            slots.put(new UUID(target.getLong(targetPosition), target.getLong(targetPosition + 8)), slot);
+        }
+
+        // Clear the last record, it is no longer used.
+        long lastOffset = getOffset(lastSlot);
+        MappedByteBuffer last = getSegment(lastOffset);
+        int lastPosition = getPosition(lastOffset);
+
+        for (int i = 0; i < RECORD_SIZE; i += 8) {
+            last.putLong(lastPosition + i, 0);
+        }
+
+        markDirty(lastOffset);
+
+        recordCount--;
+        writeHeader();
+
+        return true;
+    }
+
+    /**
+     * Check whether a player is stored in this file.
+     *
+     * @param uuid UUID of the player
+     * @return true if there is a record of the player.
+     */
+    public synchronized boolean contains(UUID uuid) {
+        return slots.containsKey(uuid);
+    }
+
+    /**
+     * Get the players that are stored for a given time type. For total time, all stored players are returned. For
+     * the other time types, only players that have a non-zero time are returned.
+     *
+     * @param timeType Type of time
+     * @return list of UUIDs of stored players.
+     */
+    public synchronized List<UUID> getStoredUUIDs(TimeType timeType) {
+        List<UUID> uuids = new ArrayList<>(slots.size());
+
+        if (!isCurrentPeriod(timeType)) return uuids;
+
+        for (Map.Entry<UUID, Integer> entry : slots.entrySet()) {
+            if (timeType == TimeType.TOTAL_TIME || readCounter(entry.getValue(), timeType) != 0) {
+                uuids.add(entry.getKey());
+            }
+        }
+
+        return uuids;
+    }
+
+    /**
+     * Get the number of records in this file.
+     *
+     * @return number of stored players.
+     */
+    public synchronized int size() {
+        return recordCount;
+    }
+
+    /**
+     * Write all segments that were changed since the last flush to disk.
+     *
+     * @return number of segments that were written.
+     */
+    public synchronized int flush() {
+        int flushedSegments = 0;
+
+        for (int segment = dirtySegments.nextSetBit(0); segment >= 0; segment = dirtySegments.nextSetBit(segment + 1)) {
+            segments.get(segment).force();
+            flushedSegments++;
+        }
+
+        dirtySegments.clear();
+
+        return flushedSegments;
+    }
+
+    /**
+     * Flush the file and copy it to another location.
+     *
+     * @param target File to copy to
+     * @throws IOException if the file could not be copied.
+     */
+    public synchronized void copyTo(File target) throws IOException {
+        flush();
+
+        if (target.getParentFile() != null) {
+            target.getParentFile().mkdirs();
+        }
+
+        Files.copy(file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Flush and close the file. It cannot be used afterwards.
+     */
+    public synchronized void close() {
+        if (channel == null) return;
+
+        flush();
+
+        try {
+            channel.close();
+            randomAccessFile.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        channel = null;
+        segments.clear();
+    }
+
+    /**
+     * Get the file this data is stored in.
+     *
+     * @return file on disk.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    private int getOrCreateSlot(UUID uuid) {
+        Integer slot = slots.get(uuid);
+
+        if (slot != null) return slot;
+
+        slot = recordCount;
+
+        long offset = getOffset(slot);
+
+        // Map a new segment if the record does not fit in the file yet.
+        if (offset / SEGMENT_SIZE >= segments.size()) {
+            try {
+                mapSegment(segments.size());
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not grow " + file.getName(), e);
+            }
+        }
+
+        MappedByteBuffer buffer = getSegment(offset);
+        int position = getPosition(offset);
+
+        buffer.putLong(position, uuid.getMostSignificantBits());
+        buffer.putLong(position + 8, uuid.getLeastSignificantBits());
+
+        for (TimeType timeType : TimeType.values()) {
+            buffer.putInt(position + COUNTERS_OFFSET + timeType.ordinal() * 4, 0);
+        }
+
+        markDirty(offset);
+
+        slots.put(uuid, slot);
+        recordCount++;
+        writeHeader();
+
+        return slot;
+    }
+
+    private boolean isCurrentPeriod(TimeType timeType) {
+        return getPeriod(timeType) == timeType.getCurrentPeriod();
+    }
+
+    /**
+     * Clear the counters of a time type if they belong to an earlier period.
+     */
+    private void startCurrentPeriod(TimeType timeType) {
+        if (isCurrentPeriod(timeType)) return;
+
+        resetTime(timeType);
+    }
+
+    private void writePeriod(TimeType timeType, int period) {
+        segments.get(0).putInt(PERIODS_OFFSET + timeType.ordinal() * 4, period);
+
+        dirtySegments.set(0);
+    }
+
+    private int readCounter(int slot, TimeType timeType) {
+        long offset = getOffset(slot);
+
+        return getSegment(offset).getInt(getPosition(offset) + COUNTERS_OFFSET + timeType.ordinal() * 4);
+    }
+
+    private void writeCounter(int slot, TimeType timeType, int value) {
+        long offset = getOffset(slot);
+
+        getSegment(offset).putInt(getPosition(offset) + COUNTERS_OFFSET + timeType.ordinal() * 4, value);
+
+        markDirty(offset);
+    }
+
+    private void writeHeader() {
+        MappedByteBuffer header = segments.get(0);
+
+        header.putInt(0, MAGIC_NUMBER);
+        header.putInt(4, FILE_VERSION);
+        header.putInt(8, recordCount);
+        header.putInt(12, RECORD_SIZE);
+
+        dirtySegments.set(0);
+    }
+
+    private void mapSegment(int segment) throws IOException {
+        segments.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) segment * SEGMENT_SIZE, SEGMENT_SIZE));
+    }
+
+    private void markDirty(long offset) {
+        dirtySegments.set((int) (offset / SEGMENT_SIZE));
+    }
+
+    private MappedByteBuffer getSegment(long offset) {
+        return segments.get((int) (offset / SEGMENT_SIZE));
+    }
+
+    private static long getOffset(int slot) {
+        // The header occupies the first record.
+        return (slot + 1L) * RECORD_SIZE;
+    }
+
+    private static int getPosition(long offset) {
+        return (int) (offset % SEGMENT_SIZE);
+    }
+}
@@ -0,0 +1,345 @@
+package me.armar.plugins.autorank.storage.flatfile;
+
+import me.armar.plugins.autorank.storage.TimeType;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * This class is a write-ahead journal of the changes to a {@link PlayTimeTable}. Every change is appended as a small
+ * binary record. Records are collected in memory and written to disk with a single fsync when {@link #commit()} is
+ * called, so many changes share the cost of one fsync.
+ * <br>
+ * <br>
+ * A record stores the new time of a player, not the time that was added. Replaying a record more than once gives
+ * the same result, so the journal only has to be cut off after a snapshot of the table has been saved (see
+ * {@link #beginCheckpoint()} and {@link #completeCheckpoint(long)}). When the server stops without saving, the
+ * records after the last snapshot are replayed on the next start.
+ * <br>
+ * <br>
+ * Every record is {@link #RECORD_SIZE} bytes: a byte with the type of record, a byte with the time type, an int
+ * with the period, the two longs of the UUID, an int with the time and a CRC32 checksum of all the bytes before it.
+ * A record that was only partly written, for example because the server was killed, is ignored.
+ */
+public class PlayTimeJournal implements PlayTimeTable.ChangeListener {
+
+    // Identifies a journal file, reads 'ARPJ'.
+    private static final int MAGIC_NUMBER = 0x4152504A;
+    private static final int FILE_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    static final int RECORD_SIZE = 30;
+
+    private static final byte TIME_CHANGED = 1;
+    private static final byte TIME_RESET = 2;
+    private static final byte PLAYER_REMOVED = 3;
+
+    private final File file;
+
+    private FileChannel channel;
+
+    // Records that have not been written to disk yet. Guarded by this.
+    private ByteBuffer pendingRecords = ByteBuffer.allocate(RECORD_SIZE * 1024);
+    private final CRC32 checksum = new CRC32();
+
+    // Makes sure only one thread writes to the file at a time.
+    private final Object commitLock = new Object();
+    // Records that are being written to disk. Guarded by commitLock.
+    private ByteBuffer committingRecords = ByteBuffer.allocate(RECORD_SIZE * 1024);
+
+    public PlayTimeJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Open the journal. If it does not exist yet, it will be created.
+     *
+     * @throws IOException if the file could not be opened.
+     */
+    public void open() throws IOException {
+        synchronized (commitLock) {
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+
+            channel = new RandomAccessFile(file, "rw").getChannel();
+
+            if (channel.size() < HEADER_SIZE) {
+                writeHeader(channel);
+            }
+
+            channel.position(channel.size());
+        }
+    }
+
+    /**
+     * Apply the records of the journal to a table. Records are read up to the first record that is incomplete or
+     * damaged, which is removed from the file together with everything after it.
+     *
+     * @param table Table to apply the records to
+     * @return number of records that were applied.
+     * @throws IOException if the journal could not be read.
+     */
+    public int replay(PlayTimeTable table) throws IOException {
+        synchronized (commitLock) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+            channel.read(header, 0);
+
+            if (header.getInt(0) != MAGIC_NUMBER || header.getInt(4) != FILE_VERSION) {
+                throw new IOException(file.getName() + " is not a valid play time journal.");
+            }
+
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            long position = HEADER_SIZE;
+            int appliedRecords = 0;
+
+            while (true) {
+                record.clear();
+
+                if (channel.read(record, position) < RECORD_SIZE || !isValid(record)) {
+                    break;
+                }
+
+                apply(table, record);
+
+                appliedRecords++;
+                position += RECORD_SIZE;
+            }
+
+            // Remove the damaged part, so new records follow the last valid one.
+            if (position < channel.size()) {
+                channel.truncate(position);
+            }
+
+            channel.position(position);
+
+            return appliedRecords;
+        }
+    }
+
+    @Override
+    public void onTimeChanged(TimeType timeType, int period, long mostSignificantBits, long leastSignificantBits,
+                              int time) {
+        append(TIME_CHANGED, timeType.ordinal(), period, mostSignificantBits, leastSignificantBits, time);
+    }
+
+    @Override
+    public void onTimeReset(TimeType timeType, int period) {
+        append(TIME_RESET, timeType.ordinal(), period, 0, 0, 0);
+    }
+
+    @Override
+    public void onPlayerRemoved(long mostSignificantBits, long leastSignificantBits) {
+        append(PLAYER_REMOVED, 0, 0, mostSignificantBits, leastSignificantBits, 0);
+    }
+
+    /**
+     * Write all records that were appended since the last commit to disk, and wait until they are on disk.
+     *
+     * @return number of records that were written.
+     */
+    public int commit() {
+        synchronized (commitLock) {
+            ByteBuffer records;
+
+            // Swap the buffers, so new records can be appended while we write.
+            synchronized (this) {
+                records = pendingRecords;
+                pendingRecords = committingRecords;
+                committingRecords = records;
+            }
+
+            records.flip();
+
+            int numberOfRecords = records.remaining() / RECORD_SIZE;
+
+            try {
+                while (records.hasRemaining()) {
+                    channel.write(records);
+                }
+
+                if (numberOfRecords > 0) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            records.clear();
+
+            return numberOfRecords;
+        }
+    }
+
+    /**
+     * Start a checkpoint, right before a snapshot of the table is saved. All records up to now are committed.
+     *
+     * @return the position in the journal up to which the snapshot will contain all changes.
+     */
+    public long beginCheckpoint() {
+        synchronized (commitLock) {
+            commit();
+
+            try {
+                return channel.position();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return HEADER_SIZE;
+            }
+        }
+    }
+
+    /**
+     * Complete a checkpoint, after the snapshot of the table has been saved. Records before the position of the
+     * checkpoint are removed from the journal, as the snapshot contains their changes.
+     *
+     * @param checkpoint Position that was returned by {@link #beginCheckpoint()}
+     */
+    public void completeCheckpoint(long checkpoint) {
+        synchronized (commitLock) {
+            commit();
+
+            File temporaryFile = new File(file.getPath() + ".tmp");
+
+            try (FileChannel temporaryChannel = new RandomAccessFile(temporaryFile, "rw").getChannel()) {
+                temporaryChannel.truncate(0);
+
+                writeHeader(temporaryChannel);
+
+                // Keep the records that were written while the snapshot was saved.
+                long position = checkpoint;
+                long size = channel.size();
+
+                while (position < size) {
+                    position += channel.transferTo(position, size - position, temporaryChannel);
+                }
+
+                temporaryChannel.force(false);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+
+            try {
+                channel.close();
+
+                Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+                channel = new RandomAccessFile(file, "rw").getChannel();
+                channel.position(channel.size());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Get the size of the journal on disk.
+     *
+     * @return number of bytes.
+     */
+    public long size() {
+        synchronized (commitLock) {
+            try {
+                return channel.size();
+            } catch (IOException e) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Commit the remaining records and close the journal. It cannot be used afterwards.
+     */
+    public void close() {
+        synchronized (commitLock) {
+            commit();
+
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private synchronized void append(byte type, int timeType, int period, long mostSignificantBits,
+                                     long leastSignificantBits, int time) {
+        if (pendingRecords.remaining() < RECORD_SIZE) {
+            ByteBuffer grown = ByteBuffer.allocate(pendingRecords.capacity() * 2);
+
+            pendingRecords.flip();
+            grown.put(pendingRecords);
+
+            pendingRecords = grown;
+        }
+
+        int start = pendingRecords.position();
+
+        pendingRecords.put(type);
+        pendingRecords.put((byte) timeType);
+        pendingRecords.putInt(period);
+        pendingRecords.putLong(mostSignificantBits);
+        pendingRecords.putLong(leastSignificantBits);
+        pendingRecords.putInt(time);
+
+        checksum.reset();
+        checksum.update(pendingRecords.array(), start, RECORD_SIZE - 4);
+
+        pendingRecords.putInt((int) checksum.getValue());
+    }
+
+    private boolean isValid(ByteBuffer record) {
+        CRC32 recordChecksum = new CRC32();
+
+        recordChecksum.update(record.array(), 0, RECORD_SIZE - 4);
+
+        return record.getInt(RECORD_SIZE - 4) == (int) recordChecksum.getValue();
+    }
+
+    private static void apply(PlayTimeTable table, ByteBuffer record) {
+        byte type = record.get(0);
+        TimeType timeType = TimeType.values()[record.get(1)];
+        int period = record.getInt(2);
+        UUID uuid = new UUID(record.getLong(6), record.getLong(14));
+        int time = record.getInt(22);
+
+        switch (type) {
+            case TIME_CHANGED:
+                // Time of an earlier period would be read as zero anyway.
+                if (period == timeType.getCurrentPeriod()) {
+                    table.setTime(timeType, uuid, time);
+                }
+                break;
+            case TIME_RESET:
+                if (period == timeType.getCurrentPeriod()) {
+                    table.resetTime(timeType);
+                }
+                break;
+            case PLAYER_REMOVED:
+                table.remove(uuid);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+        header.putInt(MAGIC_NUMBER);
+        header.putInt(FILE_VERSION);
+        header.flip();
+
+        channel.write(header, 0);
+        channel.position(HEADER_SIZE);
+    }
+}
@@ -0,0 +1,643 @@
+package me.armar.plugins.autorank.storage.flatfile;
+
+import me.armar.plugins.autorank.storage.TimeType;
+import me.armar.plugins.autorank.storage.TopPlayersCollector;
+
+import java.util.*;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * This class keeps the play time of players in memory, in a hash table with open addressing. The UUID of a player is
+ * stored as two longs, followed by one int per {@link TimeType} (in the order of its ordinal), in parallel primitive
+ * arrays. Looking up the time of a player does not allocate any objects.
+ * <br>
+ * <br>
+ * Players are added and removed under an exclusive lock. The time of a player that is already stored is changed
+ * under a shared lock and the lock of one of {@link #STRIPES} stripes, so players can be updated concurrently.
+ * Reads are optimistic and only take a lock when they overlapped with a player being added or removed.
+ * <br>
+ * <br>
+ * Like {@link PlayTimeDataFile}, the table stores for every time type the period (see
+ * {@link TimeType#getPeriod(java.time.LocalDate)}) that its counters belong to. Counters of an earlier period are
+ * read as zero, and are cleared by the first write in the new period.
+ * <br>
+ * <br>
+ * Changes can be observed with a {@link ChangeListener}, which is called while the change is still locked, so it sees
+ * the changes of a player in the order they were made.
+ */
+public class PlayTimeTable {
+
+    private static final int COUNTERS = TimeType.values().length;
+    // Number of locks that guard the counters of players. Must be a power of two.
+    private static final int STRIPES = 64;
+    private static final int MINIMUM_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final StampedLock lock = new StampedLock();
+    private final Object[] stripes = new Object[STRIPES];
+
+    private volatile Slots slots = new Slots(MINIMUM_CAPACITY);
+    private volatile int size = 0;
+
+    // Period of the counters of each time type.
+    private final int[] periods = new int[COUNTERS];
+
+    // The current period of each time type, so it does not have to be computed for every read.
+    private final int[] currentPeriods = new int[COUNTERS];
+    private volatile long currentPeriodsUpdatedAt = 0;
+
+    private volatile ChangeListener changeListener;
+
+    public PlayTimeTable() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * Set the listener that is told about every change to the time of players. Changes made before it was set are
+     * not passed to it.
+     *
+     * @param changeListener Listener to set, or null to remove it.
+     */
+    public void setChangeListener(ChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Get the time of a player.
+     *
+     * @param timeType Type of time
+     * @param uuid     UUID of the player
+     * @return time of the player or 0 if the player is not stored.
+     */
+    public int getTime(TimeType timeType, UUID uuid) {
+        long mostSignificantBits = uuid.getMostSignificantBits();
+        long leastSignificantBits = uuid.getLeastSignificantBits();
+
+        long stamp = lock.tryOptimisticRead();
+
+        int time = readTime(timeType, mostSignificantBits, leastSignificantBits);
+
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+
+            try {
+                time = readTime(timeType, mostSignificantBits, leastSignificantBits);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        return time;
+    }
+
+    /**
+     * Get the time of multiple players at once.
+     *
+     * @param timeType Type of time
+     * @param uuids    UUIDs of the players
+     * @return a map with the time of each player. Players that are not stored have a time of 0.
+     */
+    public Map<UUID, Integer> getTimes(TimeType timeType, Collection<UUID> uuids) {
+        Map<UUID, Integer> times = new HashMap<>();
+
+        long stamp = lock.readLock();
+
+        try {
+            for (UUID uuid : uuids) {
+                times.put(uuid, readTime(timeType, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()));
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+
+        return times;
+    }
+
+    /**
+     * Offer the time of every stored player to a collector. Like {@link #getStoredUUIDs(TimeType)}, players without
+     * time are skipped for all time types but total time.
+     *
+     * @param timeType  Type of time
+     * @param collector Collector to offer the time of each player to
+     */
+    public void collectTimes(TimeType timeType, TopPlayersCollector collector) {
+        forEachTime(timeType, (mostSignificantBits, leastSignificantBits, time) ->
+                collector.offer(new UUID(mostSignificantBits, leastSignificantBits), time));
+    }
+
+    /**
+     * Collect the best players of several time types in a single pass over the table. The counters of a player are
+     * next to each other, so every player is read once for all time types. The table is read on the calling thread,
+     * so no other threads are kept busy while the read lock is held. Like
+     * {@link #collectTimes(TimeType, TopPlayersCollector)}, players without time are skipped for all time types but
+     * total time.
+     *
+     * @param timeTypes Types of time
+     * @param capacity  Number of players to keep for each time type
+     * @return a collector with the best players of each of the given time types.
+     */
+    public Map<TimeType, TopPlayersCollector> collectTimes(Set<TimeType> timeTypes, int capacity) {
+        long stamp = lock.readLock();
+
+        try {
+            // Time types whose counters are of an earlier period have no players.
+            List<TimeType> currentTimeTypes = new ArrayList<>();
+
+            for (TimeType timeType : timeTypes) {
+                if (isCurrentPeriod(timeType)) {
+                    currentTimeTypes.add(timeType);
+                }
+            }
+
+            Map<TimeType, TopPlayersCollector> collectors = collectSlots(this.slots, currentTimeTypes, capacity);
+
+            for (TimeType timeType : timeTypes) {
+                collectors.putIfAbsent(timeType, new TopPlayersCollector(capacity));
+            }
+
+            return collectors;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Pass the time of every stored player to a consumer. Like {@link #getStoredUUIDs(TimeType)}, players without
+     * time are skipped for all time types but total time. Players cannot be added or removed while this runs.
+     *
+     * @param timeType Type of time
+     * @param consumer Consumer that is called for every player
+     */
+    public void forEachTime(TimeType timeType, TimeConsumer consumer) {
+        long stamp = lock.readLock();
+
+        try {
+            if (!isCurrentPeriod(timeType)) return;
+
+            Slots slots = this.slots;
+
+            for (int slot = 0; slot < slots.used.length; slot++) {
+                if (!slots.used[slot]) continue;
+
+                int time = slots.counters[slot * COUNTERS + timeType.ordinal()];
+
+                if (timeType == TimeType.TOTAL_TIME || time != 0) {
+                    consumer.accept(slots.mostSignificantBits[slot], slots.leastSignificantBits[slot], time);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Set the time of a player. The player is added if they are not stored yet.
+     *
+     * @param timeType Type of time
+     * @param uuid     UUID of the player
+     * @param time     Time to set
+     */
+    public void setTime(TimeType timeType, UUID uuid, int time) {
+        changeTime(timeType, uuid, time, false);
+    }
+
+    /**
+     * Add time to the current time of a player. The player is added if they are not stored yet.
+     *
+     * @param timeType  Type of time
+     * @param uuid      UUID of the player
+     * @param timeToAdd Time to add
+     * @return the new time of the player
+     */
+    public int addTime(TimeType timeType, UUID uuid, int timeToAdd) {
+        return changeTime(timeType, uuid, timeToAdd, true);
+    }
+
+    /**
+     * Set the time of all stored players for a given time type to zero.
+     *
+     * @param timeType Type of time to reset
+     */
+    public void resetTime(TimeType timeType) {
+        long stamp = lock.writeLock();
+
+        try {
+            clearCounters(timeType);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Get the period that the counters of a time type belong to.
+     *
+     * @param timeType Type of time
+     * @return identifier of the period.
+     */
+    public int getPeriod(TimeType timeType) {
+        long stamp = lock.readLock();
+
+        try {
+            return periods[timeType.ordinal()];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Set the period that the counters of a time type belong to, without changing the counters.
+     *
+     * @param timeType Type of time
+     * @param period   Identifier of the period
+     */
+    public void setPeriod(TimeType timeType, int period) {
+        long stamp = lock.writeLock();
+
+        try {
+            periods[timeType.ordinal()] = period;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove a player from the table.
+     *
+     * @param uuid UUID of the player
+     * @return true if the player was removed, false if it was not stored.
+     */
+    public boolean remove(UUID uuid) {
+        long stamp = lock.writeLock();
+
+        try {
+            Slots slots = this.slots;
+
+            int slot = slots.find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+
+            if (slot < 0) return false;
+
+            slots.remove(slot);
+            size--;
+
+            ChangeListener listener = this.changeListener;
+
+            if (listener != null) {
+                listener.onPlayerRemoved(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            }
+
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Check whether a player is stored in the table.
+     *
+     * @param uuid UUID of the player
+     * @return true if the player is stored.
+     */
+    public boolean contains(UUID uuid) {
+        long stamp = lock.readLock();
+
+        try {
+            return slots.find(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) >= 0;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Get the players that are stored for a given time type. For total time, all stored players are returned. For
+     * the other time types, only players that have a non-zero time are returned.
+     *
+     * @param timeType Type of time
+     * @return list of UUIDs of stored players.
+     */
+    public List<UUID> getStoredUUIDs(TimeType timeType) {
+        List<UUID> uuids = new ArrayList<>(size);
+
+        forEachTime(timeType, (mostSignificantBits, leastSignificantBits, time) ->
+                uuids.add(new UUID(mostSignificantBits, leastSignificantBits)));
+
+        return uuids;
+    }
+
+    /**
+     * Get the number of players in the table.
+     *
+     * @return number of stored players.
+     */
+    public int size() {
+        return size;
+    }
+
+    private int changeTime(TimeType timeType, UUID uuid, int value, boolean add) {
+        startCurrentPeriod(timeType);
+
+        long mostSignificantBits = uuid.getMostSignificantBits();
+        long leastSignificantBits = uuid.getLeastSignificantBits();
+
+        // Most of the time, the player is already stored, so only the stripe of the player has to be locked.
+        long stamp = lock.readLock();
+
+        try {
+            Slots slots = this.slots;
+
+            int slot = slots.find(mostSignificantBits, leastSignificantBits);
+
+            if (slot >= 0) {
+                return writeCounter(slots, slot, timeType, value, add);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+
+        stamp = lock.writeLock();
+
+        try {
+            int slot = slots.find(mostSignificantBits, leastSignificantBits);
+
+            if (slot < 0) {
+                if (size + 1 > slots.used.length * LOAD_FACTOR) {
+                    slots = slots.resize(slots.used.length * 2);
+                }
+
+                slot = slots.insert(mostSignificantBits, leastSignificantBits);
+                size++;
+            }
+
+            return writeCounter(slots, slot, timeType, value, add);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private int writeCounter(Slots slots, int slot, TimeType timeType, int value, boolean add) {
+        int index = slot * COUNTERS + timeType.ordinal();
+
+        synchronized (stripes[slot & (STRIPES - 1)]) {
+            int newTime = add ? Math.max(slots.counters[index], 0) + value : value;
+
+            slots.counters[index] = newTime;
+
+            ChangeListener listener = this.changeListener;
+
+            if (listener != null) {
+                listener.onTimeChanged(timeType, periods[timeType.ordinal()], slots.mostSignificantBits[slot],
+                        slots.leastSignificantBits[slot], newTime);
+            }
+
+            return newTime;
+        }
+    }
+
+    private int readTime(TimeType timeType, long mostSignificantBits, long leastSignificantBits) {
+        if (!isCurrentPeriod(timeType)) return 0;
+
+        Slots slots = this.slots;
+
+        int slot = slots.find(mostSignificantBits, leastSignificantBits);
+
+        if (slot < 0) return 0;
+
+        return slots.counters[slot * COUNTERS + timeType.ordinal()];
+    }
+
+    /**
+     * Collect the best players of all used slots.
+     */
+    private static Map<TimeType, TopPlayersCollector> collectSlots(Slots slots, List<TimeType> timeTypes,
+                                                                   int capacity) {
+        Map<TimeType, TopPlayersCollector> collectors = new EnumMap<>(TimeType.class);
+
+        for (TimeType timeType : timeTypes) {
+            collectors.put(timeType, new TopPlayersCollector(capacity));
+        }
+
+        for (int slot = 0; slot < slots.used.length; slot++) {
+            if (!slots.used[slot]) continue;
+
+            UUID uuid = null;
+
+            for (TimeType timeType : timeTypes) {
+                int time = slots.counters[slot * COUNTERS + timeType.ordinal()];
+
+                if (timeType != TimeType.TOTAL_TIME && time == 0) continue;
+
+                if (uuid == null) {
+                    uuid = new UUID(slots.mostSignificantBits[slot], slots.leastSignificantBits[slot]);
+                }
+
+                collectors.get(timeType).offer(uuid, time);
+            }
+        }
+
+        return collectors;
+    }
+
+    private boolean isCurrentPeriod(TimeType timeType) {
+        return periods[timeType.ordinal()] == getCurrentPeriod(timeType);
+    }
+
+    /**
+     * Clear the counters of a time type if they belong to an earlier period.
+     */
+    private void startCurrentPeriod(TimeType timeType) {
+        if (getPeriod(timeType) == getCurrentPeriod(timeType)) return;
+
+        long stamp = lock.writeLock();
+
+        try {
+            // Another thread may have started the period already.
+            if (isCurrentPeriod(timeType)) return;
+
+            clearCounters(timeType);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Set all counters of a time type to zero and start the current period. Must be called with the write lock.
+     */
+    private void clearCounters(TimeType timeType) {
+        int[] counters = slots.counters;
+
+        for (int index = timeType.ordinal(); index < counters.length; index += COUNTERS) {
+            counters[index] = 0;
+        }
+
+        int period = getCurrentPeriod(timeType);
+
+        periods[timeType.ordinal()] = period;
+
+        ChangeListener listener = this.changeListener;
+
+        if (listener != null) {
+            listener.onTimeReset(timeType, period);
+        }
+    }
+
+    private int getCurrentPeriod(TimeType timeType) {
+        long now = System.currentTimeMillis();
+
+        // Periods change at most once a day, so it is enough to compute them every second.
+        if (now - currentPeriodsUpdatedAt >= 1000) {
+            for (TimeType type : TimeType.values()) {
+                currentPeriods[type.ordinal()] = type.getCurrentPeriod();
+            }
+
+            currentPeriodsUpdatedAt = now;
+        }
+
+        return currentPeriods[timeType.ordinal()];
+    }
+
+    private static int hash(long mostSignificantBits, long leastSignificantBits) {
+        long hash = mostSignificantBits ^ leastSignificantBits;
+
+        // Spread the bits, so the low bits that are used as index depend on all bits of the UUID.
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+
+        return (int) hash;
+    }
+
+    /**
+     * Receives the time of a player, without creating a UUID object.
+     */
+    @FunctionalInterface
+    public interface TimeConsumer {
+        void accept(long mostSignificantBits, long leastSignificantBits, int time);
+    }
+
+    /**
+     * Is told about every change to the time of players.
+     */
+    public interface ChangeListener {
+
+        /**
+         * Called when the time of a player has changed.
+         *
+         * @param timeType             Type of time
+         * @param period               Period the time belongs to
+         * @param mostSignificantBits  Most significant bits of the UUID of the player
+         * @param leastSignificantBits Least significant bits of the UUID of the player
+         * @param time                 New time of the player
+         */
+        void onTimeChanged(TimeType timeType, int period, long mostSignificantBits, long leastSignificantBits,
+                           int time);
+
+        /**
+         * Called when the time of all players of a time type was set to zero.
+         *
+         * @param timeType Type of time
+         * @param period   Period that was started
+         */
+        void onTimeReset(TimeType timeType, int period);
+
+        /**
+         * Called when a player was removed.
+         *
+         * @param mostSignificantBits  Most significant bits of the UUID of the player
+         * @param leastSignificantBits Least significant bits of the UUID of the player
+         */
+        void onPlayerRemoved(long mostSignificantBits, long leastSignificantBits);
+    }
+
+    /**
+     * The arrays of the table. They are replaced at once when the table grows, so optimistic readers always see
+     * arrays of the same capacity.
+     */
+    private static final class Slots {
+        private final long[] mostSignificantBits;
+        private final long[] leastSignificantBits;
+        private final int[] counters;
+        private final boolean[] used;
+        private final int mask;
+
+        private Slots(int capacity) {
+            mostSignificantBits = new long[capacity];
+            leastSignificantBits = new long[capacity];
+            counters = new int[capacity * COUNTERS];
+            used = new boolean[capacity];
+            mask = capacity - 1;
+        }
+
+        private int find(long most, long least) {
+            int slot = hash(most, least) & mask;
+
+            // Probing is bounded, so an optimistic reader never loops forever on a table that is being changed.
+            for (int probes = 0; probes <= mask; probes++) {
+                if (!used[slot]) return -1;
+
+                if (mostSignificantBits[slot] == most && leastSignificantBits[slot] == least) return slot;
+
+                slot = (slot + 1) & mask;
+            }
+
+            return -1;
+        }
+
+        private int insert(long most, long least) {
+            int slot = hash(most, least) & mask;
+
+            while (used[slot]) {
+                slot = (slot + 1) & mask;
+            }
+
+            mostSignificantBits[slot] = most;
+            leastSignificantBits[slot] = least;
+            used[slot] = true;
+
+            return slot;
+        }
+
+        private void remove(int slot) {
+            int hole = slot;
+            int next = (hole + 1) & mask;
+
+            // Move players that probed past the removed player back, so they can still be found.
+            while (used[next]) {
+                int home = hash(mostSignificantBits[next], leastSignificantBits[next]) & mask;
+
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    move(next, hole);
+                    hole = next;
+                }
+
+                next = (next + 1) & mask;
+            }
+
+            used[hole] = false;
+            mostSignificantBits[hole] = 0;
+            leastSignificantBits[hole] = 0;
+
+            Arrays.fill(counters, hole * COUNTERS, (hole + 1) * COUNTERS, 0);
+        }
+
+        private void move(int from, int to) {
+            mostSignificantBits[to] = mostSignificantBits[from];
+            leastSignificantBits[to] = leastSignificantBits[from];
+            System.arraycopy(counters, from * COUNTERS, counters, to * COUNTERS, COUNTERS);
+        }
+
+        private Slots resize(int capacity) {
+            Slots resized = new Slots(Math.max(capacity, MINIMUM_CAPACITY));
+
+            for (int slot = 0; slot < used.length; slot++) {
+                if (!used[slot]) continue;
+
+                int newSlot = resized.insert(mostSignificantBits[slot], leastSignificantBits[slot]);
+
+                System.arraycopy(counters, slot * COUNTERS, resized.counters, newSlot * COUNTERS, COUNTERS);
+            }
+
+            return resized;
+        }
+    }
+}
@@ -4,15 +4,47 @@ import io.reactivex.annotations.NonNull;
 import me.armar.plugins.autorank.storage.TimeType;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class is responsible for caching time values for the MySQLStorageProvider. It only stores time for this
  * storage provider.
+ * <br>
+ * <br>
+ * The cache is safe to use from multiple threads. A cached value is considered outdated after the refresh time has
+ * passed, but it is still returned until it is refreshed (see {@link #getEntriesToRefresh(TimeType)}). Players that
+ * have not been requested for the expiry time are removed from the cache. The cache never holds more than the
+ * maximum number of players: if it grows beyond that, the players that were requested least recently are evicted.
+ * Cached daily, weekly and monthly time is only used in the period (day, week or month) in which it was cached.
  */
 public class CacheManager {
 
     // Store cached values in map
-    private final Map<UUID, CachedEntry> cachedTimeValues = new HashMap<>();
+    private final Map<UUID, CachedEntry> cachedTimeValues = new ConcurrentHashMap<>();
+
+    private final int maximumSize;
+    private final long refreshTime;
+    private final long expiryTime;
+
+    // Statistics of the cache
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Create a new cache.
+     *
+     * @param maximumSize Maximum number of players to cache
+     * @param refreshTime Time (in minutes) after which a cached value is outdated
+     * @param expiryTime  Time (in minutes) after which a player that has not been requested is removed
+     */
+    public CacheManager(int maximumSize, int refreshTime, int expiryTime) {
+        this.maximumSize = Math.max(maximumSize, 1);
+        this.refreshTime = TimeUnit.MINUTES.toMillis(refreshTime);
+        this.expiryTime = TimeUnit.MINUTES.toMillis(expiryTime);
+    }
 
     /**
      * Register a new cached value for a player.
@@ -22,32 +54,50 @@ public class CacheManager {
      */
     public void registerCachedTime(@NonNull TimeType timeType, @NonNull UUID uuid, int value) {
 
-        CachedEntry entry = cachedTimeValues.get(uuid);
+        CachedEntry entry = cachedTimeValues.computeIfAbsent(uuid, key -> new CachedEntry());
 
-        if (entry != null) {
-            entry.setCachedTime(timeType, value);
-        } else {
-            entry = new CachedEntry(timeType, value);
+        entry.setCachedTime(timeType, value);
+
+        if (cachedTimeValues.size() > maximumSize) {
+            this.evictLeastRecentlyUsed();
         }
+    }
+
+    /**
+     * Add time to the cached value of a player, if there is one. This does not change when the value was last
+     * updated.
+     *
+     * @param timeType  Type of time
+     * @param uuid      UUID of the player
+     * @param timeToAdd Time to add to the cached value
+     */
+    public void addCachedTime(@NonNull TimeType timeType, @NonNull UUID uuid, int timeToAdd) {
+        CachedEntry entry = cachedTimeValues.get(uuid);
+
+        if (entry == null) return;
 
-        this.cachedTimeValues.put(uuid, entry);
+        entry.addCachedTime(timeType, timeToAdd);
     }
 
     /**
-     * Get the cached time of a player
+     * Get the cached time of a player. This counts as a request of the player.
      *
      * @param uuid UUID of the player
-     * @return cached time value of a player
+     * @return cached time value of a player, or nothing if no value is cached.
      */
-    public int getCachedTime(@NonNull TimeType timeType, @NonNull UUID uuid) {
+    public OptionalInt getCachedTime(@NonNull TimeType timeType, @NonNull UUID uuid) {
 
         CachedEntry entry = this.cachedTimeValues.get(uuid);
 
-        if (entry == null) {
-            return 0;
+        OptionalInt cachedTime = entry == null ? OptionalInt.empty() : entry.getCachedTime(timeType);
+
+        if (cachedTime.isPresent()) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
         }
 
-        return entry.getCachedTime(timeType).orElse(0);
+        return cachedTime;
     }
 
     /**
@@ -58,8 +108,6 @@ public class CacheManager {
      */
     public boolean hasCachedTime(@NonNull TimeType timeType, @NonNull UUID uuid) {
 
-        if (!this.cachedTimeValues.containsKey(uuid)) return false;
-
         CachedEntry entry = this.cachedTimeValues.get(uuid);
 
         if (entry == null) return false;
@@ -75,56 +123,194 @@ public class CacheManager {
      * @return true if the cached time is outdated, false otherwise.
      */
     public boolean shouldUpdateCachedEntry(@NonNull TimeType timeType, @NonNull UUID uuid) {
-        return hasCachedTime(timeType, uuid) && this.cachedTimeValues.get(uuid).isCachedTimeOutdated(timeType);
+        CachedEntry entry = this.cachedTimeValues.get(uuid);
+
+        return entry != null && entry.isCachedTimeOutdated(timeType, refreshTime);
+    }
+
+    /**
+     * Get the players whose cached time should be refreshed. Only outdated values that have been requested since
+     * they were last updated are refreshed. Outdated values that have not been requested are removed instead, so
+     * they are obtained from the database when they are requested again.
+     *
+     * @param timeType Type of time to check for
+     * @return UUIDs of players whose cached time should be refreshed.
+     */
+    public List<UUID> getEntriesToRefresh(@NonNull TimeType timeType) {
+        List<UUID> uuids = new ArrayList<>();
+
+        for (Map.Entry<UUID, CachedEntry> entry : cachedTimeValues.entrySet()) {
+            CachedEntry cachedEntry = entry.getValue();
+
+            if (!cachedEntry.isCachedTimeOutdated(timeType, refreshTime)) continue;
+
+            if (cachedEntry.isRequestedSinceUpdate(timeType)) {
+                uuids.add(entry.getKey());
+            } else {
+                cachedEntry.invalidateCachedTime(timeType);
+            }
+        }
+
+        return uuids;
     }
 
     public Set<UUID> getCachedUUIDs() {
         return this.cachedTimeValues.keySet();
     }
-}
 
-class CachedEntry {
-    private final Map<TimeType, Integer> timePerTimeType = new HashMap<>();
-    private final Map<TimeType, Long> lastUpdatedPerTimeType = new HashMap<>();
+    /**
+     * Remove players that have not been requested for longer than the expiry time.
+     *
+     * @return number of players that were removed.
+     */
+    public int removeExpiredEntries() {
+        long now = System.currentTimeMillis();
 
-    public CachedEntry() {
-    }
+        int removed = 0;
+
+        for (Iterator<CachedEntry> iterator = cachedTimeValues.values().iterator(); iterator.hasNext(); ) {
+            if (now - iterator.next().getLastAccessed() >= expiryTime) {
+                iterator.remove();
+                removed++;
+            }
+        }
+
+        evictions.addAndGet(removed);
 
-    public CachedEntry(@NonNull TimeType timeType, int value) {
-        this.setCachedTime(timeType, value);
+        return removed;
     }
 
-    public Optional<Long> getMinutesSinceLastUpdated(@NonNull TimeType timeType) {
+    /**
+     * Evict the players that were requested least recently, until the cache is at 90% of its maximum size. Evicting
+     * a bit more than needed prevents an eviction on every new player once the cache is full, so the cost of an
+     * eviction is spread over a tenth of the maximum size of new players.
+     * <br>
+     * <br>
+     * Players are still requested while they are evicted, so the time of their last request is copied first. Only
+     * the copied times are sorted, which cannot change during the sort.
+     */
+    private synchronized void evictLeastRecentlyUsed() {
+        // Another thread has evicted already.
+        if (cachedTimeValues.size() <= maximumSize) return;
+
+        List<UUID> uuids = new ArrayList<>(cachedTimeValues.size());
+        long[] lastAccessed = new long[cachedTimeValues.size()];
+
+        for (Map.Entry<UUID, CachedEntry> entry : cachedTimeValues.entrySet()) {
+            // Players may have been added since the array was created.
+            if (uuids.size() == lastAccessed.length) break;
+
+            lastAccessed[uuids.size()] = entry.getValue().getLastAccessed();
+            uuids.add(entry.getKey());
+        }
+
+        int toRemove = Math.min(uuids.size() - (int) (maximumSize * 0.9), uuids.size());
+
+        if (toRemove <= 0) return;
 
-        Long lastUpdatedTime = lastUpdatedPerTimeType.get(timeType);
+        // Players that were requested before this time are evicted, as are some that were requested at this time.
+        long[] sortedLastAccessed = Arrays.copyOf(lastAccessed, uuids.size());
+        Arrays.sort(sortedLastAccessed);
 
-        if (lastUpdatedTime == null) {
-            return Optional.empty();
+        long evictBefore = sortedLastAccessed[toRemove - 1];
+        int evictAtTime = toRemove - (int) Arrays.stream(sortedLastAccessed, 0, toRemove)
+                .filter(time -> time < evictBefore).count();
+
+        int removed = 0;
+
+        for (int i = 0; i < uuids.size(); i++) {
+            if (lastAccessed[i] > evictBefore) continue;
+
+            if (lastAccessed[i] == evictBefore && evictAtTime-- <= 0) continue;
+
+            if (cachedTimeValues.remove(uuids.get(i)) != null) {
+                removed++;
+            }
         }
 
-        return Optional.of((System.currentTimeMillis() - lastUpdatedTime) / 60000);
+        evictions.addAndGet(removed);
+    }
+
+    public int size() {
+        return cachedTimeValues.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getHitCount() {
+        return hits.get();
     }
 
-    public void setCachedTime(@NonNull TimeType timeType, int time) {
-        timePerTimeType.put(timeType, time);
-        lastUpdatedPerTimeType.put(timeType, System.currentTimeMillis());
+    public long getMissCount() {
+        return misses.get();
     }
 
-    public Optional<Integer> getCachedTime(@NonNull TimeType timeType) {
-        return Optional.ofNullable(timePerTimeType.get(timeType));
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+}
+
+class CachedEntry {
+    // Time and update time per time type, indexed by the ordinal of the time type.
+    private final int[] timePerTimeType = new int[TimeType.values().length];
+    // An update time of zero means that no time is cached for the time type.
+    private final long[] lastUpdatedPerTimeType = new long[TimeType.values().length];
+    // Period in which the time was cached, see TimeType#getPeriod(LocalDate).
+    private final int[] periodPerTimeType = new int[TimeType.values().length];
+
+    // Bit mask of the time types that have been requested since they were last updated.
+    private int requestedSinceUpdate = 0;
+
+    private volatile long lastAccessed = System.currentTimeMillis();
+
+    public synchronized void setCachedTime(@NonNull TimeType timeType, int time) {
+        timePerTimeType[timeType.ordinal()] = time;
+        lastUpdatedPerTimeType[timeType.ordinal()] = System.currentTimeMillis();
+        periodPerTimeType[timeType.ordinal()] = timeType.getCurrentPeriod();
+        requestedSinceUpdate &= ~(1 << timeType.ordinal());
+    }
+
+    public synchronized void invalidateCachedTime(@NonNull TimeType timeType) {
+        lastUpdatedPerTimeType[timeType.ordinal()] = 0;
+        requestedSinceUpdate &= ~(1 << timeType.ordinal());
+    }
+
+    public synchronized boolean isRequestedSinceUpdate(@NonNull TimeType timeType) {
+        return (requestedSinceUpdate & (1 << timeType.ordinal())) != 0;
+    }
+
+    public synchronized void addCachedTime(@NonNull TimeType timeType, int timeToAdd) {
+        if (!hasCachedTime(timeType)) return;
+
+        timePerTimeType[timeType.ordinal()] += timeToAdd;
+    }
+
+    public synchronized OptionalInt getCachedTime(@NonNull TimeType timeType) {
+        lastAccessed = System.currentTimeMillis();
+
+        if (!hasCachedTime(timeType)) {
+            return OptionalInt.empty();
+        }
+
+        requestedSinceUpdate |= 1 << timeType.ordinal();
+
+        return OptionalInt.of(timePerTimeType[timeType.ordinal()]);
     }
 
-    public boolean hasCachedTime(@NonNull TimeType timeType) {
-        return timePerTimeType.containsKey(timeType);
+    public synchronized boolean hasCachedTime(@NonNull TimeType timeType) {
+        // Time that was cached in an earlier period is no longer valid.
+        return lastUpdatedPerTimeType[timeType.ordinal()] != 0
+                && periodPerTimeType[timeType.ordinal()] == timeType.getCurrentPeriod();
     }
 
-    public boolean isCachedTimeOutdated(@NonNull TimeType timeType) {
-        return hasCachedTime(timeType) && getMinutesSinceLastUpdated(timeType)
-                .orElseGet(() -> (long) MySQLStorageProvider.CACHE_EXPIRY_TIME) >= MySQLStorageProvider.CACHE_EXPIRY_TIME;
+    public synchronized boolean isCachedTimeOutdated(@NonNull TimeType timeType, long refreshTime) {
+        return hasCachedTime(timeType)
+                && System.currentTimeMillis() - lastUpdatedPerTimeType[timeType.ordinal()] >= refreshTime;
     }
 
-    @Override
-    public int hashCode() {
-        return (timePerTimeType.toString() + lastUpdatedPerTimeType.toString()).hashCode();
+    public long getLastAccessed() {
+        return lastAccessed;
     }
 }
@@ -0,0 +1,150 @@
+package me.armar.plugins.autorank.storage.mysql;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps track of whether the database can be reached, so callers do not have to wait for a connection
+ * timeout when it cannot.
+ * <br>
+ * <br>
+ * The breaker starts {@link State#CLOSED}: requests are allowed. After a number of consecutive failures it is
+ * {@link State#OPEN} and requests are rejected immediately. Once the retry time has passed, a single request is
+ * allowed through ({@link State#HALF_OPEN}). If it succeeds, the breaker is closed again. If it fails, the breaker
+ * opens again.
+ */
+public class CircuitBreaker {
+
+    private final int failureThreshold;
+    private final long retryTime;
+
+    private final List<StateListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong rejectedRequests = new AtomicLong();
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt = 0;
+
+    /**
+     * Create a new circuit breaker.
+     *
+     * @param failureThreshold Number of consecutive failures after which the breaker opens
+     * @param retryTime        Time (in seconds) after which a request is allowed through an open breaker
+     */
+    public CircuitBreaker(int failureThreshold, int retryTime) {
+        this.failureThreshold = Math.max(failureThreshold, 1);
+        this.retryTime = TimeUnit.SECONDS.toMillis(retryTime);
+    }
+
+    /**
+     * Check whether a request may be sent to the database.
+     *
+     * @return true if the request is allowed, false if it should fail immediately.
+     */
+    public boolean allowRequest() {
+        State oldState;
+
+        synchronized (this) {
+            if (state == State.CLOSED) return true;
+
+            if (state == State.HALF_OPEN || System.currentTimeMillis() - openedAt < retryTime) {
+                rejectedRequests.incrementAndGet();
+                return false;
+            }
+
+            // Let this request through to see whether the database is back.
+            oldState = state;
+            state = State.HALF_OPEN;
+        }
+
+        notifyListeners(oldState, State.HALF_OPEN);
+
+        return true;
+    }
+
+    /**
+     * Record that the database could be reached.
+     */
+    public void recordSuccess() {
+        State oldState;
+
+        synchronized (this) {
+            consecutiveFailures = 0;
+
+            if (state == State.CLOSED) return;
+
+            oldState = state;
+            state = State.CLOSED;
+        }
+
+        notifyListeners(oldState, State.CLOSED);
+    }
+
+    /**
+     * Record that the database could not be reached.
+     */
+    public void recordFailure() {
+        State oldState;
+
+        synchronized (this) {
+            consecutiveFailures++;
+
+            if (state == State.OPEN) {
+                openedAt = System.currentTimeMillis();
+                return;
+            }
+
+            if (state == State.CLOSED && consecutiveFailures < failureThreshold) return;
+
+            oldState = state;
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+
+        notifyListeners(oldState, State.OPEN);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Get the number of requests that were rejected because the breaker was open.
+     *
+     * @return number of rejected requests.
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    /**
+     * Add a listener that is called whenever the state of the breaker changes. Listeners are called on the thread
+     * that caused the change.
+     *
+     * @param listener Listener to add
+     */
+    public void addStateListener(StateListener listener) {
+        listeners.add(listener);
+    }
+
+    private void notifyListeners(State oldState, State newState) {
+        for (StateListener listener : listeners) {
+            listener.onStateChange(oldState, newState);
+        }
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Listens to changes of the state of a circuit breaker.
+     */
+    @FunctionalInterface
+    public interface StateListener {
+        void onStateChange(State oldState, State newState);
+    }
+}
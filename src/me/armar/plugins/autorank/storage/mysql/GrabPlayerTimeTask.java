@@ -1,8 +1,5 @@
 package me.armar.plugins.autorank.storage.mysql;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 
@@ -36,27 +33,9 @@ public class GrabPlayerTimeTask implements Callable<Integer> {
         if (mysql == null)
             return -1;
 
-        int time = -1;
+        final String statement = "SELECT time FROM " + table + " WHERE uuid = ?";
 
-        final String statement = "SELECT * FROM " + table + " WHERE uuid='" + uuid.toString() + "'";
-        final Optional<ResultSet> rs = mysql.executeQuery(statement);
-
-        if (!rs.isPresent())
-            return time;
-
-        try {
-            if (rs.get().next()) {
-                time = rs.get().getInt(2);
-                rs.get().close();
-            } else {
-                return time;
-            }
-
-        } catch (final SQLException e) {
-            System.out.println("SQLException: " + e.getMessage());
-            System.out.println("SQLState: " + e.getSQLState());
-            System.out.println("VendorError: " + e.getErrorCode());
-        }
+        int time = mysql.queryForObject(statement, rs -> rs.getInt(1), uuid.toString()).orElse(-1);
 
         return time;
     }
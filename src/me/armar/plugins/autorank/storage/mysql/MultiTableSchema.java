@@ -0,0 +1,212 @@
+package me.armar.plugins.autorank.storage.mysql;
+
+import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.storage.TimeType;
+
+import java.util.*;
+
+/**
+ * This is the original schema of Autorank (v1). Every type of time is stored in its own table, which has a row for
+ * every player, keyed by the UUID of the player as a string.
+ * <br>
+ * <br>
+ * Every row stores the period (see {@link TimeType#getPeriod(java.time.LocalDate)}) its time belongs to. Time of an
+ * earlier period is read as zero and is replaced by the first write in the new period, so the tables never have to
+ * be cleared when a new day, week or month starts. Total time always has period zero.
+ */
+public class MultiTableSchema extends PlayTimeSchema {
+
+    // Name of the index on the time column of the tables.
+    private static final String TIME_INDEX_NAME = "idx_time";
+
+    // Store table names for different time types
+    private final Map<TimeType, String> tableNames = new EnumMap<>(TimeType.class);
+
+    public MultiTableSchema(Autorank instance, SQLConnection connection, String tablePrefix) {
+        super(instance, connection, tablePrefix);
+
+        for (TimeType timeType : TimeType.values()) {
+            tableNames.put(timeType, getTableName(tablePrefix, timeType));
+        }
+    }
+
+    /**
+     * Get the name of the table that stores a type of time in this schema.
+     *
+     * @param tablePrefix Prefix of the tables
+     * @param timeType    Type of time
+     * @return name of the table.
+     */
+    public static String getTableName(String tablePrefix, TimeType timeType) {
+        switch (timeType) {
+            case DAILY_TIME:
+                return tablePrefix + "dailyTime";
+            case WEEKLY_TIME:
+                return tablePrefix + "weeklyTime";
+            case MONTHLY_TIME:
+                return tablePrefix + "monthlyTime";
+            default:
+                return tablePrefix + "totalTime";
+        }
+    }
+
+    @Override
+    public void createTables() {
+        // Create tables if they do not exist.
+        for (String tableName : tableNames.values()) {
+            connection.execute("CREATE TABLE IF NOT EXISTS " + tableName + " (uuid VARCHAR(40) not NULL, "
+                    + " time INTEGER not NULL, " + " modified TIMESTAMP not NULL, " + " period INTEGER not NULL "
+                    + "DEFAULT 0, PRIMARY KEY ( uuid ), " + " INDEX " + TIME_INDEX_NAME + " ( time ))");
+
+            // Tables created by older versions of Autorank do not have an index on time yet.
+            if (!hasTimeIndex(tableName)) {
+                plugin.getLogger().info("Adding index on time to table " + tableName + ".");
+                connection.execute("ALTER TABLE " + tableName + " ADD INDEX " + TIME_INDEX_NAME + " ( time )");
+            }
+        }
+
+        // Tables created by older versions of Autorank do not store the period of the time yet.
+        for (Map.Entry<TimeType, String> entry : tableNames.entrySet()) {
+            if (hasPeriodColumn(connection, entry.getValue())) continue;
+
+            plugin.getLogger().info("Adding period to table " + entry.getValue() + ".");
+            connection.execute("ALTER TABLE " + entry.getValue() + " ADD COLUMN period INTEGER not NULL DEFAULT 0");
+
+            if (entry.getKey() != TimeType.TOTAL_TIME) {
+                connection.update("UPDATE " + entry.getValue() + " SET period = ?",
+                        plugin.getPlayTimeStorageManager().getLegacyPeriod(entry.getKey()));
+            }
+        }
+    }
+
+    @Override
+    public List<String> getTableNames() {
+        return new ArrayList<>(tableNames.values());
+    }
+
+    @Override
+    public Optional<Map<UUID, Integer>> getTimes(TimeType timeType, List<UUID> uuids) {
+        Map<UUID, Integer> times = new HashMap<>();
+
+        if (uuids.isEmpty()) return Optional.of(times);
+
+        String placeholders = String.join(",", Collections.nCopies(uuids.size(), "?"));
+
+        final String statement = "SELECT uuid, time FROM " + tableNames.get(timeType) + " WHERE period = ? AND " +
+                "uuid IN (" + placeholders + ")";
+
+        List<Object> parameters = new ArrayList<>();
+
+        parameters.add(timeType.getCurrentPeriod());
+        uuids.forEach(uuid -> parameters.add(uuid.toString()));
+
+        boolean success = connection.query(statement, rs -> times.put(UUID.fromString(rs.getString(1)),
+                rs.getInt(2)), parameters.toArray());
+
+        return success ? Optional.of(times) : Optional.empty();
+    }
+
+    @Override
+    public Map<UUID, Integer> getTopPlayers(TimeType timeType, int limit, int offset) {
+        Map<UUID, Integer> topPlayers = new LinkedHashMap<>();
+
+        final String statement = "SELECT uuid, time FROM " + tableNames.get(timeType) + " WHERE period = ? ORDER BY " +
+                "time DESC LIMIT ?, ?";
+
+        connection.query(statement, rs -> topPlayers.put(UUID.fromString(rs.getString(1)), rs.getInt(2)),
+                timeType.getCurrentPeriod(), offset, limit);
+
+        return topPlayers;
+    }
+
+    @Override
+    public List<UUID> getStoredPlayers(TimeType timeType) {
+        List<UUID> uuids = new ArrayList<>();
+
+        // Rows are streamed, so only the UUIDs are kept in memory.
+        connection.query("SELECT uuid FROM " + tableNames.get(timeType) + " WHERE period = ?",
+                rs -> uuids.add(UUID.fromString(rs.getString(1))), timeType.getCurrentPeriod());
+
+        return uuids;
+    }
+
+    @Override
+    public int getNumberOfStoredPlayers(TimeType timeType) {
+        return connection.queryForObject("SELECT COUNT(uuid) FROM " + tableNames.get(timeType) + " WHERE period = ?",
+                rs -> rs.getInt(1), timeType.getCurrentPeriod()).orElse(0);
+    }
+
+    @Override
+    public void resetTime(TimeType timeType) {
+        connection.execute("TRUNCATE TABLE " + tableNames.get(timeType));
+    }
+
+    @Override
+    public boolean writeChanges(Map<TimeType, Map<UUID, PendingWrite>> pendingWrites) {
+        Map<String, List<Object[]>> batches = new LinkedHashMap<>();
+
+        for (Map.Entry<TimeType, Map<UUID, PendingWrite>> entry : pendingWrites.entrySet()) {
+            String tableName = tableNames.get(entry.getKey());
+            int period = entry.getKey().getCurrentPeriod();
+
+            List<Object[]> setStatements = new ArrayList<>();
+            List<Object[]> addStatements = new ArrayList<>();
+
+            // Sort on UUID, so concurrent flushes from other servers lock rows in the same order.
+            List<UUID> uuids = new ArrayList<>(entry.getValue().keySet());
+            Collections.sort(uuids);
+
+            for (UUID uuid : uuids) {
+                PendingWrite pendingWrite = entry.getValue().get(uuid);
+
+                if (pendingWrite.isAbsolute()) {
+                    setStatements.add(new Object[]{uuid.toString(), pendingWrite.getValue(), period,
+                            pendingWrite.getValue(), period});
+                } else {
+                    addStatements.add(new Object[]{uuid.toString(), pendingWrite.getValue(), period, period,
+                            pendingWrite.getValue(), period});
+                }
+            }
+
+            // Time of an earlier period is replaced instead of added to. The time is updated before the period, as
+            // MySQL uses the updated value of a column in the assignments after it.
+            batches.put("INSERT INTO " + tableName + " (uuid, time, modified, period) VALUES (?, ?, " +
+                    "CURRENT_TIMESTAMP, ?) ON DUPLICATE KEY UPDATE time=?, period=?", setStatements);
+            batches.put("INSERT INTO " + tableName + " (uuid, time, modified, period) VALUES (?, ?, " +
+                    "CURRENT_TIMESTAMP, ?) ON DUPLICATE KEY UPDATE time=IF(period=?, time, 0)+?, period=?",
+                    addStatements);
+        }
+
+        return connection.executeBatches(batches);
+    }
+
+    /**
+     * Check whether a table has an index on the time column, which is used to quickly find the players with the
+     * most time.
+     *
+     * @param tableName Name of the table
+     * @return true if the index exists (or if it could not be checked), false otherwise.
+     */
+    private boolean hasTimeIndex(String tableName) {
+        final String statement = "SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = " +
+                "DATABASE() AND table_name = ? AND index_name = ?";
+
+        // Don't try to add the index if we cannot check whether it exists.
+        return connection.queryForObject(statement, rs -> rs.getInt(1) > 0, tableName, TIME_INDEX_NAME)
+                .orElse(true);
+    }
+
+    /**
+     * Check whether a table has a column that stores the period of the time.
+     *
+     * @param tableName Name of the table
+     * @return true if the column exists (or if it could not be checked), false otherwise.
+     */
+    static boolean hasPeriodColumn(SQLConnection connection, String tableName) {
+        final String statement = "SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() " +
+                "AND table_name = ? AND column_name = 'period'";
+
+        // Don't try to add the column if we cannot check whether it exists.
+        return connection.queryForObject(statement, rs -> rs.getInt(1) > 0, tableName).orElse(true);
+    }
+}
@@ -3,12 +3,12 @@ package me.armar.plugins.autorank.storage.mysql;
 import me.armar.plugins.autorank.Autorank;
 import me.armar.plugins.autorank.config.SettingsConfig;
 import me.armar.plugins.autorank.storage.PlayTimeStorageProvider;
+import me.armar.plugins.autorank.storage.StorageExecutor;
 import me.armar.plugins.autorank.storage.TimeType;
-import me.armar.plugins.autorank.util.AutorankTools;
+import me.armar.plugins.autorank.warningmanager.WarningManager;
 import org.bukkit.ChatColor;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.io.File;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -16,6 +16,8 @@ import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * This class represents a storage provider in terms of MySQL. It can be used alongside other MySQL connections. This
@@ -26,12 +28,28 @@ public class MySQLStorageProvider extends PlayTimeStorageProvider {
 
     // How many minutes can a cached entry be cached before it is considered to be expired.
     public static int CACHE_EXPIRY_TIME = 2;
+    // How many players are requested at most in a single query.
+    private static final int BULK_QUERY_SIZE = 500;
+    // Number of seconds between checks of the connection to the database.
+    private static final int HEALTH_CHECK_INTERVAL = 5;
+    // Warning that is shown while the database cannot be reached.
+    private static final String DATABASE_DOWN_WARNING = "Autorank cannot reach your MySQL database. Changes to the " +
+            "time of players are kept in memory until it is back.";
     // Thread pool for saving and retrieving storage.
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
-    // Store table names for different time types
-    private final Map<TimeType, String> tableNames = new HashMap<>();
+    private final StorageExecutor executor;
+    // Layout of the tables that time is stored in.
+    private PlayTimeSchema schema;
     // Use a cache manager to store the cached values.
-    private final CacheManager cacheManager = new CacheManager();
+    private final CacheManager cacheManager;
+    // Buffer changes to the time of players, so they can be written in batches.
+    private final PlayTimeWriteBuffer writeBuffer = new PlayTimeWriteBuffer();
+    // Changes that could not be written when the server stopped are saved to this file.
+    private final File pendingWritesFile;
+    // Flushes of the write buffer hold the write lock, so only one flush runs at a time. Queries whose result is
+    // cached hold the read lock, so no change is written between such a query and caching its result.
+    private final ReadWriteLock cacheLock = new ReentrantReadWriteLock();
+    // Periodic tasks of this provider, which are cancelled when the database is disconnected.
+    private final List<ScheduledFuture<?>> timers = new CopyOnWriteArrayList<>();
     // Use library to handle connections to MySQL database.
     private SQLConnection mysqlLibrary;
     private boolean isLoaded = false;
@@ -39,36 +57,56 @@ public class MySQLStorageProvider extends PlayTimeStorageProvider {
     public MySQLStorageProvider(Autorank instance) {
         super(instance);
 
+        executor = plugin.getPlayTimeStorageManager().getStorageExecutor();
+
+        pendingWritesFile = new File(plugin.getDataFolder().getAbsolutePath() + File.separator + "data" + File
+                .separator + "MySQL_pending_writes.txt");
+
         CACHE_EXPIRY_TIME = plugin.getSettingsConfig().getIntervalTime();
 
+        cacheManager = new CacheManager(plugin.getSettingsConfig().getMySQLCacheSize(), CACHE_EXPIRY_TIME,
+                plugin.getSettingsConfig().getMySQLCacheExpiryTime());
+
         // Run task to update time in cache periodically.
-        instance.getServer().getScheduler().runTaskTimerAsynchronously(instance, () -> {
+        timers.add(executor.scheduleAtFixedRate(this::refreshCache, 60, CACHE_EXPIRY_TIME * 30L,
+                TimeUnit.SECONDS));
+    }
 
-            // Find all UUIDS that are in the cache.
-            Set<UUID> cachedUUIDs = cacheManager.getCachedUUIDs();
+    /**
+     * Remove expired players from the cache and refresh the time of players whose cached time is outdated.
+     */
+    private void refreshCache() {
+        // Remove players that have not been requested for a while.
+        int expiredEntries = cacheManager.removeExpiredEntries();
 
-            for (UUID cachedUUID : cachedUUIDs) {
-                // Loop over all time types and see if they should be updated.
-                for (TimeType timeType : TimeType.values()) {
-                    if (cacheManager.shouldUpdateCachedEntry(timeType, cachedUUID)) {
+        if (expiredEntries > 0) {
+            plugin.debugMessage("Removed " + expiredEntries + " expired players from the MySQL cache.");
+        }
 
-                        plugin.debugMessage("Refreshing cached global time of " + cachedUUID);
+        // Keep the outdated values until the database can be reached again.
+        if (mysqlLibrary == null || !mysqlLibrary.isConnected()) return;
 
-                        // Get their global playtime
-                        int playTime = 0;
-                        try {
-                            playTime = getFreshPlayerTime(timeType, cachedUUID).get();
-                        } catch (InterruptedException | ExecutionException e) {
-                            e.printStackTrace();
-                        }
+        // Refresh outdated values in the cache, one query per chunk of players.
+        for (TimeType timeType : TimeType.values()) {
+            List<UUID> uuidsToRefresh = cacheManager.getEntriesToRefresh(timeType);
 
-                        // Put the freshly acquired data in the cache.
-                        cacheManager.registerCachedTime(timeType, cachedUUID, playTime);
-                    }
+            if (uuidsToRefresh.isEmpty()) continue;
+
+            for (int i = 0; i < uuidsToRefresh.size(); i += BULK_QUERY_SIZE) {
+                List<UUID> chunk = uuidsToRefresh.subList(i, Math.min(i + BULK_QUERY_SIZE,
+                        uuidsToRefresh.size()));
+
+                // The freshly acquired data is put in the cache.
+                if (!getFreshPlayerTimes(timeType, chunk).isPresent()) {
+                    plugin.debugMessage("Could not refresh cached global time (" + timeType + "), the database " +
+                            "could not be queried");
+                    return;
                 }
             }
 
-        }, AutorankTools.TICKS_PER_MINUTE, (CACHE_EXPIRY_TIME * AutorankTools.TICKS_PER_MINUTE) / 2);
+            plugin.debugMessage("Refreshed cached global time (" + timeType + ") of " + uuidsToRefresh.size() +
+                    " players");
+        }
     }
 
     @Override
@@ -78,40 +116,29 @@ public class MySQLStorageProvider extends PlayTimeStorageProvider {
 
     @Override
     public void setPlayerTime(TimeType timeType, UUID uuid, int time) {
-        // Run async to prevent load issues.
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
-
-            plugin.debugMessage("Setting time (" + timeType + ") of '" + uuid.toString() + "' to " + time);
-
-            // Check if connection is still alive
-            if (mysqlLibrary.isClosed()) {
-                mysqlLibrary.connect();
-            }
+        plugin.debugMessage("Setting time (" + timeType + ") of '" + uuid.toString() + "' to " + time);
 
-            String tableName = tableNames.get(timeType);
+        plugin.getLoggerManager().logMessage("Setting (MySQL) " + timeType.name() + " of " + uuid.toString() + " " +
+                "to: " + time);
 
-            plugin.getLoggerManager().logMessage("Setting (MySQL) " + timeType.name() + " of " + uuid.toString() + " " +
-                    "to: " + time);
+        // Update cache with new value
+        cacheManager.registerCachedTime(timeType, uuid, time);
 
-            final String statement = "INSERT INTO " + tableName + " VALUES ('" + uuid.toString() + "', " + time
-                    + ", CURRENT_TIMESTAMP) " + "ON DUPLICATE KEY UPDATE " + "time=" + time;
-
-            // Update cache with new value
-            cacheManager.registerCachedTime(timeType, uuid, time);
-
-            mysqlLibrary.execute(statement);
-        });
+        // The value is written to the database on the next flush of the buffer.
+        writeBuffer.setTime(timeType, uuid, time);
     }
 
     @Override
     public CompletableFuture<Integer> getPlayerTime(TimeType timeType, UUID uuid) {
 
         return CompletableFuture.supplyAsync(() -> {
+            OptionalInt optionalCachedTime = cacheManager.getCachedTime(timeType, uuid);
+
             // If we have a cached time value, use that instead of quering the database.
-            if (cacheManager.hasCachedTime(timeType, uuid)) {
+            if (optionalCachedTime.isPresent()) {
                 plugin.debugMessage("Getting cached time (" + timeType + ") of '" + uuid.toString() + "'");
 
-                int cachedTime = cacheManager.getCachedTime(timeType, uuid);
+                int cachedTime = writeBuffer.applyPendingWrite(timeType, uuid, optionalCachedTime.getAsInt());
 
                 plugin.getLoggerManager().logMessage("Retrieved cached time (MySQL) " + timeType.name() + " of " + uuid.toString() +
                         ": " + cachedTime + " minutes");
@@ -119,57 +146,99 @@ public class MySQLStorageProvider extends PlayTimeStorageProvider {
                 return cachedTime;
             }
 
-            try {
+            // Query the database on this thread, so we don't wait for another task of the storage executor.
+            int freshPlayerTime = writeBuffer.applyPendingWrite(timeType, uuid, getFreshPlayerTime(timeType, uuid));
+
+            plugin.getLoggerManager().logMessage("Retrieved fresh time (MySQL) " + timeType.name() + " of " + uuid.toString() +
+                    ": " + freshPlayerTime + " minutes");
 
-                int freshPlayerTime = getFreshPlayerTime(timeType, uuid).get();
+            return freshPlayerTime;
+        }, executor);
+    }
 
-                plugin.getLoggerManager().logMessage("Retrieved fresh time (MySQL) " + timeType.name() + " of " + uuid.toString() +
-                        ": " + freshPlayerTime + " minutes");
+    @Override
+    public CompletableFuture<Map<UUID, Integer>> getPlayerTimes(TimeType timeType, Collection<UUID> uuids) {
 
-                return freshPlayerTime;
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
+        return CompletableFuture.supplyAsync(() -> {
+            Map<UUID, Integer> times = new HashMap<>();
+
+            // Players that are not cached need to be requested from the database.
+            List<UUID> uncachedUUIDs = new ArrayList<>();
+
+            for (UUID uuid : uuids) {
+                OptionalInt cachedTime = cacheManager.getCachedTime(timeType, uuid);
+
+                if (cachedTime.isPresent()) {
+                    times.put(uuid, cachedTime.getAsInt());
+                } else {
+                    uncachedUUIDs.add(uuid);
+                }
             }
 
-            plugin.getLoggerManager().logMessage("Couldn't retrieve data (MySQL) " + timeType.name() + " of " + uuid.toString());
+            // Request the time of uncached players in chunks.
+            for (int i = 0; i < uncachedUUIDs.size(); i += BULK_QUERY_SIZE) {
+                List<UUID> chunk = uncachedUUIDs.subList(i, Math.min(i + BULK_QUERY_SIZE, uncachedUUIDs.size()));
 
-            return 0;
-        });
+                // Don't cache missing values while the database is down or the query fails.
+                Optional<Map<UUID, Integer>> freshTimes = mysqlLibrary.isConnected() ?
+                        getFreshPlayerTimes(timeType, chunk) : Optional.empty();
+
+                for (UUID uuid : chunk) {
+                    times.put(uuid, freshTimes.map(fresh -> fresh.get(uuid)).orElse(0));
+                }
+            }
+
+            plugin.debugMessage("Retrieved time (" + timeType + ") of " + times.size() + " players, of which " +
+                    uncachedUUIDs.size() + " were not cached.");
+
+            // Include changes that have not been written to the database yet.
+            times.replaceAll((uuid, time) -> writeBuffer.applyPendingWrite(timeType, uuid, time));
+
+            return times;
+        }, executor);
     }
 
     @Override
-    public void resetData(TimeType timeType) {
-        String tableName = this.tableNames.get(timeType);
+    public CompletableFuture<Map<UUID, Integer>> getTopPlayers(TimeType timeType, int limit, int offset) {
 
-        String statement = "TRUNCATE TABLE " + tableName;
+        return CompletableFuture.supplyAsync(() -> {
+            // Make sure buffered changes are taken into account.
+            flushWriteBuffer();
 
-        // Run clean statement async so it won't bother main thread.
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> mysqlLibrary.execute(statement));
+            return schema.getTopPlayers(timeType, limit, offset);
+        }, executor);
     }
 
     @Override
-    public void addPlayerTime(TimeType timeType, UUID uuid, int timeToAdd) {
-
-        // Run async to prevent load issues.
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+    public void resetData(TimeType timeType) {
+        // Run clean statement async so it won't bother main thread. Buffered changes are flushed first, so they
+        // do not end up in the table after it has been cleaned.
+        executor.execute(() -> {
+            flushWriteBuffer();
+            schema.resetTime(timeType);
+        });
+    }
 
-            plugin.debugMessage("Adding " + timeToAdd + " minutes of (" + timeType + ") to '" + uuid.toString() + "'");
+    @Override
+    public void addPlayerTime(TimeType timeType, UUID uuid, int timeToAdd) {
+        plugin.debugMessage("Adding " + timeToAdd + " minutes of (" + timeType + ") to '" + uuid.toString() + "'");
 
-            // Check if connection is still alive
-            if (mysqlLibrary.isClosed()) {
-                mysqlLibrary.connect();
-            }
+        plugin.getLoggerManager().logMessage("Adding (MySQL) " + timeType.name() + " of " + uuid.toString() + " " +
+                "time: " + timeToAdd + " minutes");
 
-            String tableName = tableNames.get(timeType);
+        // The time is added in the database on the next flush of the buffer.
+        writeBuffer.addTime(timeType, uuid, timeToAdd);
+    }
 
-            plugin.getLoggerManager().logMessage("Adding (MySQL) " + timeType.name() + " of " + uuid.toString() + " " +
-                    "time: " + timeToAdd + " minutes");
+    @Override
+    public void addPlayerTimes(TimeType timeType, Map<UUID, Integer> timesToAdd) {
+        plugin.debugMessage("Adding time (" + timeType + ") to " + timesToAdd.size() + " players");
 
-            final String statement = "INSERT INTO " + tableName + " VALUES ('" + uuid.toString() + "', " + timeToAdd
-                    + ", CURRENT_TIMESTAMP) " + "ON DUPLICATE KEY UPDATE " + "time=time+" + timeToAdd;
+        plugin.getLoggerManager().logMessage("Adding (MySQL) " + timeType.name() + " of " + timesToAdd.size() +
+                " players: " + timesToAdd);
 
-            mysqlLibrary.execute(statement);
-        });
+        // All changes are written to the database in the same flush of the buffer.
+        timesToAdd.forEach((uuid, timeToAdd) -> writeBuffer.addTime(timeType, uuid, timeToAdd));
     }
 
     @Override
@@ -181,16 +250,8 @@ public class MySQLStorageProvider extends PlayTimeStorageProvider {
     public CompletableFuture<Boolean> initialiseProvider() {
 
         return CompletableFuture.supplyAsync(() -> {
-            // Load table names
-            loadTableNames();
-
             // Load settings from settings file and initialize MySQL connection .
-            try {
-                if (!loadMySQLVariables().get()) {
-                    return false;
-                }
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
+            if (!loadMySQLVariables()) {
                 return false;
             }
 
@@ -200,11 +261,32 @@ public class MySQLStorageProvider extends PlayTimeStorageProvider {
             }
 
             // Load and create tables
+            schema = createSchema();
             createTables();
 
+            // Changes that could not be written when the server stopped are written on the next flush.
+            int restoredWrites = writeBuffer.restore(pendingWritesFile);
+
+            if (restoredWrites > 0) {
+                plugin.getLogger().info("Restored " + restoredWrites + " changes that were not written to the " +
+                        "MySQL database before the server stopped.");
+            }
+
+            // Keep track of whether the database can be reached, so queries don't wait for it while it is down.
+            mysqlLibrary.getCircuitBreaker().addStateListener(this::onDatabaseStateChange);
+
+            timers.add(executor.scheduleAtFixedRate(() -> mysqlLibrary.checkHealth(), HEALTH_CHECK_INTERVAL,
+                    HEALTH_CHECK_INTERVAL, TimeUnit.SECONDS));
+
+            // Periodically write buffered changes to the database.
+            int flushInterval = plugin.getSettingsConfig().getMySQLWriteFlushInterval();
+
+            timers.add(executor.scheduleAtFixedRate(this::flushWriteBuffer, flushInterval, flushInterval,
+                    TimeUnit.SECONDS));
+
             isLoaded = true;
             return true;
-        });
+        }, executor);
     }
 
     @Override
@@ -217,65 +299,19 @@ public class MySQLStorageProvider extends PlayTimeStorageProvider {
     public CompletableFuture<Integer> getNumberOfStoredPlayers(TimeType timeType) {
 
         return CompletableFuture.supplyAsync(() -> {
-            String tableName = tableNames.get(timeType);
-
-            String statement = "SELECT COUNT(uuid) FROM " + tableName;
-
-            Optional<ResultSet> rs = mysqlLibrary.executeQuery(statement);
-
-            if (!rs.isPresent())
-                return 0;
-
-            try {
-                if (rs.get().next()) {
-                    return rs.get().getInt(1);
-                }
-
-            } catch (final SQLException e) {
-                System.out.println("SQLException: " + e.getMessage());
-                System.out.println("SQLState: " + e.getSQLState());
-                System.out.println("VendorError: " + e.getErrorCode());
-            }
-
-            return 0;
-        });
+            return schema.getNumberOfStoredPlayers(timeType);
+        }, executor);
     }
 
     @Override
     public List<UUID> getStoredPlayers(TimeType timeType) {
-        List<UUID> uuids = new ArrayList<>();
-
-        String tableName = tableNames.get(timeType);
-
-        String statement = "SELECT uuid FROM " + tableName;
-
-        Optional<ResultSet> rs = mysqlLibrary.executeQuery(statement);
-
-        if (!rs.isPresent())
-            return uuids;
-
-        try {
-
-            // Loop over all rows to get all UUIDs.
-            while (rs.get().next()) {
-                String uuidString = rs.get().getString("uuid");
-
-                uuids.add(UUID.fromString(uuidString));
-            }
-
-        } catch (final SQLException e) {
-            System.out.println("SQLException: " + e.getMessage());
-            System.out.println("SQLState: " + e.getSQLState());
-            System.out.println("VendorError: " + e.getErrorCode());
-        }
-
-        return uuids;
+        return schema.getStoredPlayers(timeType);
     }
 
     @Override
     public void saveData() {
-        // There is no in-memory data (apart from the cache). Hence, there is no need to save anything as it is
-        // already stored in the database.
+        // Write all changes that are still buffered to the database.
+        this.flushWriteBuffer();
     }
 
     @Override
@@ -299,9 +335,7 @@ public class MySQLStorageProvider extends PlayTimeStorageProvider {
 
         DateFormat df = new SimpleDateFormat("yyyy_MM_dd HH_mm_ss");
 
-        for (Map.Entry<TimeType, String> entry : tableNames.entrySet()) {
-            String tableName = entry.getValue();
-
+        for (String tableName : schema.getTableNames()) {
             String backupTableName = tableName + "_backup_" + df.format(new Date());
 
             statements.add(String.format("CREATE TABLE `%1$s` LIKE `%2$s`;", backupTableName, tableName));
@@ -320,92 +354,191 @@ public class MySQLStorageProvider extends PlayTimeStorageProvider {
 
         List<String> tablesToDelete = new ArrayList<>();
 
-        Optional<ResultSet> optionalResultSet = mysqlLibrary.executeQuery("SHOW TABLES;");
+        // Read all tables and delete the ones that are not needed.
+        mysqlLibrary.query("SHOW TABLES", resultSet -> {
+            String tableName = resultSet.getString(1);
 
-        if (!optionalResultSet.isPresent()) return 0;
+            // Check what the date of the file is.
+            String fileDateString = tableName.replaceAll("[^\\d]", "");
 
-        try (ResultSet resultSet = optionalResultSet.get()) {
+            Date fileDate = null;
 
-            while (resultSet.next()) {
-                // Read all tables and delete the ones that are not needed.
+            try {
+                fileDate = df.parse(fileDateString);
+            } catch (ParseException e) {
+                // Ignore error.
+            }
 
-                String tableName = resultSet.getString(1);
+            // Ignore file if date could not be parsed
+            if (fileDate == null) {
+                return;
+            }
 
-                // Check what the date of the file is.
-                String fileDateString = tableName.replaceAll("[^\\d]", "");
+            if (fileDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().isBefore(date)) {
+                // This file is from before the date, so delete it.
+                tablesToDelete.add(tableName);
+            }
+        });
 
-                Date fileDate = null;
+        // Now remove all tables that should be deleted.
+        tablesToDelete.forEach(tableName -> {
+            mysqlLibrary.execute("DROP TABLE `" + tableName + "`;");
+        });
 
-                try {
-                    fileDate = df.parse(fileDateString);
-                } catch (ParseException e) {
-                    // Ignore error.
-                }
+        return tablesToDelete.size();
+    }
 
-                // Ignore file if date could not be parsed
-                if (fileDate == null) {
-                    continue;
-                }
+    @Override
+    public boolean isLoaded() {
+        return isLoaded;
+    }
 
-                if (fileDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().isBefore(date)) {
-                    // This file is from before the date, so delete it.
-                    tablesToDelete.add(tableName);
-                }
-            }
+    @Override
+    public List<String> getDebugStatistics() {
+        List<String> statistics = new ArrayList<>();
 
-            // Now remove all tables that should be deleted.
-            tablesToDelete.forEach(tableName -> {
-                mysqlLibrary.execute("DROP TABLE `" + tableName + "`;");
-            });
+        if (schema != null) {
+            statistics.add("Schema: " + schema.getClass().getSimpleName());
+        }
 
+        if (mysqlLibrary != null) {
+            statistics.add("Database state: " + mysqlLibrary.getCircuitBreaker().getState() + ", rejected " +
+                    "requests: " + mysqlLibrary.getCircuitBreaker().getRejectedRequests());
+        }
 
-        } catch (SQLException e) {
-            e.printStackTrace();
+        statistics.add("Cached players: " + cacheManager.size() + " (maximum " + cacheManager.getMaximumSize() + ")");
+        statistics.add("Cache hits: " + cacheManager.getHitCount() + ", misses: " + cacheManager.getMissCount() +
+                ", evictions: " + cacheManager.getEvictionCount());
+        statistics.add("Pending writes: " + writeBuffer.getQueueDepth());
+        statistics.add("Flushes: " + writeBuffer.getFlushCount() + " (" + writeBuffer.getFailedFlushCount() + " " +
+                "failed), writes flushed: " + writeBuffer.getFlushedWrites());
+        statistics.add(String.format("Flush latency: last %.2f ms, average %.2f ms, max %.2f ms",
+                writeBuffer.getLastFlushLatency(), writeBuffer.getAverageFlushLatency(),
+                writeBuffer.getMaxFlushLatency()));
+
+        return statistics;
+    }
+
+    /**
+     * Called when the database goes down or comes back up. While it is down, a warning is shown to admins.
+     */
+    private void onDatabaseStateChange(CircuitBreaker.State oldState, CircuitBreaker.State newState) {
+        plugin.debugMessage("State of MySQL database changed from " + oldState + " to " + newState);
+
+        if (newState == CircuitBreaker.State.OPEN && oldState == CircuitBreaker.State.CLOSED) {
+            plugin.getLogger().warning("Lost connection to the MySQL database, " + writeBuffer.getQueueDepth() +
+                    " changes are buffered until it is back.");
+            plugin.getWarningManager().registerWarning(DATABASE_DOWN_WARNING,
+                    WarningManager.HIGH_PRIORITY_WARNING);
+        } else if (newState == CircuitBreaker.State.CLOSED) {
+            plugin.getLogger().info("Connection to the MySQL database has been restored.");
+            plugin.getWarningManager().unregisterWarning(DATABASE_DOWN_WARNING);
         }
+    }
 
-        return tablesToDelete.size();
+    /**
+     * Get the buffer that holds changes to the time of players that have not been written to the database yet.
+     *
+     * @return write buffer of this storage provider.
+     */
+    public PlayTimeWriteBuffer getWriteBuffer() {
+        return writeBuffer;
     }
 
-    @Override
-    public boolean isLoaded() {
-        return isLoaded;
+    /**
+     * Write all changes that are buffered to the database, using one transaction. Changes that cannot be written are
+     * put back in the buffer, so they are retried on the next flush.
+     */
+    public void flushWriteBuffer() {
+        cacheLock.writeLock().lock();
+
+        try {
+            // Keep the changes buffered while the database is down.
+            if (mysqlLibrary == null || !mysqlLibrary.isConnected()) return;
+
+            Map<TimeType, Map<UUID, PendingWrite>> pendingWrites = writeBuffer.drain();
+
+            if (pendingWrites.isEmpty()) return;
+
+            long startTime = System.nanoTime();
+
+            int numberOfWrites = 0;
+
+            for (Map<UUID, PendingWrite> writes : pendingWrites.values()) {
+                numberOfWrites += writes.size();
+            }
+
+            if (!schema.writeChanges(pendingWrites)) {
+                plugin.debugMessage("Could not write " + numberOfWrites + " buffered changes to the database, " +
+                        "retrying on next flush.");
+                writeBuffer.requeue(pendingWrites);
+                return;
+            }
+
+            // The changes are now stored in the database, so include them in the cached values.
+            for (Map.Entry<TimeType, Map<UUID, PendingWrite>> entry : pendingWrites.entrySet()) {
+                for (Map.Entry<UUID, PendingWrite> write : entry.getValue().entrySet()) {
+                    if (write.getValue().isAbsolute()) {
+                        cacheManager.registerCachedTime(entry.getKey(), write.getKey(), write.getValue().getValue());
+                    } else {
+                        cacheManager.addCachedTime(entry.getKey(), write.getKey(), write.getValue().getValue());
+                    }
+                }
+            }
+
+            long duration = System.nanoTime() - startTime;
+
+            writeBuffer.recordFlush(numberOfWrites, duration);
+
+            plugin.debugMessage("Flushed " + numberOfWrites + " buffered changes to the database in " +
+                    (duration / 1000000) + " ms.");
+        } finally {
+            cacheLock.writeLock().unlock();
+        }
     }
 
-    private void loadTableNames() {
+    /**
+     * Create the schema that is chosen in the settings.
+     */
+    private PlayTimeSchema createSchema() {
         String prefix = plugin.getSettingsConfig().getMySQLSetting(SettingsConfig.MySQLSettings.TABLE_PREFIX);
 
-        tableNames.put(TimeType.TOTAL_TIME, prefix + "totalTime");
-        tableNames.put(TimeType.DAILY_TIME, prefix + "dailyTime");
-        tableNames.put(TimeType.WEEKLY_TIME, prefix + "weeklyTime");
-        tableNames.put(TimeType.MONTHLY_TIME, prefix + "monthlyTime");
+        if (plugin.getSettingsConfig().getMySQLSchemaVersion() == 3) {
+            plugin.debugMessage("Using per server schema (v3) for MySQL");
+            return new PerServerSchema(plugin, mysqlLibrary, prefix);
+        }
+
+        if (plugin.getSettingsConfig().getMySQLSchemaVersion() == 2) {
+            plugin.debugMessage("Using single table schema (v2) for MySQL");
+            return new SingleTableSchema(plugin, mysqlLibrary, prefix);
+        }
+
+        return new MultiTableSchema(plugin, mysqlLibrary, prefix);
     }
 
     /**
      * Grab the credentials defined in the Setting config and initialise connection to MySQL database.
      */
-    private CompletableFuture<Boolean> loadMySQLVariables() {
+    private boolean loadMySQLVariables() {
+        final SettingsConfig configHandler = plugin.getSettingsConfig();
 
-        return CompletableFuture.supplyAsync(() -> {
-            final SettingsConfig configHandler = plugin.getSettingsConfig();
-
-            if (!configHandler.useMySQL()) {
-                plugin.getLogger().warning("Autorank is trying to register a MySQL storage provider, but MySQL is " +
-                        "disabled in the settings file!");
-                return false;
-            }
+        if (!configHandler.useMySQL()) {
+            plugin.getLogger().warning("Autorank is trying to register a MySQL storage provider, but MySQL is " +
+                    "disabled in the settings file!");
+            return false;
+        }
 
-            mysqlLibrary = SQLConnection.getInstance(configHandler);
+        mysqlLibrary = SQLConnection.getInstance(configHandler);
 
-            if (!mysqlLibrary.connect()) {
-                mysqlLibrary = null;
-                plugin.getLogger().severe("Could not connect to MySQL!");
-                plugin.debugMessage(ChatColor.RED + "Could not connect to MySQL!");
-                return false;
-            } else {
-                plugin.debugMessage(ChatColor.RED + "Successfully established connection to MySQL");
-                return true;
-            }
-        });
+        if (!mysqlLibrary.connect()) {
+            mysqlLibrary = null;
+            plugin.getLogger().severe("Could not connect to MySQL!");
+            plugin.debugMessage(ChatColor.RED + "Could not connect to MySQL!");
+            return false;
+        } else {
+            plugin.debugMessage(ChatColor.RED + "Successfully established connection to MySQL");
+            return true;
+        }
     }
 
     /**
@@ -418,13 +551,7 @@ public class MySQLStorageProvider extends PlayTimeStorageProvider {
         }
 
         // Create tables if they do not exist.
-        for (Map.Entry<TimeType, String> entry : this.tableNames.entrySet()) {
-            String statement = "CREATE TABLE IF NOT EXISTS " + entry.getValue() + " (uuid VARCHAR(40) not NULL, "
-                    + " time INTEGER not NULL, " + " modified TIMESTAMP not NULL, " + " PRIMARY KEY ( uuid ))";
-
-            // Run async to prevent load issues.
-            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> mysqlLibrary.execute(statement));
-        }
+        schema.createTables();
     }
 
     /**
@@ -435,63 +562,108 @@ public class MySQLStorageProvider extends PlayTimeStorageProvider {
      * @param uuid     UUID of the player
      * @return value of time for a player
      */
-    private CompletableFuture<Integer> getFreshPlayerTime(TimeType timeType, UUID uuid) {
+    private int getFreshPlayerTime(TimeType timeType, UUID uuid) {
+        // Check if connection is still alive
+        if (mysqlLibrary.isClosed()) {
+            mysqlLibrary.connect();
+        }
 
-        return CompletableFuture.supplyAsync(() -> {
-            // Check if connection is still alive
-            if (mysqlLibrary.isClosed()) {
-                mysqlLibrary.connect();
-            }
+        // Don't wait for the database (or cache the missing value) while it is down.
+        if (!mysqlLibrary.isConnected()) {
+            plugin.debugMessage("Could not obtain fresh global time (" + timeType + ") of '" + uuid.toString() +
+                    "' because the database is down");
+            return 0;
+        }
+
+        // Cache value so we don't grab it again.
+        Optional<Map<UUID, Integer>> freshTimes = getFreshPlayerTimes(timeType, Collections.singletonList(uuid));
 
-            String tableName = this.tableNames.get(timeType);
+        if (!freshTimes.isPresent()) {
+            plugin.debugMessage("Could not obtain fresh global time (" + timeType + ") of '" + uuid.toString() +
+                    "' because the database could not be queried");
+            return 0;
+        }
 
-            int time = 0;
+        int time = freshTimes.get().get(uuid);
 
-            final String statement = "SELECT * FROM " + tableName + " WHERE uuid='" + uuid.toString() + "'";
+        plugin.getLoggerManager().logMessage("Fetched fresh (MySQL) " + timeType.name() + " of " + uuid.toString() +
+                ": " + time + " minutes");
 
-            Optional<ResultSet> optionalResultSet = this.mysqlLibrary.executeQuery(statement);
+        plugin.debugMessage("("
+                + (Thread.currentThread().getName().contains("Server thread") ? "not async" : "async") +
+                ") Obtained fresh global time (" + timeType + ") of '" + uuid.toString() + "'" +
+                " with value " + time);
 
-            if (!optionalResultSet.isPresent()) return time;
+        return time;
+    }
 
-            try (ResultSet rs = optionalResultSet.get()) {
+    /**
+     * Get fresh time from the database for multiple players with a single query and cache it. Nothing is cached if
+     * the query fails, so a failed query never replaces the time of a player by zero.
+     *
+     * @param timeType Type of time to get
+     * @param uuids    UUIDs of the players
+     * @return time of each player (zero if the player is not stored), or nothing if the database could not be
+     * queried.
+     */
+    private Optional<Map<UUID, Integer>> getFreshPlayerTimes(TimeType timeType, List<UUID> uuids) {
+        // Make sure no buffered change is written between the query and caching its result.
+        cacheLock.readLock().lock();
 
-                if (rs.next()) {
-                    time = rs.getInt(2);
-                    rs.close();
-                }
+        try {
+            Optional<Map<UUID, Integer>> storedTimes = schema.getTimes(timeType, uuids);
 
-            } catch (SQLException e) {
-                System.out.println("SQLException: " + e.getMessage());
-                System.out.println("SQLState: " + e.getSQLState());
-                System.out.println("VendorError: " + e.getErrorCode());
-            }
+            if (!storedTimes.isPresent()) return Optional.empty();
 
-            plugin.getLoggerManager().logMessage("Fetched fresh (MySQL) " + timeType.name() + " of " + uuid.toString() +
-                    ": " + time + " minutes");
+            Map<UUID, Integer> freshTimes = new HashMap<>();
 
-            // Cache value so we don't grab it again.
-            cacheManager.registerCachedTime(timeType, uuid, time);
+            for (UUID uuid : uuids) {
+                int time = storedTimes.get().getOrDefault(uuid, 0);
 
-            plugin.debugMessage("("
-                    + (Thread.currentThread().getName().contains("Server thread") ? "not async" : "async") +
-                    ") Obtained fresh global time (" + timeType + ") of '" + uuid.toString() + "'" +
-                    " with value " + time);
+                cacheManager.registerCachedTime(timeType, uuid, time);
+                freshTimes.put(uuid, time);
+            }
 
-            return time;
-        });
+            return Optional.of(freshTimes);
+        } finally {
+            cacheLock.readLock().unlock();
+        }
     }
 
     /**
-     * Disconnect from database manually.
+     * Disconnect from database manually. The periodic tasks of this provider are stopped and buffered changes are
+     * written before the connection is closed. If the database is down, it is checked once more. Changes that still
+     * cannot be written are saved to a file and restored when the provider is initialised again. The storage
+     * executor is not shut down here, as it is shared by all storage providers (see
+     * {@link me.armar.plugins.autorank.storage.PlayTimeStorageManager#shutdown()}).
      */
-    private void disconnectDatabase() {
-        executor.shutdown();
+    public void disconnectDatabase() {
+        plugin.debugMessage(ChatColor.RED + "Disconnecting from MySQL database...");
 
-        try {
-            plugin.debugMessage(ChatColor.RED + "Awaiting termination of MySQL thread...");
-            executor.awaitTermination(30, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            plugin.getLogger().warning("Failed to await termination of thread pool. Interrupted.");
+        for (ScheduledFuture<?> timer : timers) {
+            timer.cancel(false);
+        }
+
+        timers.clear();
+
+        // Try to reach the database once more if it is down, so the buffered changes can still be written.
+        if (mysqlLibrary != null && !mysqlLibrary.isConnected() && writeBuffer.getQueueDepth() > 0) {
+            mysqlLibrary.checkHealth();
+        }
+
+        // Write changes that are still buffered.
+        this.flushWriteBuffer();
+
+        int pendingWrites = writeBuffer.getQueueDepth();
+
+        if (pendingWrites > 0) {
+            if (writeBuffer.save(pendingWritesFile)) {
+                plugin.getLogger().warning("Could not write " + pendingWrites + " changes to the MySQL database. " +
+                        "They are saved to " + pendingWritesFile.getName() + " and written when Autorank starts.");
+            } else {
+                plugin.getLogger().severe("Could not write " + pendingWrites + " changes to the MySQL database " +
+                        "and could not save them to a file. The play time of these changes is lost.");
+            }
         }
 
         if (mysqlLibrary != null) {
@@ -507,161 +679,103 @@ public class MySQLStorageProvider extends PlayTimeStorageProvider {
     public void updateFromOldTables() {
 
         // Generate a task so we run this async.
-        this.plugin.getServer().getScheduler().runTaskAsynchronously(plugin, new Runnable() {
+        executor.execute(new Runnable() {
             @Override
             public void run() {
                 List<String> adjustedTables = new ArrayList<>();
 
-                String statement = "SHOW TABLES LIKE 'null%'";
-
-                Optional<ResultSet> rs = mysqlLibrary.executeQuery(statement);
-
                 plugin.debugMessage("Looking for old data in MySQL database that might be useful.");
 
-                // Nothing to do.
-                if (!rs.isPresent()) {
-                    return;
-                }
-
+                // Read the names of the tables first, so we don't need two connections at once.
+                List<String> foundTableNames = mysqlLibrary.queryForList("SHOW TABLES LIKE 'null%'",
+                        set -> set.getString(1));
 
-                try {
-                    while (rs.get().next()) {
-                        ResultSet set = rs.get();
+                for (String foundTableName : foundTableNames) {
 
-                        String foundTableName = null;
+                    if (foundTableName == null) continue;
 
-                        try {
-                            foundTableName = set.getString(1);
-                        } catch (SQLException e) {
-                            // Could not read the first column
-                            continue;
-                        }
+                    plugin.debugMessage("Found table " + foundTableName + " that might have old data.");
 
-                        if (foundTableName == null) continue;
+                    String readOldTableStatement = "SELECT * FROM `" + foundTableName + "`";
 
-                        plugin.debugMessage("Found table " + foundTableName + " that might have old data.");
+                    // Check for the IMPORTED keyword. If that's present, we now Autorank already looked at it.
+                    if (foundTableName.toLowerCase(Locale.ROOT).contains("imported")) continue;
 
-                        Optional<ResultSet> innerResult;
+                    // Check for the BACKUP keyword. If that's present, we know it's a backup database.
+                    if (foundTableName.toLowerCase(Locale.ROOT).contains("backup")) continue;
 
-                        String readOldTableStatement = "SELECT * FROM `" + foundTableName + "`";
+                    // We found a table with old time data in it.
+                    // We receive the data and add it to the player's time.
+                    if (!foundTableName.equalsIgnoreCase("nulldailyTime") && !foundTableName.equalsIgnoreCase(
+                            "nullweeklyTime")
+                            && !foundTableName.equalsIgnoreCase("nullmonthlyTime") && !foundTableName.equalsIgnoreCase("nulltotalTime")) {
+                        plugin.debugMessage("Skipping table " + foundTableName + ".");
+                        continue;
+                    }
 
-                        // Data from the old table
-                        ResultSet oldTableData = null;
+                    plugin.debugMessage("Loading old data of " + foundTableName);
 
-                        // Check for the IMPORTED keyword. If that's present, we now Autorank already looked at it.
-                        if (foundTableName.toLowerCase(Locale.ROOT).contains("imported")) continue;
+                    TimeType timeType;
 
-                        // Check for the BACKUP keyword. If that's present, we know it's a backup database.
-                        if (foundTableName.toLowerCase(Locale.ROOT).contains("backup")) continue;
+                    // Add the data to the player, based on the name of the table.
+                    if (foundTableName.toLowerCase(Locale.ROOT).contains("daily")) {
+                        timeType = TimeType.DAILY_TIME;
+                    } else if (foundTableName.toLowerCase(Locale.ROOT).contains("weekly")) {
+                        timeType = TimeType.WEEKLY_TIME;
+                    } else if (foundTableName.toLowerCase(Locale.ROOT).contains("monthly")) {
+                        timeType = TimeType.MONTHLY_TIME;
+                    } else {
+                        timeType = TimeType.TOTAL_TIME;
+                    }
 
-                        // We found a table with old time data in it.
-                        // We receive the data and add it to the player's time.
-                        if (foundTableName.equalsIgnoreCase("nulldailyTime") || foundTableName.equalsIgnoreCase(
-                                "nullweeklyTime")
-                                || foundTableName.equalsIgnoreCase("nullmonthlyTime") || foundTableName.equalsIgnoreCase("nulltotalTime")) {
+                    int[] count = {0};
 
-                            innerResult = mysqlLibrary.executeQuery(readOldTableStatement);
+                    // Loop over all the old data rows and read their times
+                    boolean readTable = mysqlLibrary.query(readOldTableStatement, oldTableData -> {
+                        // Get the uuid of this row
+                        String uuidString = oldTableData.getString("uuid");
 
-                            plugin.debugMessage("Loading old data of " + foundTableName);
+                        // Check if this is indeed a valid string
+                        if (uuidString == null) return;
 
-                            // We couldn't receive any data.
-                            if (!innerResult.isPresent()) continue;
+                        UUID uuid;
 
-                            oldTableData = innerResult.get();
-                        } else {
-                            plugin.debugMessage("Skipping table " + foundTableName + ".");
+                        try {
+                            // Try loading UUID
+                            uuid = UUID.fromString(uuidString);
+                        } catch (IllegalArgumentException e) {
+                            // Skip this name since it isn't a valid UUID.
+                            return;
                         }
 
-                        if (oldTableData == null) continue;
-
-                        // We are going to read this table, so we better mark it for adjustment.
-                        adjustedTables.add(foundTableName);
-
-                        int count = 0;
-
-                        // Loop over all the old data rows and read their times
-                        while (oldTableData.next()) {
-                            // Get the uuid of this row
-                            String uuidString = null;
-
-                            try {
-                                uuidString = oldTableData.getString("uuid");
-                            } catch (SQLException e) {
-                                // Could not read the data from this column.
-                                continue;
-                            }
-
-                            // Check if this is indeed a valid string
-                            if (uuidString == null) continue;
-
-                            UUID uuid;
-
-                            try {
-                                // Try loading UUID
-                                uuid = UUID.fromString(uuidString);
-                            } catch (IllegalArgumentException e) {
-                                // Skip this name since it isn't a valid UUID.
-                                continue;
-                            }
-
-                            int minutes = 0;
-
-                            try {
-                                // Read the minutes from this player
-                                minutes = oldTableData.getInt("time");
-                            } catch (SQLException e) {
-                                // Could not read the data from this column.
-                                continue;
-                            }
-
-                            count++;
-
-                            // Add the data to the player, based on the name of the table.
-                            if (foundTableName.toLowerCase(Locale.ROOT).contains("daily")) {
-                                plugin.getPlayTimeManager().addGlobalPlayTime(TimeType.DAILY_TIME, uuid, minutes);
-                                plugin.getPlayTimeManager().addLocalPlayTime(TimeType.DAILY_TIME, uuid, minutes);
-                            } else if (foundTableName.toLowerCase(Locale.ROOT).contains("weekly")) {
-                                plugin.getPlayTimeManager().addGlobalPlayTime(TimeType.WEEKLY_TIME, uuid, minutes);
-                                plugin.getPlayTimeManager().addLocalPlayTime(TimeType.WEEKLY_TIME, uuid, minutes);
-                            } else if (foundTableName.toLowerCase(Locale.ROOT).contains("monthly")) {
-                                plugin.getPlayTimeManager().addGlobalPlayTime(TimeType.MONTHLY_TIME, uuid, minutes);
-                                plugin.getPlayTimeManager().addLocalPlayTime(TimeType.MONTHLY_TIME, uuid, minutes);
-                            } else {
-                                plugin.getPlayTimeManager().addGlobalPlayTime(TimeType.TOTAL_TIME, uuid, minutes);
-                                plugin.getPlayTimeManager().addLocalPlayTime(TimeType.TOTAL_TIME, uuid, minutes);
-                            }
+                        // Read the minutes from this player
+                        int minutes = oldTableData.getInt("time");
 
-                        }
+                        count[0]++;
 
-                        plugin.debugMessage("Restored " + count + " rows of player time for table " + foundTableName);
-                        plugin.getLoggerManager().logMessage("Restored " + count + " rows of player time for table " + foundTableName);
+                        plugin.getPlayTimeManager().addGlobalPlayTime(timeType, uuid, minutes);
+                        plugin.getPlayTimeManager().addLocalPlayTime(timeType, uuid, minutes);
+                    });
 
-                        // Close resultset after using it.
-                        oldTableData.close();
-                    }
+                    // We couldn't receive any data.
+                    if (!readTable) continue;
 
+                    // We have read this table, so we better mark it for adjustment.
+                    adjustedTables.add(foundTableName);
 
-                    // After all tables have been adjusted, rename them.
-                    for (String tableName : adjustedTables) {
-                        plugin.debugMessage("Renaming table " + tableName + " to " + "IMPORTED_" + tableName + " so " +
-                                "it's not imported again.");
-                        plugin.getLoggerManager().logMessage("Renaming table " + tableName + " to " + "IMPORTED_" + tableName +
-                                " so it's not imported again.");
+                    plugin.debugMessage("Restored " + count[0] + " rows of player time for table " + foundTableName);
+                    plugin.getLoggerManager().logMessage("Restored " + count[0] + " rows of player time for table " + foundTableName);
+                }
 
+                // After all tables have been adjusted, rename them.
+                for (String tableName : adjustedTables) {
+                    plugin.debugMessage("Renaming table " + tableName + " to " + "IMPORTED_" + tableName + " so " +
+                            "it's not imported again.");
+                    plugin.getLoggerManager().logMessage("Renaming table " + tableName + " to " + "IMPORTED_" + tableName +
+                            " so it's not imported again.");
 
-                        mysqlLibrary.execute("RENAME TABLE " + tableName + " TO " + "IMPORTED_" + tableName);
-                    }
 
-                } catch (final SQLException e) {
-                    System.out.println("SQLException: " + e.getMessage());
-                    System.out.println("SQLState: " + e.getSQLState());
-                    System.out.println("VendorError: " + e.getErrorCode());
-                } finally {
-                    try {
-                        rs.get().close();
-                    } catch (SQLException throwables) {
-                        throwables.printStackTrace();
-                    }
+                    mysqlLibrary.execute("RENAME TABLE " + tableName + " TO " + "IMPORTED_" + tableName);
                 }
 
             }
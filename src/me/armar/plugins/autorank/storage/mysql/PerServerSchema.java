@@ -0,0 +1,257 @@
+package me.armar.plugins.autorank.storage.mysql;
+
+import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.config.SettingsConfig;
+import me.armar.plugins.autorank.storage.TimeType;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This is the schema of Autorank for networks of servers (v3). It has the same columns as the
+ * {@link SingleTableSchema}, but every server has its own row for a player, keyed by the UUID of the player and the
+ * name of the server (see the 'server name' in the Settings.yml). A server only ever adds time to its own rows, so
+ * servers never wait for each other's locks when they store the time of a player that switches between them.
+ * <br>
+ * <br>
+ * The time of a player is the sum of the rows of all servers. The sum is read with a single query, and is cached by
+ * the {@link MySQLStorageProvider} like the time of the other schemas. Setting the time of a player to a value is
+ * the only write that touches the rows of other servers, as their time has to be cleared.
+ * <br>
+ * <br>
+ * The best players can only be found by summing the rows of all players, so the result is kept for
+ * {@link #TOP_PLAYERS_CACHE_TIME} milliseconds and pages of the leaderboard are cut from it. The best players may
+ * therefore be up to a minute behind the stored time.
+ * <br>
+ * <br>
+ * If the table of the {@link SingleTableSchema} exists, its rows are copied once, as the rows of a server named
+ * {@link #MIGRATED_SERVER_NAME}.
+ */
+public class PerServerSchema extends SingleTableSchema {
+
+    // Name of the server that owns the time that was copied from the single table schema.
+    static final String MIGRATED_SERVER_NAME = "#migrated";
+    // Number of milliseconds that the summed time of the best players is reused.
+    private static final long TOP_PLAYERS_CACHE_TIME = TimeUnit.MINUTES.toMillis(1);
+
+    // Best players of each type of time, from the last time they were summed.
+    private final Map<TimeType, TopPlayers> cachedTopPlayers = new ConcurrentHashMap<>();
+
+    private final String serverName;
+
+    public PerServerSchema(Autorank instance, SQLConnection connection, String tablePrefix) {
+        super(instance, connection, tablePrefix, tablePrefix + "playtime_servers");
+
+        this.serverName = instance.getSettingsConfig().getMySQLSetting(SettingsConfig.MySQLSettings.SERVER_NAME);
+    }
+
+    @Override
+    public void createTables() {
+        StringBuilder statement = new StringBuilder("CREATE TABLE IF NOT EXISTS " + tableName + " (uuid BINARY" +
+                "(16) NOT NULL, server VARCHAR(36) NOT NULL, ");
+
+        for (TimeType timeType : COLUMN_ORDER) {
+            statement.append(getTimeColumn(timeType)).append(" INTEGER NOT NULL DEFAULT 0, ");
+
+            if (timeType != TimeType.TOTAL_TIME) {
+                statement.append(getPeriodColumn(timeType)).append(" INTEGER NOT NULL DEFAULT 0, ");
+            }
+        }
+
+        statement.append("modified TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, PRIMARY KEY ( uuid, server ))");
+
+        connection.execute(statement.toString());
+
+        connection.execute("CREATE TABLE IF NOT EXISTS " + migrationTableName + " (source_table VARCHAR(64) NOT " +
+                "NULL, last_uuid VARCHAR(40) NOT NULL, completed BOOLEAN NOT NULL DEFAULT FALSE, PRIMARY KEY ( " +
+                "source_table ))");
+
+        // Migrate in the background, so the storage provider can be used in the meantime.
+        plugin.getPlayTimeStorageManager().getStorageExecutor().execute(this::migrateFromSingleTableSchema);
+    }
+
+    @Override
+    public Optional<Map<UUID, Integer>> getTimes(TimeType timeType, List<UUID> uuids) {
+        Map<UUID, Integer> times = new HashMap<>();
+
+        if (uuids.isEmpty()) return Optional.of(times);
+
+        String placeholders = String.join(",", Collections.nCopies(uuids.size(), "?"));
+
+        final String statement = "SELECT uuid, SUM(" + getTimeColumn(timeType) + ") FROM " + tableName + " WHERE " +
+                getPeriodCondition(timeType) + "uuid IN (" + placeholders + ") GROUP BY uuid";
+
+        Object[] parameters = getParameters(timeType, uuids.stream().map(SingleTableSchema::toBytes).toArray());
+
+        boolean success = connection.query(statement, rs -> times.put(fromBytes(rs.getBytes(1)), rs.getInt(2)),
+                parameters);
+
+        return success ? Optional.of(times) : Optional.empty();
+    }
+
+    @Override
+    public Map<UUID, Integer> getTopPlayers(TimeType timeType, int limit, int offset) {
+        int end = (int) Math.min((long) Math.max(offset, 0) + Math.max(limit, 0), Integer.MAX_VALUE);
+
+        TopPlayers topPlayers = cachedTopPlayers.get(timeType);
+
+        // Sum the time of the best players again if they were not requested this far, or a while ago.
+        if (topPlayers == null || !topPlayers.covers(timeType, end)) {
+            topPlayers = new TopPlayers(timeType, end);
+
+            final String statement = "SELECT uuid, SUM(" + getTimeColumn(timeType) + ") AS time_sum FROM " +
+                    tableName + getStoredPlayersCondition(timeType) + " GROUP BY uuid ORDER BY time_sum DESC LIMIT ?";
+
+            Map<UUID, Integer> players = topPlayers.players;
+
+            if (!connection.query(statement, rs -> players.put(fromBytes(rs.getBytes(1)), rs.getInt(2)),
+                    getParameters(timeType, end))) {
+                return new LinkedHashMap<>();
+            }
+
+            cachedTopPlayers.put(timeType, topPlayers);
+        }
+
+        return topPlayers.getPage(limit, offset);
+    }
+
+    @Override
+    public void resetTime(TimeType timeType) {
+        super.resetTime(timeType);
+
+        cachedTopPlayers.remove(timeType);
+    }
+
+    @Override
+    public List<UUID> getStoredPlayers(TimeType timeType) {
+        List<UUID> uuids = new ArrayList<>();
+
+        // Rows are streamed, so only the UUIDs are kept in memory.
+        connection.query("SELECT DISTINCT uuid FROM " + tableName + getStoredPlayersCondition(timeType),
+                rs -> uuids.add(fromBytes(rs.getBytes(1))), getParameters(timeType));
+
+        return uuids;
+    }
+
+    @Override
+    public int getNumberOfStoredPlayers(TimeType timeType) {
+        return connection.queryForObject("SELECT COUNT(DISTINCT uuid) FROM " + tableName +
+                getStoredPlayersCondition(timeType), rs -> rs.getInt(1), getParameters(timeType)).orElse(0);
+    }
+
+    @Override
+    protected Map<String, List<Object[]>> getWriteBatches(Map<TimeType, Map<UUID, PendingWrite>> pendingWrites) {
+        Map<String, List<Object[]>> batches = super.getWriteBatches(pendingWrites);
+
+        // The time of the player becomes the time of this server, so clear the time of the other servers.
+        for (Map.Entry<TimeType, Map<UUID, PendingWrite>> entry : pendingWrites.entrySet()) {
+            List<Object[]> parameters = new ArrayList<>();
+
+            for (Map.Entry<UUID, PendingWrite> write : new TreeMap<>(entry.getValue()).entrySet()) {
+                if (write.getValue().isAbsolute()) {
+                    parameters.add(new Object[]{toBytes(write.getKey()), serverName});
+                }
+            }
+
+            if (parameters.isEmpty()) continue;
+
+            batches.put("UPDATE " + tableName + " SET " + getTimeColumn(entry.getKey()) + " = 0 WHERE uuid = ? AND " +
+                    "server <> ?", parameters);
+        }
+
+        return batches;
+    }
+
+    @Override
+    protected List<String> getKeyColumns() {
+        return Arrays.asList("uuid", "server");
+    }
+
+    @Override
+    protected List<Object> getKeyParameters(UUID uuid) {
+        return Arrays.asList(toBytes(uuid), serverName);
+    }
+
+    /**
+     * Copy the rows of the table of the {@link SingleTableSchema} to the table of this schema, if that has not been
+     * done yet. Rows that were copied before are left alone, so copying twice (for example, when two servers start
+     * at the same time) does not count any time twice.
+     */
+    private void migrateFromSingleTableSchema() {
+        String sourceTable = SingleTableSchema.getTableName(tablePrefix);
+
+        boolean sourceExists = connection.queryForObject("SELECT COUNT(*) FROM information_schema.tables WHERE " +
+                "table_schema = DATABASE() AND table_name = ?", rs -> rs.getInt(1) > 0, sourceTable).orElse(false);
+
+        if (!sourceExists) return;
+
+        Optional<Boolean> completed = connection.queryForObject("SELECT completed FROM " + migrationTableName +
+                " WHERE source_table = ?", rs -> rs.getBoolean(1), sourceTable);
+
+        if (completed.orElse(false)) return;
+
+        plugin.getLogger().info("Migrating " + sourceTable + " to " + tableName + ".");
+
+        StringBuilder columns = new StringBuilder();
+
+        for (TimeType timeType : COLUMN_ORDER) {
+            columns.append(", ").append(getTimeColumn(timeType));
+
+            if (timeType != TimeType.TOTAL_TIME) {
+                columns.append(", ").append(getPeriodColumn(timeType));
+            }
+        }
+
+        Map<String, List<Object[]>> batches = new LinkedHashMap<>();
+
+        batches.put("INSERT IGNORE INTO " + tableName + " (uuid, server" + columns + ") SELECT uuid, ?" + columns +
+                " FROM " + sourceTable, Collections.singletonList(new Object[]{MIGRATED_SERVER_NAME}));
+        batches.put("INSERT INTO " + migrationTableName + " VALUES (?, '', TRUE) ON DUPLICATE KEY UPDATE " +
+                "completed = TRUE", Collections.singletonList(new Object[]{sourceTable}));
+
+        if (!connection.executeBatches(batches)) {
+            plugin.getLogger().warning("Could not migrate " + sourceTable + ", trying again on the next start.");
+            return;
+        }
+
+        plugin.getLogger().info("Migrated " + sourceTable + " to " + tableName + ". The old table is no longer " +
+                "used and can be removed.");
+    }
+
+    /**
+     * The best players of a type of time, sorted on time (descending).
+     */
+    private static class TopPlayers {
+        private final Map<UUID, Integer> players = new LinkedHashMap<>();
+        private final int requestedPlayers;
+        private final int period;
+        private final long createdAt = System.currentTimeMillis();
+
+        private TopPlayers(TimeType timeType, int requestedPlayers) {
+            this.requestedPlayers = requestedPlayers;
+            this.period = timeType.getCurrentPeriod();
+        }
+
+        /**
+         * Check whether the players up to the given position can be taken from this result.
+         */
+        private boolean covers(TimeType timeType, int end) {
+            if (System.currentTimeMillis() - createdAt >= TOP_PLAYERS_CACHE_TIME) return false;
+
+            if (period != timeType.getCurrentPeriod()) return false;
+
+            // If fewer players than requested were found, there are no more players.
+            return end <= requestedPlayers || players.size() < requestedPlayers;
+        }
+
+        private Map<UUID, Integer> getPage(int limit, int offset) {
+            Map<UUID, Integer> page = new LinkedHashMap<>();
+
+            players.entrySet().stream().skip(Math.max(offset, 0)).limit(Math.max(limit, 0))
+                    .forEach(entry -> page.put(entry.getKey(), entry.getValue()));
+
+            return page;
+        }
+    }
+}
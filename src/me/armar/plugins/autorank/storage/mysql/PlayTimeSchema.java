@@ -0,0 +1,93 @@
+package me.armar.plugins.autorank.storage.mysql;
+
+import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.storage.TimeType;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * This class represents the layout of the tables that the {@link MySQLStorageProvider} stores the time of players
+ * in. The storage provider handles caching and buffering, while the schema translates its requests to queries on
+ * the tables.
+ * <br>
+ * <br>
+ * All methods of a schema contact the database, so they should never be called on the main thread.
+ */
+public abstract class PlayTimeSchema {
+
+    protected final Autorank plugin;
+    protected final SQLConnection connection;
+    protected final String tablePrefix;
+
+    public PlayTimeSchema(Autorank instance, SQLConnection connection, String tablePrefix) {
+        this.plugin = instance;
+        this.connection = connection;
+        this.tablePrefix = tablePrefix;
+    }
+
+    /**
+     * Create the tables of this schema if they do not exist yet.
+     */
+    public abstract void createTables();
+
+    /**
+     * Get the names of all tables that store the time of players, for example to back them up.
+     *
+     * @return names of the tables of this schema.
+     */
+    public abstract List<String> getTableNames();
+
+    /**
+     * Get the time of multiple players with a single query.
+     *
+     * @param timeType Type of time
+     * @param uuids    UUIDs of the players
+     * @return time of each player that is stored, or nothing if the database could not be queried. Players that are
+     * not stored are missing from the result.
+     */
+    public abstract Optional<Map<UUID, Integer>> getTimes(TimeType timeType, List<UUID> uuids);
+
+    /**
+     * Get the players with the most time.
+     *
+     * @param timeType Type of time
+     * @param limit    Maximum number of players to return
+     * @param offset   Number of best players to skip
+     * @return an ordered map of players and their time, sorted on time (descending).
+     */
+    public abstract Map<UUID, Integer> getTopPlayers(TimeType timeType, int limit, int offset);
+
+    /**
+     * Get the players that have time stored for a given type of time.
+     *
+     * @param timeType Type of time
+     * @return UUIDs of the stored players.
+     */
+    public abstract List<UUID> getStoredPlayers(TimeType timeType);
+
+    /**
+     * Get the number of players that have time stored for a given type of time.
+     *
+     * @param timeType Type of time
+     * @return number of stored players.
+     */
+    public abstract int getNumberOfStoredPlayers(TimeType timeType);
+
+    /**
+     * Set the time of all players to zero for a given type of time.
+     *
+     * @param timeType Type of time
+     */
+    public abstract void resetTime(TimeType timeType);
+
+    /**
+     * Write buffered changes to the database, in a single transaction.
+     *
+     * @param pendingWrites Changes per type of time and player
+     * @return true if all changes were written, false if none were.
+     */
+    public abstract boolean writeChanges(Map<TimeType, Map<UUID, PendingWrite>> pendingWrites);
+}
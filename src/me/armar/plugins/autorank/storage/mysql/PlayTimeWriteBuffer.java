@@ -0,0 +1,306 @@
+package me.armar.plugins.autorank.storage.mysql;
+
+import io.reactivex.annotations.NonNull;
+import me.armar.plugins.autorank.storage.TimeType;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class buffers changes to the time of players before they are written to the database by the
+ * {@link MySQLStorageProvider}. Changes for the same player and time type are merged, so a player only needs one
+ * write per time type per flush, regardless of how often their time was changed in the meantime.
+ */
+public class PlayTimeWriteBuffer {
+
+    // Store pending writes for each time type
+    private final Map<TimeType, ConcurrentHashMap<UUID, PendingWrite>> pendingWrites = new EnumMap<>(TimeType.class);
+
+    // Statistics about flushes
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushedWrites = new AtomicLong();
+    private final AtomicLong failedFlushCount = new AtomicLong();
+    private final AtomicLong lastFlushDuration = new AtomicLong();
+    private final AtomicLong maxFlushDuration = new AtomicLong();
+    private final AtomicLong totalFlushDuration = new AtomicLong();
+
+    public PlayTimeWriteBuffer() {
+        for (TimeType timeType : TimeType.values()) {
+            pendingWrites.put(timeType, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Buffer setting the time of a player. This overrides any change that is still pending for the player.
+     *
+     * @param timeType Type of time
+     * @param uuid     UUID of the player
+     * @param time     Time to set
+     */
+    public void setTime(@NonNull TimeType timeType, @NonNull UUID uuid, int time) {
+        pendingWrites.get(timeType).put(uuid, new PendingWrite(true, time));
+    }
+
+    /**
+     * Buffer adding time to the time of a player. This is merged with any change that is still pending for the
+     * player.
+     *
+     * @param timeType  Type of time
+     * @param uuid      UUID of the player
+     * @param timeToAdd Time to add
+     */
+    public void addTime(@NonNull TimeType timeType, @NonNull UUID uuid, int timeToAdd) {
+        pendingWrites.get(timeType).merge(uuid, new PendingWrite(false, timeToAdd), PendingWrite::merge);
+    }
+
+    /**
+     * Apply the change that is pending for a player to a time value that was read from the database (or cache).
+     *
+     * @param timeType Type of time
+     * @param uuid     UUID of the player
+     * @param time     Time as known by the database
+     * @return time of the player after the pending change is applied.
+     */
+    public int applyPendingWrite(@NonNull TimeType timeType, @NonNull UUID uuid, int time) {
+        PendingWrite pendingWrite = pendingWrites.get(timeType).get(uuid);
+
+        if (pendingWrite == null) return time;
+
+        return pendingWrite.applyTo(time);
+    }
+
+    /**
+     * Remove all pending writes from the buffer so they can be written to the database.
+     *
+     * @return pending writes per time type. Time types without pending writes are not included.
+     */
+    public Map<TimeType, Map<UUID, PendingWrite>> drain() {
+        Map<TimeType, Map<UUID, PendingWrite>> drainedWrites = new EnumMap<>(TimeType.class);
+
+        for (Map.Entry<TimeType, ConcurrentHashMap<UUID, PendingWrite>> entry : pendingWrites.entrySet()) {
+            Map<UUID, PendingWrite> writes = new ConcurrentHashMap<>();
+
+            // Remove the writes one by one, so writes that are buffered in the meantime are not lost.
+            for (UUID uuid : entry.getValue().keySet()) {
+                PendingWrite pendingWrite = entry.getValue().remove(uuid);
+
+                if (pendingWrite != null) {
+                    writes.put(uuid, pendingWrite);
+                }
+            }
+
+            if (!writes.isEmpty()) {
+                drainedWrites.put(entry.getKey(), writes);
+            }
+        }
+
+        return drainedWrites;
+    }
+
+    /**
+     * Put writes that could not be written to the database back into the buffer. Changes that were buffered after
+     * the writes were drained are applied on top of them.
+     *
+     * @param writes Writes that were obtained by {@link #drain()}.
+     */
+    public void requeue(@NonNull Map<TimeType, Map<UUID, PendingWrite>> writes) {
+        failedFlushCount.incrementAndGet();
+
+        for (Map.Entry<TimeType, Map<UUID, PendingWrite>> entry : writes.entrySet()) {
+            Map<UUID, PendingWrite> buffer = pendingWrites.get(entry.getKey());
+
+            for (Map.Entry<UUID, PendingWrite> write : entry.getValue().entrySet()) {
+                buffer.merge(write.getKey(), write.getValue(), (newer, older) -> older.merge(newer));
+            }
+        }
+    }
+
+    /**
+     * Save all pending writes to a file, so they are not lost when they cannot be written to the database before
+     * the server stops. Every line of the file holds the time type, the UUID of the player, whether the time is set
+     * or added, and the value. The writes stay in the buffer.
+     *
+     * @param file File to save the pending writes to
+     * @return true if the writes were saved, false otherwise.
+     */
+    public boolean save(@NonNull File file) {
+        List<String> lines = new ArrayList<>();
+
+        for (Map.Entry<TimeType, ConcurrentHashMap<UUID, PendingWrite>> entry : pendingWrites.entrySet()) {
+            for (Map.Entry<UUID, PendingWrite> write : entry.getValue().entrySet()) {
+                lines.add(entry.getKey() + " " + write.getKey() + " " + (write.getValue().isAbsolute() ? "set" :
+                        "add") + " " + write.getValue().getValue());
+            }
+        }
+
+        try {
+            if (file.getParentFile() != null) {
+                file.getParentFile().mkdirs();
+            }
+
+            Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Put the writes that were saved by {@link #save(File)} back into the buffer and delete the file. Changes that
+     * are already buffered are applied on top of them.
+     *
+     * @param file File that the pending writes were saved to
+     * @return number of writes that were restored.
+     */
+    public int restore(@NonNull File file) {
+        if (!file.exists()) return 0;
+
+        int restored = 0;
+
+        try {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                String[] parts = line.trim().split(" ");
+
+                if (parts.length != 4) continue;
+
+                try {
+                    PendingWrite write = new PendingWrite(parts[2].equals("set"), Integer.parseInt(parts[3]));
+
+                    pendingWrites.get(TimeType.valueOf(parts[0])).merge(UUID.fromString(parts[1]), write,
+                            (newer, older) -> older.merge(newer));
+                    restored++;
+                } catch (IllegalArgumentException e) {
+                    // Skip lines that are not valid.
+                }
+            }
+
+            Files.delete(file.toPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return restored;
+    }
+
+    /**
+     * Record that a flush has completed successfully.
+     *
+     * @param writes   Number of writes that were flushed
+     * @param duration Duration of the flush in nanoseconds
+     */
+    public void recordFlush(int writes, long duration) {
+        flushCount.incrementAndGet();
+        flushedWrites.addAndGet(writes);
+        lastFlushDuration.set(duration);
+        totalFlushDuration.addAndGet(duration);
+        maxFlushDuration.accumulateAndGet(duration, Math::max);
+    }
+
+    /**
+     * Get the number of writes that are waiting to be flushed.
+     *
+     * @return number of pending writes.
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+
+        for (ConcurrentHashMap<UUID, PendingWrite> writes : pendingWrites.values()) {
+            depth += writes.size();
+        }
+
+        return depth;
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    public long getFlushedWrites() {
+        return flushedWrites.get();
+    }
+
+    public long getFailedFlushCount() {
+        return failedFlushCount.get();
+    }
+
+    /**
+     * Get the duration of the last successful flush.
+     *
+     * @return duration in milliseconds.
+     */
+    public double getLastFlushLatency() {
+        return lastFlushDuration.get() / 1_000_000.0;
+    }
+
+    /**
+     * Get the longest duration of a successful flush.
+     *
+     * @return duration in milliseconds.
+     */
+    public double getMaxFlushLatency() {
+        return maxFlushDuration.get() / 1_000_000.0;
+    }
+
+    /**
+     * Get the average duration of a successful flush.
+     *
+     * @return duration in milliseconds.
+     */
+    public double getAverageFlushLatency() {
+        long flushes = flushCount.get();
+
+        if (flushes == 0) return 0;
+
+        return totalFlushDuration.get() / 1_000_000.0 / flushes;
+    }
+}
+
+/**
+ * Represents a change to the time of a player that has not been written to the database yet. A change either sets
+ * the time to an absolute value or adds a value to the current time.
+ */
+class PendingWrite {
+    private final boolean absolute;
+    private final int value;
+
+    PendingWrite(boolean absolute, int value) {
+        this.absolute = absolute;
+        this.value = value;
+    }
+
+    public boolean isAbsolute() {
+        return absolute;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public int applyTo(int time) {
+        return absolute ? value : time + value;
+    }
+
+    /**
+     * Merge this change with a change that happened after it.
+     *
+     * @param newer Change that happened after this change.
+     * @return a single change that has the same effect as both changes.
+     */
+    public PendingWrite merge(PendingWrite newer) {
+        if (newer.absolute) {
+            return newer;
+        }
+
+        return new PendingWrite(absolute, value + newer.value);
+    }
+}
@@ -8,23 +8,48 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetProvider;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
  * This class is used to create a connection between the MySQL database and
  * Autorank.
+ * <br>
+ * <br>
+ * Queries should be run with {@link #query(String, RowConsumer, Object...)} and its variants. These bind the given
+ * parameters to a prepared statement and read the rows of the result one by one, after which the connection is
+ * returned to the pool.
+ * <br>
+ * <br>
+ * Whether the database can be reached is tracked by a {@link CircuitBreaker}. While the database is down, queries
+ * fail immediately instead of waiting for a connection. The state is kept up to date by {@link #checkHealth()}.
  *
  * @author Staartvin
  */
 public class SQLConnection {
     private static SQLConnection instance;
 
+    // Number of consecutive failures after which the database is considered to be down.
+    private static final int FAILURE_THRESHOLD = 3;
+    // Number of seconds after which a query is tried again when the database is down.
+    private static final int RETRY_TIME = 30;
+    // Number of seconds to wait for the database to respond to a health check.
+    private static final int HEALTH_CHECK_TIMEOUT = 2;
+
     private final String database;
     private final String hostname;
     private final String password;
     private final String username;
     private final String useSSL;
+    private final int fetchSize;
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(FAILURE_THRESHOLD, RETRY_TIME);
 
     private HikariDataSource dataSource = null;
 
@@ -36,13 +61,15 @@ public class SQLConnection {
      * @param password Password
      * @param database Database
      * @param useSSL useSSL
+     * @param fetchSize Number of rows to read from the database at a time
      */
-    private SQLConnection(final String hostname, final String username, final String password, final String database, final String useSSL) {
+    private SQLConnection(final String hostname, final String username, final String password, final String database, final String useSSL, final int fetchSize) {
         this.hostname = hostname;
         this.username = username;
         this.password = password;
         this.database = database;
         this.useSSL = useSSL;
+        this.fetchSize = fetchSize;
     }
 
     /**
@@ -57,8 +84,9 @@ public class SQLConnection {
             String password = configHandler.getMySQLSetting(SettingsConfig.MySQLSettings.PASSWORD);
             String database = configHandler.getMySQLSetting(SettingsConfig.MySQLSettings.DATABASE);
             String useSSL   = configHandler.getMySQLSetting(SettingsConfig.MySQLSettings.USESSL);
+            int fetchSize   = configHandler.getMySQLFetchSize();
 
-            instance = new SQLConnection(hostname, username, password, database, useSSL);
+            instance = new SQLConnection(hostname, username, password, database, useSSL, fetchSize);
         }
 
         return instance;
@@ -79,7 +107,12 @@ public class SQLConnection {
      *
      * @return true if connection was successfully set up.
      */
-    public boolean connect() {
+    public synchronized boolean connect() {
+        // The connection is shared, so don't open a second pool if it is already open.
+        if (dataSource != null && !dataSource.isClosed()) {
+            return this.checkHealth();
+        }
+
         HikariConfig config = new HikariConfig();
 
         config.setPoolName("autorank-hikari");
@@ -92,6 +125,8 @@ public class SQLConnection {
         config.addDataSourceProperty("prepStmtCacheSize", "250");
         config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
         config.addDataSourceProperty("useServerPrepStmts", "true");
+        // Read large results in chunks of the fetch size, instead of all at once.
+        config.addDataSourceProperty("useCursorFetch", "true");
         config.addDataSourceProperty("rewriteBatchedStatements", "true");
         config.addDataSourceProperty("maintainTimeStats", "false");
         config.addDataSourceProperty("autoReconnect", "true");
@@ -107,7 +142,7 @@ public class SQLConnection {
         try {
             this.dataSource = new HikariDataSource(config);
 
-            return isConnected();
+            return this.checkHealth();
         } catch (Exception e) {
             return false;
         }
@@ -123,15 +158,18 @@ public class SQLConnection {
 
         PreparedStatement stmt = null;
 
+        Optional<Connection> optionalConnection = this.getConnection();
+
         // Do not run a query when we have no connection.
-        if (!isConnected()) return;
+        if (!optionalConnection.isPresent()) return;
 
-        try (Connection connection = this.getConnection().get()) {
+        try (Connection connection = optionalConnection.get()) {
 
             stmt = connection.prepareStatement(sql);
             stmt.executeUpdate();
 
         } catch (final SQLException ex) {
+            this.recordException(ex);
             System.out.println("SQLDataStorage.execute");
             System.out.println("SQLException: " + ex.getMessage());
             System.out.println("SQLState: " + ex.getSQLState());
@@ -156,28 +194,266 @@ public class SQLConnection {
     }
 
     /**
-     * Execute a query and returns a ResultSet. Query cannot be null.
+     * Execute parameterised statements as JDBC batches, using a single connection and transaction. Each statement is
+     * executed once for every array of parameters that is given for it. If any of the statements fails, the whole
+     * transaction is rolled back.
+     *
+     * @param batches Statements to execute, mapped to the parameters of each execution.
+     * @return true if all statements were executed, false otherwise.
+     */
+    public boolean executeBatches(Map<String, List<Object[]>> batches) {
+
+        Optional<Connection> optionalConnection = this.getConnection();
+
+        // Do not run a query when we have no connection.
+        if (!optionalConnection.isPresent()) return false;
+
+        try (Connection connection = optionalConnection.get()) {
+
+            connection.setAutoCommit(false);
+
+            try {
+                for (Map.Entry<String, List<Object[]>> batch : batches.entrySet()) {
+                    if (batch.getValue().isEmpty()) continue;
+
+                    try (PreparedStatement stmt = connection.prepareStatement(batch.getKey())) {
+                        for (Object[] parameters : batch.getValue()) {
+                            setParameters(stmt, parameters);
+
+                            stmt.addBatch();
+                        }
+
+                        stmt.executeBatch();
+                    }
+                }
+
+                connection.commit();
+            } catch (final SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+
+            return true;
+        } catch (final SQLException ex) {
+            this.recordException(ex);
+            System.out.println("SQLDataStorage.executeBatches");
+            System.out.println("SQLException: " + ex.getMessage());
+            System.out.println("SQLState: " + ex.getSQLState());
+            System.out.println("VendorError: " + ex.getErrorCode());
+        }
+
+        return false;
+    }
+
+    /**
+     * Run a query and pass every row of the result to a consumer. The rows are read from the database in chunks of
+     * the configured fetch size, so large results do not have to fit in memory. The connection, statement and
+     * result set are closed after the last row has been consumed.
+     *
+     * @param sql        Query to execute, with a question mark for every parameter
+     * @param consumer   Consumer that is called for every row of the result
+     * @param parameters Parameters to bind to the query, in order
+     * @return true if the query was executed, false if no connection could be made or the query failed.
+     */
+    public boolean query(final String sql, final RowConsumer consumer, final Object... parameters) {
+
+        Optional<Connection> optionalConnection = this.getConnection();
+
+        // Do not run a query when we have no connection.
+        if (!optionalConnection.isPresent()) return false;
+
+        try (Connection connection = optionalConnection.get();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+
+            setParameters(stmt, parameters);
+            stmt.setFetchSize(fetchSize);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(rs);
+                }
+            }
+
+            return true;
+        } catch (final SQLException ex) {
+            this.recordException(ex);
+            System.out.println("SQLDataStorage.query");
+            System.out.println("SQLException: " + ex.getMessage());
+            System.out.println("SQLState: " + ex.getSQLState());
+            System.out.println("VendorError: " + ex.getErrorCode());
+        }
+
+        return false;
+    }
+
+    /**
+     * Run a query and map every row of the result to an object.
+     *
+     * @param sql        Query to execute, with a question mark for every parameter
+     * @param mapper     Mapper that converts a row to an object
+     * @param parameters Parameters to bind to the query, in order
+     * @return the mapped rows, or an empty list if the query could not be executed.
+     */
+    public <T> List<T> queryForList(final String sql, final RowMapper<T> mapper, final Object... parameters) {
+        List<T> results = new ArrayList<>();
+
+        if (!this.query(sql, rs -> results.add(mapper.mapRow(rs)), parameters)) {
+            results.clear();
+        }
+
+        return results;
+    }
+
+    /**
+     * Run a query and map the first row of the result to an object. Other rows are ignored.
+     *
+     * @param sql        Query to execute, with a question mark for every parameter
+     * @param mapper     Mapper that converts a row to an object
+     * @param parameters Parameters to bind to the query, in order
+     * @return the mapped first row, or nothing if there were no rows or the query could not be executed.
+     */
+    public <T> Optional<T> queryForObject(final String sql, final RowMapper<T> mapper, final Object... parameters) {
+
+        Optional<Connection> optionalConnection = this.getConnection();
+
+        // Do not run a query when we have no connection.
+        if (!optionalConnection.isPresent()) return Optional.empty();
+
+        try (Connection connection = optionalConnection.get();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+
+            setParameters(stmt, parameters);
+            stmt.setMaxRows(1);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return Optional.ofNullable(mapper.mapRow(rs));
+                }
+            }
+
+        } catch (final SQLException ex) {
+            this.recordException(ex);
+            System.out.println("SQLDataStorage.queryForObject");
+            System.out.println("SQLException: " + ex.getMessage());
+            System.out.println("SQLState: " + ex.getSQLState());
+            System.out.println("VendorError: " + ex.getErrorCode());
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * Run a task while holding a named lock of the database (see GET_LOCK of MySQL). The lock is shared by all
+     * servers that use the database, so only one of them runs a task with the same lock at a time. The lock is held
+     * on a separate connection, so the task can still run its own queries.
+     *
+     * @param name    Name of the lock
+     * @param timeout Number of seconds to wait for the lock
+     * @param task    Task to run while holding the lock
+     * @return true if the task was run, false if the lock could not be obtained.
+     */
+    public boolean runWithLock(final String name, final int timeout, final Runnable task) {
+
+        Optional<Connection> optionalConnection = this.getConnection();
+
+        // Do not run the task when we have no connection.
+        if (!optionalConnection.isPresent()) return false;
+
+        try (Connection connection = optionalConnection.get()) {
+
+            try (PreparedStatement stmt = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+                setParameters(stmt, new Object[]{name, timeout});
+
+                try (ResultSet rs = stmt.executeQuery()) {
+                    // The result is 0 on a timeout and NULL on an error.
+                    if (!rs.next() || rs.getInt(1) != 1) return false;
+                }
+            }
+
+            try {
+                task.run();
+            } finally {
+                try (PreparedStatement stmt = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+                    setParameters(stmt, new Object[]{name});
+                    stmt.executeQuery().close();
+                }
+            }
+
+            return true;
+        } catch (final SQLException ex) {
+            this.recordException(ex);
+            System.out.println("SQLDataStorage.runWithLock");
+            System.out.println("SQLException: " + ex.getMessage());
+            System.out.println("SQLState: " + ex.getSQLState());
+            System.out.println("VendorError: " + ex.getErrorCode());
+        }
+
+        return false;
+    }
+
+    /**
+     * Execute a statement that does not return rows, such as an insert, update or delete.
+     *
+     * @param sql        Statement to execute, with a question mark for every parameter
+     * @param parameters Parameters to bind to the statement, in order
+     * @return number of rows that were changed, or -1 if the statement could not be executed.
+     */
+    public int update(final String sql, final Object... parameters) {
+
+        Optional<Connection> optionalConnection = this.getConnection();
+
+        // Do not run a query when we have no connection.
+        if (!optionalConnection.isPresent()) return -1;
+
+        try (Connection connection = optionalConnection.get();
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+
+            setParameters(stmt, parameters);
+
+            return stmt.executeUpdate();
+        } catch (final SQLException ex) {
+            this.recordException(ex);
+            System.out.println("SQLDataStorage.update");
+            System.out.println("SQLException: " + ex.getMessage());
+            System.out.println("SQLState: " + ex.getSQLState());
+            System.out.println("VendorError: " + ex.getErrorCode());
+        }
+
+        return -1;
+    }
+
+    /**
+     * Execute a query and returns a ResultSet. Query cannot be null. The complete result is read into memory, so
+     * the connection can be closed before the result is returned.
      *
      * @param sql Query to execute
      * @return ResultSet if successfully performed, empty if no connection could be made or query did not perform
      * correctly.
+     * @deprecated Use {@link #query(String, RowConsumer, Object...)} instead, which does not read the complete
+     * result into memory and supports parameters.
      */
+    @Deprecated
     public Optional<ResultSet> executeQuery(final String sql) {
-        ResultSet rs = null;
-        PreparedStatement stmt = null;
 
-        if (!isConnected()) {
+        Optional<Connection> optionalConnection = this.getConnection();
+
+        if (!optionalConnection.isPresent()) {
             return Optional.empty();
         }
 
-        try (Connection connection = this.getConnection().get()) {
+        try (Connection connection = optionalConnection.get();
+             PreparedStatement stmt = connection.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
 
-            stmt = connection.prepareStatement(sql);
-            rs = stmt.executeQuery();
+            CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+            rowSet.populate(rs);
 
-            return Optional.of(rs);
+            return Optional.of(rowSet);
 
         } catch (final SQLException ex) {
+            this.recordException(ex);
             System.out.println("SQLDataStorage.execute");
             System.out.println("SQLException: " + ex.getMessage());
             System.out.println("SQLState: " + ex.getSQLState());
@@ -199,54 +475,92 @@ public class SQLConnection {
 
     /**
      * Get the connection to be used to execute queries.
-     * Note that this method will not return a connection when it's not valid. Please make sure to check before using
-     * the connection.
+     * Note that this method will not return a connection when the database is down. Please make sure to check
+     * before using the connection.
      *
      * @return Connection object if there is a connection, or nothing if there is no connection.
      */
     public Optional<Connection> getConnection() {
 
+        if (dataSource == null || dataSource.isClosed()) return Optional.empty();
+
+        // Fail immediately when the database is known to be down.
+        if (!circuitBreaker.allowRequest()) return Optional.empty();
+
         try {
+            // The pool validates connections before it hands them out.
             Connection connection = dataSource.getConnection();
 
-            if (connection == null) return Optional.empty();
+            circuitBreaker.recordSuccess();
 
-            if (connection.isValid(5)) {
-                return Optional.of(connection);
-            } else {
-                connection.close();
-                return Optional.empty();
-            }
+            return Optional.of(connection);
         } catch (SQLException throwables) {
-            throwables.printStackTrace();
+            circuitBreaker.recordFailure();
+            System.out.println("SQLDataStorage.getConnection");
+            System.out.println("SQLException: " + throwables.getMessage());
             return Optional.empty();
         }
     }
 
     /**
-     * Check whether a connection is made to the database.
+     * Check whether a connection is made to the database. This does not contact the database, but uses the result
+     * of the last health check and queries.
      *
      * @return true if the connection is made and valid, false otherwise.
      */
     public boolean isConnected() {
+        return dataSource != null && !dataSource.isClosed() && circuitBreaker.getState() != CircuitBreaker.State.OPEN;
+    }
 
-        // Obtain connection
-        Optional<Connection> connection = getConnection();
+    /**
+     * Check whether the database can be reached and update the state of the circuit breaker. This should be called
+     * periodically, and never on the main thread.
+     *
+     * @return true if the database could be reached, false otherwise.
+     */
+    public boolean checkHealth() {
+        if (dataSource == null || dataSource.isClosed()) return false;
+
+        // Bypass the circuit breaker, so the database is also checked while it is down.
+        try (Connection connection = dataSource.getConnection()) {
+            if (connection.isValid(HEALTH_CHECK_TIMEOUT)) {
+                circuitBreaker.recordSuccess();
+                return true;
+            }
+        } catch (SQLException e) {
+            // The database could not be reached.
+        }
 
-        // Check if it is valid
-        boolean isValid = connection.isPresent();
+        circuitBreaker.recordFailure();
+        return false;
+    }
 
-        // Close connection if it is present
-        connection.ifPresent(c -> {
-            try {
-                c.close();
-            } catch (SQLException throwables) {
-                throwables.printStackTrace();
-            }
-        });
+    /**
+     * Get the circuit breaker that tracks whether the database can be reached.
+     *
+     * @return circuit breaker of this connection.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Count an exception as a failure of the database if it was caused by the connection, rather than by the query.
+     *
+     * @param ex Exception that was thrown
+     */
+    private void recordException(SQLException ex) {
+        String sqlState = ex.getSQLState();
+
+        if (ex instanceof SQLTransientConnectionException || (sqlState != null && sqlState.startsWith("08"))) {
+            circuitBreaker.recordFailure();
+        }
+    }
 
-        // Return whether we retrieved a connection.
-        return isValid;
+    private void setParameters(PreparedStatement stmt, Object[] parameters) throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            stmt.setObject(i + 1, parameters[i]);
+        }
     }
 
     public void close(Connection conn, PreparedStatement ps, ResultSet res) {
@@ -264,4 +578,20 @@ public class SQLConnection {
         }
     }
 
-}
+    /**
+     * Maps a row of a result to an object.
+     */
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        T mapRow(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Consumes a row of a result. The result set must not be advanced by the consumer.
+     */
+    @FunctionalInterface
+    public interface RowConsumer {
+        void accept(ResultSet rs) throws SQLException;
+    }
+
+}
\ No newline at end of file
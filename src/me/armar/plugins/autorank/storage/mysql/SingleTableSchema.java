@@ -0,0 +1,454 @@
+package me.armar.plugins.autorank.storage.mysql;
+
+import me.armar.plugins.autorank.Autorank;
+import me.armar.plugins.autorank.storage.TimeType;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * This is the compact schema of Autorank (v2). All time of a player is stored in a single row of a single table,
+ * keyed by the UUID of the player as 16 bytes. Every type of time has its own column, and the daily, weekly and
+ * monthly time are stored together with the period they were last written in (see
+ * {@link TimeType#getPeriod(java.time.LocalDate)}). Time of an earlier period is read as zero and replaced by the
+ * first write in the new period. Adding time to all types of time of a player is a single upsert.
+ * <br>
+ * <br>
+ * If the tables of the {@link MultiTableSchema} exist, their rows are copied to the table of this schema in the
+ * background. The migration runs in chunks and remembers how far it got, so it can continue after a restart
+ * without counting any row twice. Until it has finished, players that have not been migrated yet may have too
+ * little time.
+ */
+public class SingleTableSchema extends PlayTimeSchema {
+
+    // Number of rows that are migrated per transaction.
+    private static final int MIGRATION_CHUNK_SIZE = 1000;
+    // Lock that is held while migrating, so servers that share the database do not migrate at the same time.
+    private static final String MIGRATION_LOCK = "autorank_migration";
+    // Number of seconds to wait for another server that is migrating.
+    private static final int MIGRATION_LOCK_TIMEOUT = 10;
+
+    // Order of the time columns in statements.
+    static final TimeType[] COLUMN_ORDER = {TimeType.TOTAL_TIME, TimeType.DAILY_TIME, TimeType.WEEKLY_TIME,
+            TimeType.MONTHLY_TIME};
+
+    protected final String tableName;
+    protected final String migrationTableName;
+
+    public SingleTableSchema(Autorank instance, SQLConnection connection, String tablePrefix) {
+        this(instance, connection, tablePrefix, getTableName(tablePrefix));
+    }
+
+    protected SingleTableSchema(Autorank instance, SQLConnection connection, String tablePrefix, String tableName) {
+        super(instance, connection, tablePrefix);
+
+        this.tableName = tableName;
+        this.migrationTableName = tablePrefix + "schema_migration";
+    }
+
+    /**
+     * Get the name of the table that stores the time of players in this schema.
+     *
+     * @param tablePrefix Prefix of the tables
+     * @return name of the table.
+     */
+    public static String getTableName(String tablePrefix) {
+        return tablePrefix + "playtime";
+    }
+
+    @Override
+    public void createTables() {
+        StringBuilder statement = new StringBuilder("CREATE TABLE IF NOT EXISTS " + tableName + " (uuid BINARY" +
+                "(16) NOT NULL, ");
+
+        for (TimeType timeType : COLUMN_ORDER) {
+            statement.append(getTimeColumn(timeType)).append(" INTEGER NOT NULL DEFAULT 0, ");
+
+            if (timeType != TimeType.TOTAL_TIME) {
+                statement.append(getPeriodColumn(timeType)).append(" INTEGER NOT NULL DEFAULT 0, ");
+            }
+        }
+
+        statement.append("modified TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, PRIMARY KEY ( uuid )");
+
+        for (TimeType timeType : COLUMN_ORDER) {
+            statement.append(", INDEX idx_").append(getTimeColumn(timeType)).append(" ( ")
+                    .append(getTimeColumn(timeType)).append(" )");
+        }
+
+        statement.append(")");
+
+        connection.execute(statement.toString());
+
+        connection.execute("CREATE TABLE IF NOT EXISTS " + migrationTableName + " (source_table VARCHAR(64) NOT " +
+                "NULL, last_uuid VARCHAR(40) NOT NULL, completed BOOLEAN NOT NULL DEFAULT FALSE, PRIMARY KEY ( " +
+                "source_table ))");
+
+        // Migrate in the background, so the storage provider can be used in the meantime.
+        plugin.getPlayTimeStorageManager().getStorageExecutor().execute(this::migrateFromMultiTableSchema);
+    }
+
+    @Override
+    public List<String> getTableNames() {
+        return Collections.singletonList(tableName);
+    }
+
+    @Override
+    public Optional<Map<UUID, Integer>> getTimes(TimeType timeType, List<UUID> uuids) {
+        Map<UUID, Integer> times = new HashMap<>();
+
+        if (uuids.isEmpty()) return Optional.of(times);
+
+        String placeholders = String.join(",", Collections.nCopies(uuids.size(), "?"));
+
+        final String statement = "SELECT uuid, " + getTimeColumn(timeType) + " FROM " + tableName + " WHERE " +
+                getPeriodCondition(timeType) + "uuid IN (" + placeholders + ")";
+
+        Object[] parameters = getParameters(timeType, uuids.stream().map(SingleTableSchema::toBytes).toArray());
+
+        boolean success = connection.query(statement, rs -> times.put(fromBytes(rs.getBytes(1)), rs.getInt(2)),
+                parameters);
+
+        return success ? Optional.of(times) : Optional.empty();
+    }
+
+    @Override
+    public Map<UUID, Integer> getTopPlayers(TimeType timeType, int limit, int offset) {
+        Map<UUID, Integer> topPlayers = new LinkedHashMap<>();
+
+        String column = getTimeColumn(timeType);
+
+        final String statement = "SELECT uuid, " + column + " FROM " + tableName + getStoredPlayersCondition(timeType)
+                + " ORDER BY " + column + " DESC LIMIT ?, ?";
+
+        connection.query(statement, rs -> topPlayers.put(fromBytes(rs.getBytes(1)), rs.getInt(2)),
+                getParameters(timeType, offset, limit));
+
+        return topPlayers;
+    }
+
+    @Override
+    public List<UUID> getStoredPlayers(TimeType timeType) {
+        List<UUID> uuids = new ArrayList<>();
+
+        // Rows are streamed, so only the UUIDs are kept in memory.
+        connection.query("SELECT uuid FROM " + tableName + getStoredPlayersCondition(timeType),
+                rs -> uuids.add(fromBytes(rs.getBytes(1))), getParameters(timeType));
+
+        return uuids;
+    }
+
+    @Override
+    public int getNumberOfStoredPlayers(TimeType timeType) {
+        return connection.queryForObject("SELECT COUNT(*) FROM " + tableName + getStoredPlayersCondition(timeType),
+                rs -> rs.getInt(1), getParameters(timeType)).orElse(0);
+    }
+
+    @Override
+    public void resetTime(TimeType timeType) {
+        if (timeType == TimeType.TOTAL_TIME) {
+            connection.update("UPDATE " + tableName + " SET total_time = 0");
+        } else {
+            connection.update("UPDATE " + tableName + " SET " + getTimeColumn(timeType) + " = 0, " +
+                    getPeriodColumn(timeType) + " = ?", timeType.getCurrentPeriod());
+        }
+    }
+
+    @Override
+    public boolean writeChanges(Map<TimeType, Map<UUID, PendingWrite>> pendingWrites) {
+        return connection.executeBatches(getWriteBatches(pendingWrites));
+    }
+
+    /**
+     * Get the statements that write buffered changes to the table, with the parameters of each statement.
+     *
+     * @param pendingWrites Changes per type of time and player
+     * @return statements that should be executed in a single transaction, in order.
+     */
+    protected Map<String, List<Object[]>> getWriteBatches(Map<TimeType, Map<UUID, PendingWrite>> pendingWrites) {
+        // Collect the changes of each player, so every player needs only one statement.
+        Map<UUID, PendingWrite[]> changesPerPlayer = new TreeMap<>();
+
+        for (Map.Entry<TimeType, Map<UUID, PendingWrite>> entry : pendingWrites.entrySet()) {
+            for (Map.Entry<UUID, PendingWrite> write : entry.getValue().entrySet()) {
+                changesPerPlayer.computeIfAbsent(write.getKey(), uuid -> new PendingWrite[TimeType.values().length])
+                        [entry.getKey().ordinal()] = write.getValue();
+            }
+        }
+
+        StringBuilder columns = new StringBuilder(String.join(", ", getKeyColumns()));
+        StringBuilder values = new StringBuilder(String.join(", ", Collections.nCopies(getKeyColumns().size(),
+                "?")));
+        StringBuilder updates = new StringBuilder();
+
+        for (TimeType timeType : COLUMN_ORDER) {
+            String column = getTimeColumn(timeType);
+
+            columns.append(", ").append(column);
+            values.append(", ?");
+
+            if (timeType == TimeType.TOTAL_TIME) {
+                // An absolute change replaces the current time, other changes are added to it.
+                updates.append(column).append(" = IF(?, 0, ").append(column).append(") + ?, ");
+            } else {
+                // Time of an earlier period is replaced as well. The time is updated before the period, as MySQL
+                // uses the updated value of a column in the assignments after it.
+                updates.append(column).append(" = IF(? OR ").append(getPeriodColumn(timeType)).append(" <> ?, 0, ")
+                        .append(column).append(") + ?, ");
+
+                columns.append(", ").append(getPeriodColumn(timeType));
+                values.append(", ?");
+                updates.append(getPeriodColumn(timeType)).append(" = ?, ");
+            }
+        }
+
+        String statement = "INSERT INTO " + tableName + " (" + columns + ", modified) VALUES (" + values + ", " +
+                "CURRENT_TIMESTAMP) ON DUPLICATE KEY UPDATE " + updates + "modified = CURRENT_TIMESTAMP";
+
+        List<Object[]> parameters = new ArrayList<>();
+
+        // Sorted on UUID, so concurrent flushes from other servers lock rows in the same order.
+        for (Map.Entry<UUID, PendingWrite[]> entry : changesPerPlayer.entrySet()) {
+            List<Object> insertParameters = new ArrayList<>();
+            List<Object> updateParameters = new ArrayList<>();
+
+            insertParameters.addAll(getKeyParameters(entry.getKey()));
+
+            for (TimeType timeType : COLUMN_ORDER) {
+                PendingWrite pendingWrite = entry.getValue()[timeType.ordinal()];
+
+                int value = pendingWrite == null ? 0 : pendingWrite.getValue();
+
+                insertParameters.add(value);
+                updateParameters.add(pendingWrite != null && pendingWrite.isAbsolute());
+
+                if (timeType == TimeType.TOTAL_TIME) {
+                    updateParameters.add(value);
+                } else {
+                    insertParameters.add(timeType.getCurrentPeriod());
+                    updateParameters.add(timeType.getCurrentPeriod());
+                    updateParameters.add(value);
+                    updateParameters.add(timeType.getCurrentPeriod());
+                }
+            }
+
+            insertParameters.addAll(updateParameters);
+
+            parameters.add(insertParameters.toArray());
+        }
+
+        Map<String, List<Object[]>> batches = new LinkedHashMap<>();
+
+        batches.put(statement, parameters);
+
+        return batches;
+    }
+
+    /**
+     * Get the columns that identify a row of the table.
+     */
+    protected List<String> getKeyColumns() {
+        return Collections.singletonList("uuid");
+    }
+
+    /**
+     * Get the values of the columns that identify the row of a player, see {@link #getKeyColumns()}.
+     */
+    protected List<Object> getKeyParameters(UUID uuid) {
+        return Collections.singletonList(toBytes(uuid));
+    }
+
+    /**
+     * Copy the rows of the tables of the {@link MultiTableSchema} to the table of this schema. Tables that have been
+     * migrated completely are skipped. Every chunk is copied in a transaction that also stores the last migrated
+     * UUID, so an interrupted migration continues where it stopped.
+     * <br>
+     * <br>
+     * Time is added to the rows of this schema, so a chunk must never be copied twice. Only one server that shares
+     * the database migrates at a time, and it reads the progress of the migration after it has obtained the lock.
+     */
+    private void migrateFromMultiTableSchema() {
+        if (!connection.runWithLock(MIGRATION_LOCK, MIGRATION_LOCK_TIMEOUT, this::migrateTables)) {
+            plugin.getLogger().warning("Could not migrate the tables of " + tablePrefix + " to " + tableName + ", " +
+                    "another server may be migrating them. Trying again on the next start.");
+        }
+    }
+
+    /**
+     * Copy the tables of the {@link MultiTableSchema} that have not been migrated yet. This should only be called
+     * while holding the migration lock.
+     */
+    private void migrateTables() {
+        for (TimeType timeType : COLUMN_ORDER) {
+            String sourceTable = MultiTableSchema.getTableName(tablePrefix, timeType);
+
+            boolean sourceExists = connection.queryForObject("SELECT COUNT(*) FROM information_schema.tables WHERE " +
+                    "table_schema = DATABASE() AND table_name = ?", rs -> rs.getInt(1) > 0, sourceTable)
+                    .orElse(false);
+
+            if (!sourceExists) continue;
+
+            Optional<Boolean> completed = connection.queryForObject("SELECT completed FROM " + migrationTableName +
+                    " WHERE source_table = ?", rs -> rs.getBoolean(1), sourceTable);
+
+            if (completed.orElse(false)) continue;
+
+            String lastUUID = connection.queryForObject("SELECT last_uuid FROM " + migrationTableName + " WHERE " +
+                    "source_table = ?", rs -> rs.getString(1), sourceTable).orElse("");
+
+            plugin.getLogger().info("Migrating " + sourceTable + " to " + tableName + ".");
+
+            // Only time of the current period is migrated.
+            String sourceTime = "time";
+
+            if (timeType != TimeType.TOTAL_TIME) {
+                if (MultiTableSchema.hasPeriodColumn(connection, sourceTable)) {
+                    sourceTime = "IF(period = " + timeType.getCurrentPeriod() + ", time, 0)";
+                } else if (plugin.getPlayTimeStorageManager().getLegacyPeriod(timeType)
+                        != timeType.getCurrentPeriod()) {
+                    sourceTime = "0";
+                }
+            }
+
+            int migratedRows = 0;
+
+            while (true) {
+                List<Object[]> rows = connection.queryForList("SELECT uuid, " + sourceTime + " FROM " + sourceTable +
+                        " WHERE uuid > ? ORDER BY uuid LIMIT ?", rs -> new Object[]{rs.getString(1), rs.getInt(2)},
+                        lastUUID, MIGRATION_CHUNK_SIZE);
+
+                if (rows.isEmpty()) {
+                    connection.update("INSERT INTO " + migrationTableName + " VALUES (?, ?, TRUE) ON DUPLICATE KEY " +
+                            "UPDATE completed = TRUE", sourceTable, lastUUID);
+                    break;
+                }
+
+                List<Object[]> parameters = new ArrayList<>();
+
+                for (Object[] row : rows) {
+                    UUID uuid;
+
+                    try {
+                        uuid = UUID.fromString((String) row[0]);
+                    } catch (IllegalArgumentException e) {
+                        // Skip rows that do not have a valid UUID.
+                        continue;
+                    }
+
+                    if (timeType == TimeType.TOTAL_TIME) {
+                        parameters.add(new Object[]{toBytes(uuid), row[1]});
+                    } else {
+                        parameters.add(new Object[]{toBytes(uuid), row[1], timeType.getCurrentPeriod()});
+                    }
+                }
+
+                lastUUID = (String) rows.get(rows.size() - 1)[0];
+
+                String column = getTimeColumn(timeType);
+
+                // Time that was added to the new table in the meantime is kept.
+                String insertStatement = timeType == TimeType.TOTAL_TIME ?
+                        "INSERT INTO " + tableName + " (uuid, " + column + ") VALUES (?, ?) ON DUPLICATE KEY " +
+                                "UPDATE " + column + " = " + column + " + VALUES(" + column + ")" :
+                        "INSERT INTO " + tableName + " (uuid, " + column + ", " + getPeriodColumn(timeType) + ") " +
+                                "VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE " + column + " = IF(" +
+                                getPeriodColumn(timeType) + " = VALUES(" + getPeriodColumn(timeType) + "), " +
+                                column + ", 0) + VALUES(" + column + "), " + getPeriodColumn(timeType) + " = " +
+                                "VALUES(" + getPeriodColumn(timeType) + ")";
+
+                Map<String, List<Object[]>> batches = new LinkedHashMap<>();
+
+                batches.put(insertStatement, parameters);
+                batches.put("INSERT INTO " + migrationTableName + " VALUES (?, ?, FALSE) ON DUPLICATE KEY UPDATE " +
+                        "last_uuid = VALUES(last_uuid)", Collections.singletonList(new Object[]{sourceTable,
+                        lastUUID}));
+
+                if (!connection.executeBatches(batches)) {
+                    plugin.getLogger().warning("Could not migrate " + sourceTable + ", trying again on the next " +
+                            "start.");
+                    return;
+                }
+
+                migratedRows += rows.size();
+
+                plugin.debugMessage("Migrated " + migratedRows + " rows of " + sourceTable + " to " + tableName);
+            }
+
+            plugin.getLogger().info("Migrated " + migratedRows + " rows of " + sourceTable + " to " + tableName +
+                    ". The old table is no longer used and can be removed.");
+        }
+    }
+
+    static String getTimeColumn(TimeType timeType) {
+        switch (timeType) {
+            case DAILY_TIME:
+                return "daily_time";
+            case WEEKLY_TIME:
+                return "weekly_time";
+            case MONTHLY_TIME:
+                return "monthly_time";
+            default:
+                return "total_time";
+        }
+    }
+
+    static String getPeriodColumn(TimeType timeType) {
+        switch (timeType) {
+            case DAILY_TIME:
+                return "daily_period";
+            case WEEKLY_TIME:
+                return "weekly_period";
+            case MONTHLY_TIME:
+                return "monthly_period";
+            default:
+                throw new IllegalArgumentException("Total time does not have a period");
+        }
+    }
+
+    /**
+     * Get the condition that selects the players that have time for a type of time. Every player has total time,
+     * but only players with time in the current day, week or month have daily, weekly or monthly time. The
+     * condition has a parameter for the current period, see {@link #getParameters(TimeType, Object...)}.
+     */
+    static String getStoredPlayersCondition(TimeType timeType) {
+        if (timeType == TimeType.TOTAL_TIME) return "";
+
+        return " WHERE " + getPeriodCondition(timeType) + getTimeColumn(timeType) + " > 0";
+    }
+
+    /**
+     * Get the condition that selects rows whose time belongs to the current period, followed by 'AND'. Total time
+     * does not have a period, so the condition is empty.
+     */
+    static String getPeriodCondition(TimeType timeType) {
+        if (timeType == TimeType.TOTAL_TIME) return "";
+
+        return getPeriodColumn(timeType) + " = ? AND ";
+    }
+
+    /**
+     * Get the parameters of a statement that starts with a period condition, see
+     * {@link #getPeriodCondition(TimeType)}.
+     */
+    static Object[] getParameters(TimeType timeType, Object... parameters) {
+        if (timeType == TimeType.TOTAL_TIME) return parameters;
+
+        Object[] allParameters = new Object[parameters.length + 1];
+
+        allParameters[0] = timeType.getCurrentPeriod();
+        System.arraycopy(parameters, 0, allParameters, 1, parameters.length);
+
+        return allParameters;
+    }
+
+    static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits()).array();
+    }
+
+    static UUID fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
@@ -6,77 +6,115 @@ import me.armar.plugins.autorank.playtimes.UpdateTimePlayedTask;
 import me.armar.plugins.autorank.util.AutorankTools;
 import org.bukkit.scheduler.BukkitTask;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class manages periodic tasks that need to be executed or killed.
+ * <br>
+ * <br>
+ * The play time of all online players is updated by a single task. Players are divided over buckets, one for every
+ * second of the update interval. Every second, the task updates the players of the next bucket in one batch. A new
+ * player is put in the bucket with the fewest players, so the amount of work per second stays the same, no matter
+ * when players join.
  */
 public class TaskManager {
 
+    // Number of ticks between two buckets.
+    private static final int TICKS_PER_BUCKET = AutorankTools.TICKS_PER_SECOND;
+
     private final Autorank plugin;
 
-    private final Map<UUID, Integer> updatePlayTimeTaskIds = new HashMap<>();
-    private final Map<UUID, Long> lastPlayTimeUpdate = new HashMap<>();
+    // Players whose play time is updated, divided over buckets.
+    private final List<Set<UUID>> updatePlayTimeBuckets = new ArrayList<>();
+    // Bucket that each player is in, so they can be removed in constant time.
+    private final Map<UUID, Integer> updatePlayTimeBucketIds = new ConcurrentHashMap<>();
+
+    // Task that updates the play time of players, started when the first player joins.
+    private BukkitTask updatePlayTimeTask;
+    // Bucket that is updated next.
+    private volatile int nextBucket = 0;
 
     public TaskManager(Autorank plugin) {
         this.plugin = plugin;
     }
 
-    public void startUpdatePlayTimeTask(UUID uuid) {
+    public synchronized void startUpdatePlayTimeTask(UUID uuid) {
 
-        // Do not start a task if there is already one running
-        if (updatePlayTimeTaskIds.containsKey(uuid)) {
+        // Do not add a player if they are already being updated
+        if (updatePlayTimeBucketIds.containsKey(uuid)) {
             return;
         }
 
-        BukkitTask task = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin,
-                new UpdateTimePlayedTask(plugin, uuid)
-                , PlayTimeManager.INTERVAL_MINUTES * AutorankTools.TICKS_PER_MINUTE, PlayTimeManager
-                        .INTERVAL_MINUTES * AutorankTools.TICKS_PER_MINUTE);
+        if (updatePlayTimeTask == null) {
+            this.startUpdatePlayTimeScheduler();
+        }
+
+        // Put player in the bucket with the fewest players.
+        int bucketId = 0;
+
+        for (int i = 1; i < updatePlayTimeBuckets.size(); i++) {
+            if (updatePlayTimeBuckets.get(i).size() < updatePlayTimeBuckets.get(bucketId).size()) {
+                bucketId = i;
+            }
+        }
 
-        // Store taskID so we can refer to it later.
-        updatePlayTimeTaskIds.put(uuid, task.getTaskId());
-        // Register when we started the task.
-        lastPlayTimeUpdate.put(uuid, System.currentTimeMillis());
+        updatePlayTimeBuckets.get(bucketId).add(uuid);
+        // Store bucket so we can remove the player later.
+        updatePlayTimeBucketIds.put(uuid, bucketId);
+        // Start counting the time of the player.
+        plugin.getPlayTimeManager().getPlayTimeAccumulator().startTracking(uuid);
 
-        plugin.debugMessage("Registered update play time task for player " + uuid + " (" + task.getTaskId() + ").");
+        plugin.debugMessage("Registered player " + uuid + " for play time updates (bucket " + bucketId + ").");
     }
 
     public void stopUpdatePlayTimeTask(UUID uuid) {
 
         plugin.debugMessage("Stop update play time task for player " + uuid);
 
-        // If no task is running, we can't kill it, so ignore the call.
-        if (!updatePlayTimeTaskIds.containsKey(uuid)) {
+        Integer bucketId = updatePlayTimeBucketIds.remove(uuid);
+
+        // If the player is not being updated, we can't stop it, so ignore the call.
+        if (bucketId == null) {
             return;
         }
 
-        // Cancel task
-        plugin.getServer().getScheduler().cancelTask(updatePlayTimeTaskIds.get(uuid));
-
-        // Remove it from registry so we can re-register if we ever want to.
-        updatePlayTimeTaskIds.remove(uuid);
+        updatePlayTimeBuckets.get(bucketId).remove(uuid);
     }
 
-    public void setLastPlayTimeUpdate(UUID uuid, long value) {
+    /**
+     * Start the task that updates the players of a bucket every second. There is a bucket for every second of the
+     * update interval, so every player is updated once per interval.
+     */
+    private void startUpdatePlayTimeScheduler() {
+        int numberOfBuckets = Math.max(1,
+                PlayTimeManager.INTERVAL_MINUTES * AutorankTools.TICKS_PER_MINUTE / TICKS_PER_BUCKET);
 
-        if (value < 0) {
-            // remove the value if it's smaller than 0.
-            lastPlayTimeUpdate.remove(uuid);
+        for (int i = 0; i < numberOfBuckets; i++) {
+            updatePlayTimeBuckets.add(ConcurrentHashMap.newKeySet());
         }
 
-        lastPlayTimeUpdate.put(uuid, value);
+        updatePlayTimeTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin,
+                this::updateNextBucket, TICKS_PER_BUCKET, TICKS_PER_BUCKET);
+
+        plugin.debugMessage("Started update play time task with " + numberOfBuckets + " buckets (" +
+                updatePlayTimeTask.getTaskId() + ").");
     }
 
-    public long getLastPlayTimeUpdate(UUID uuid) {
+    private void updateNextBucket() {
+        Set<UUID> bucket = updatePlayTimeBuckets.get(nextBucket);
 
-        if (!lastPlayTimeUpdate.containsKey(uuid)) {
-            return -1;
+        nextBucket = (nextBucket + 1) % updatePlayTimeBuckets.size();
+
+        if (bucket.isEmpty()) {
+            return;
         }
 
-        return lastPlayTimeUpdate.get(uuid);
+        new UpdateTimePlayedTask(plugin, new ArrayList<>(bucket)).run();
     }
 
 }
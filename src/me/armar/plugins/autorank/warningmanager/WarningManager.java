@@ -5,8 +5,9 @@ import me.armar.plugins.autorank.util.AutorankTools;
 import org.bukkit.ChatColor;
 import org.bukkit.command.CommandSender;
 
-import java.util.HashMap;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class handles all warning message that are displayed when something is
@@ -32,8 +33,9 @@ import java.util.Map.Entry;
  * <p>
  * <p>
  * <b>NOTE:</b> <br>
- * Warnings cannot be unregistered. The only way to remove the warnings is to
- * fix them so they don't ever get registered.
+ * Most warnings are never unregistered. The only way to remove those warnings is
+ * to fix them so they don't ever get registered. Warnings about temporary problems
+ * can be removed with {@link #unregisterWarning(String)} once the problem is gone.
  *
  * @author Staartvin
  */
@@ -41,7 +43,8 @@ public class WarningManager {
 
     private final Autorank plugin;
 
-    private final HashMap<String, Integer> warnings = new HashMap<String, Integer>();
+    // Warnings are registered from storage threads as well, e.g. when the database goes down.
+    private final Map<String, Integer> warnings = new ConcurrentHashMap<String, Integer>();
 
     public WarningManager(final Autorank plugin) {
         this.plugin = plugin;
@@ -112,6 +115,18 @@ public class WarningManager {
         this.registerWarning(message, LOW_PRIORITY_WARNING);
     }
 
+    /**
+     * Remove a warning that was registered before, for example because the
+     * problem it warns about has been resolved.
+     *
+     * @param message Warning message to remove.
+     */
+    public void unregisterWarning(final String message) {
+        if (warnings.remove(message) != null) {
+            plugin.getLoggerManager().logMessage("Warning resolved: " + message);
+        }
+    }
+
     public void startWarningTask() {
         // Create a new task that runs every 30 seconds (will show a warning
         // every 30 seconds)
@@ -119,7 +134,7 @@ public class WarningManager {
                 30 * AutorankTools.TICKS_PER_SECOND);
     }
 
-    public HashMap<String, Integer> getWarnings() {
+    public Map<String, Integer> getWarnings() {
         return warnings;
     }
 
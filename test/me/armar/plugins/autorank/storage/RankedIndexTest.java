@@ -0,0 +1,218 @@
+package me.armar.plugins.autorank.storage;
+
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link RankedIndex}.
+ */
+public class RankedIndexTest {
+
+    private static final UUID PLAYER_A = UUID.fromString("00000000-0000-0000-0000-00000000000a");
+    private static final UUID PLAYER_B = UUID.fromString("00000000-0000-0000-0000-00000000000b");
+    private static final UUID PLAYER_C = UUID.fromString("00000000-0000-0000-0000-00000000000c");
+    private static final UUID PLAYER_D = UUID.fromString("00000000-0000-0000-0000-00000000000d");
+
+    @Test
+    public void shouldRankInsertedPlayers() {
+        // given
+        RankedIndex index = new RankedIndex(TimeType.TOTAL_TIME);
+
+        // when
+        index.setTime(PLAYER_A, 10);
+        index.setTime(PLAYER_B, 50);
+        index.setTime(PLAYER_C, 5);
+        index.setTime(PLAYER_D, 30);
+
+        // then
+        assertThat(index.size(), equalTo(4));
+        assertThat(new ArrayList<>(index.getTopPlayers(4, 0).keySet()), contains(PLAYER_B, PLAYER_D, PLAYER_A,
+                PLAYER_C));
+        assertThat(index.getRank(PLAYER_B), equalTo(1));
+        assertThat(index.getRank(PLAYER_C), equalTo(4));
+    }
+
+    @Test
+    public void shouldMovePlayerWhenTimeIsUpdated() {
+        // given
+        RankedIndex index = new RankedIndex(TimeType.TOTAL_TIME);
+
+        index.setTime(PLAYER_A, 10);
+        index.setTime(PLAYER_B, 50);
+        index.setTime(PLAYER_C, 30);
+
+        // when
+        index.addTime(PLAYER_A, 45);
+        index.setTime(PLAYER_B, 20);
+
+        // then
+        assertThat(index.size(), equalTo(3));
+        assertThat(index.getTime(PLAYER_A), equalTo(55));
+        assertThat(new ArrayList<>(index.getTopPlayers(3, 0).keySet()), contains(PLAYER_A, PLAYER_C, PLAYER_B));
+        assertThat(index.getRank(PLAYER_B), equalTo(3));
+    }
+
+    @Test
+    public void shouldRemovePlayer() {
+        // given
+        RankedIndex index = new RankedIndex(TimeType.TOTAL_TIME);
+
+        index.setTime(PLAYER_A, 10);
+        index.setTime(PLAYER_B, 50);
+        index.setTime(PLAYER_C, 30);
+
+        // when
+        index.remove(PLAYER_B);
+
+        // then
+        assertThat(index.size(), equalTo(2));
+        assertThat(index.getRank(PLAYER_B), equalTo(-1));
+        assertThat(index.getTime(PLAYER_B), equalTo(0));
+        assertThat(index.getRank(PLAYER_C), equalTo(1));
+    }
+
+    @Test
+    public void shouldOrderEqualTimesOnUUID() {
+        // given
+        RankedIndex index = new RankedIndex(TimeType.TOTAL_TIME);
+
+        // when
+        index.setTime(PLAYER_C, 20);
+        index.setTime(PLAYER_B, 20);
+        index.setTime(PLAYER_A, 20);
+
+        // then
+        assertThat(new ArrayList<>(index.getTopPlayers(3, 0).keySet()), contains(PLAYER_A, PLAYER_B, PLAYER_C));
+        assertThat(index.getRank(PLAYER_A), equalTo(1));
+        assertThat(index.getRank(PLAYER_C), equalTo(3));
+    }
+
+    @Test
+    public void shouldRankPlayerWithoutTime() {
+        // given
+        RankedIndex index = new RankedIndex(TimeType.TOTAL_TIME);
+
+        // when
+        index.setTime(PLAYER_A, 0);
+        index.setTime(PLAYER_B, 50);
+
+        // then
+        assertThat(index.getRank(PLAYER_A), equalTo(2));
+        assertThat(index.getRank(PLAYER_C), equalTo(-1));
+    }
+
+    @Test
+    public void shouldSkipExcludedPlayersWhenRanking() {
+        // given
+        RankedIndex index = new RankedIndex(TimeType.TOTAL_TIME);
+
+        index.setTime(PLAYER_A, 10);
+        index.setTime(PLAYER_B, 50);
+        index.setTime(PLAYER_C, 5);
+        index.setTime(PLAYER_D, 30);
+
+        // when
+        Set<UUID> excludedPlayers = new HashSet<>(Arrays.asList(PLAYER_B, PLAYER_C));
+
+        // then
+        assertThat(index.getRank(PLAYER_D, excludedPlayers), equalTo(1));
+        assertThat(index.getRank(PLAYER_A, excludedPlayers), equalTo(2));
+        assertThat(index.getRank(PLAYER_B, excludedPlayers), equalTo(-1));
+    }
+
+    @Test
+    public void shouldReturnPlayersWithinRange() {
+        // given
+        RankedIndex index = new RankedIndex(TimeType.TOTAL_TIME);
+
+        index.setTime(PLAYER_A, 10);
+        index.setTime(PLAYER_B, 50);
+        index.setTime(PLAYER_C, 5);
+        index.setTime(PLAYER_D, 30);
+
+        // then
+        assertThat(new ArrayList<>(index.getTopPlayers(2, 1).keySet()), contains(PLAYER_D, PLAYER_A));
+        assertThat(new ArrayList<>(index.getTopPlayers(10, 3).keySet()), contains(PLAYER_C));
+        assertThat(index.getTopPlayers(2, 4).size(), equalTo(0));
+        assertThat(index.getTopPlayers(0, 0).size(), equalTo(0));
+        assertThat(index.getTopPlayers(Integer.MAX_VALUE, 0).size(), equalTo(4));
+        assertThat(index.getTopPlayers(Integer.MAX_VALUE, Integer.MAX_VALUE).size(), equalTo(0));
+        assertThat(index.getTopPlayers(1, 0).get(PLAYER_B), equalTo(50));
+    }
+
+    @Test
+    public void shouldMatchSortedOrderForManyPlayers() {
+        // given
+        RankedIndex index = new RankedIndex(TimeType.TOTAL_TIME);
+        Map<UUID, Integer> times = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 1000; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            int time = random.nextInt(100);
+
+            times.put(uuid, time);
+            index.setTime(uuid, time);
+        }
+
+        // when
+        List<UUID> expected = new ArrayList<>(times.keySet());
+        expected.sort(Comparator.comparing((UUID uuid) -> -times.get(uuid)).thenComparing(uuid -> uuid));
+
+        // then
+        assertThat(new ArrayList<>(index.getTopPlayers(1000, 0).keySet()), equalTo(expected));
+
+        for (int rank = 1; rank <= expected.size(); rank += 97) {
+            assertThat(index.getRank(expected.get(rank - 1)), equalTo(rank));
+        }
+    }
+
+    @Test
+    public void shouldClearWhenNewPeriodStarts() {
+        // given
+        AtomicInteger period = new AtomicInteger(1);
+        RankedIndex index = new RankedIndex(period::get);
+
+        index.setTime(PLAYER_A, 10);
+        index.setTime(PLAYER_B, 50);
+
+        // when
+        period.incrementAndGet();
+
+        // then
+        assertThat(index.size(), equalTo(0));
+        assertThat(index.getRank(PLAYER_A), equalTo(-1));
+
+        index.setTime(PLAYER_C, 5);
+
+        assertThat(new ArrayList<>(index.getTopPlayers(10, 0).keySet()), contains(PLAYER_C));
+    }
+
+    @Test
+    public void shouldTakeContentsOfLoadedIndex() {
+        // given
+        RankedIndex index = new RankedIndex(TimeType.TOTAL_TIME);
+        RankedIndex loadedIndex = new RankedIndex(TimeType.TOTAL_TIME);
+
+        index.setTime(PLAYER_A, 10);
+
+        Map<UUID, Integer> times = new HashMap<>();
+        times.put(PLAYER_B, 50);
+        times.put(PLAYER_C, 30);
+        loadedIndex.load(times);
+
+        // when
+        index.replaceWith(loadedIndex);
+
+        // then
+        assertThat(new ArrayList<>(index.getTopPlayers(10, 0).keySet()), contains(PLAYER_B, PLAYER_C));
+        assertThat(loadedIndex.size(), equalTo(0));
+    }
+}
@@ -0,0 +1,87 @@
+package me.armar.plugins.autorank.storage;
+
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link TopPlayersCollector}.
+ */
+public class TopPlayersCollectorTest {
+
+    private static final UUID PLAYER_A = UUID.fromString("00000000-0000-0000-0000-00000000000a");
+    private static final UUID PLAYER_B = UUID.fromString("00000000-0000-0000-0000-00000000000b");
+    private static final UUID PLAYER_C = UUID.fromString("00000000-0000-0000-0000-00000000000c");
+    private static final UUID PLAYER_D = UUID.fromString("00000000-0000-0000-0000-00000000000d");
+
+    @Test
+    public void shouldKeepBestPlayersInOrder() {
+        // given
+        TopPlayersCollector collector = new TopPlayersCollector(2);
+
+        // when
+        collector.offer(PLAYER_A, 10);
+        collector.offer(PLAYER_B, 50);
+        collector.offer(PLAYER_C, 5);
+        collector.offer(PLAYER_D, 30);
+
+        // then
+        Map<UUID, Integer> result = collector.getSortedPlayers(0);
+        assertThat(new ArrayList<>(result.keySet()), contains(PLAYER_B, PLAYER_D));
+        assertThat(result.get(PLAYER_B), equalTo(50));
+    }
+
+    @Test
+    public void shouldSkipOffset() {
+        // given
+        TopPlayersCollector collector = new TopPlayersCollector(3);
+
+        // when
+        collector.offer(PLAYER_A, 10);
+        collector.offer(PLAYER_B, 50);
+        collector.offer(PLAYER_C, 5);
+        collector.offer(PLAYER_D, 30);
+
+        // then
+        assertThat(new ArrayList<>(collector.getSortedPlayers(1).keySet()), contains(PLAYER_D, PLAYER_A));
+    }
+
+    @Test
+    public void shouldOrderEqualTimesOnUUID() {
+        // given
+        TopPlayersCollector collector = new TopPlayersCollector(2);
+
+        // when
+        collector.offer(PLAYER_C, 20);
+        collector.offer(PLAYER_B, 20);
+        collector.offer(PLAYER_A, 20);
+
+        // then
+        assertThat(new ArrayList<>(collector.getSortedPlayers(0).keySet()), contains(PLAYER_A, PLAYER_B));
+    }
+
+    @Test
+    public void shouldCombineCollectors() {
+        // given
+        TopPlayersCollector first = new TopPlayersCollector(2);
+        TopPlayersCollector second = new TopPlayersCollector(2);
+
+        first.offer(PLAYER_A, 10);
+        first.offer(PLAYER_B, 50);
+        second.offer(PLAYER_C, 5);
+        second.offer(PLAYER_D, 30);
+
+        // when
+        first.offerAll(second);
+
+        // then
+        assertThat(new ArrayList<>(first.getSortedPlayers(0).keySet()), contains(PLAYER_B, PLAYER_D));
+    }
+}
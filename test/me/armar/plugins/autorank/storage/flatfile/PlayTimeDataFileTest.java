@@ -0,0 +1,165 @@
+package me.armar.plugins.autorank.storage.flatfile;
+
+
+import me.armar.plugins.autorank.storage.TimeType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.*;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link PlayTimeDataFile}.
+ */
+public class PlayTimeDataFileTest {
+
+    private static final UUID PLAYER_A = UUID.fromString("00000000-0000-0000-0000-00000000000a");
+    private static final UUID PLAYER_B = UUID.fromString("00000000-0000-0000-0000-00000000000b");
+
+    // Number of records that fit in a segment, including the header.
+    private static final int RECORDS_PER_SEGMENT = PlayTimeDataFile.SEGMENT_SIZE / PlayTimeDataFile.RECORD_SIZE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private PlayTimeDataFile dataFile;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(folder.getRoot(), "Playtime.dat");
+        dataFile = open();
+    }
+
+    @After
+    public void tearDown() {
+        dataFile.close();
+    }
+
+    @Test
+    public void shouldStoreRecordsOf32Bytes() throws IOException {
+        // given
+        dataFile.setTime(TimeType.TOTAL_TIME, PLAYER_A, 120);
+        dataFile.setTime(TimeType.DAILY_TIME, PLAYER_A, 15);
+        dataFile.setTime(TimeType.TOTAL_TIME, PLAYER_B, 60);
+
+        // when
+        dataFile.close();
+
+        // then
+        try (RandomAccessFile raw = new RandomAccessFile(file, "r")) {
+            // The header holds the number of records and the size of a record.
+            raw.seek(8);
+            assertThat(raw.readInt(), equalTo(2));
+            assertThat(raw.readInt(), equalTo(PlayTimeDataFile.RECORD_SIZE));
+
+            // The second record starts right after the first one.
+            raw.seek(2 * PlayTimeDataFile.RECORD_SIZE);
+            assertThat(new UUID(raw.readLong(), raw.readLong()), equalTo(PLAYER_B));
+
+            raw.seek(PlayTimeDataFile.RECORD_SIZE);
+            assertThat(new UUID(raw.readLong(), raw.readLong()), equalTo(PLAYER_A));
+
+            int[] counters = new int[TimeType.values().length];
+
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] = raw.readInt();
+            }
+
+            assertThat(counters[TimeType.TOTAL_TIME.ordinal()], equalTo(120));
+            assertThat(counters[TimeType.DAILY_TIME.ordinal()], equalTo(15));
+            assertThat(counters[TimeType.WEEKLY_TIME.ordinal()], equalTo(0));
+        }
+    }
+
+    @Test
+    public void shouldReadTimeAfterReopening() throws IOException {
+        // given
+        dataFile.setTime(TimeType.TOTAL_TIME, PLAYER_A, 120);
+        dataFile.addTime(TimeType.TOTAL_TIME, PLAYER_A, 30);
+        dataFile.setTime(TimeType.WEEKLY_TIME, PLAYER_B, 45);
+
+        // when
+        dataFile.close();
+        dataFile = open();
+
+        // then
+        assertThat(dataFile.size(), equalTo(2));
+        assertThat(dataFile.getTime(TimeType.TOTAL_TIME, PLAYER_A), equalTo(150));
+        assertThat(dataFile.getTime(TimeType.WEEKLY_TIME, PLAYER_B), equalTo(45));
+        assertThat(dataFile.getPeriod(TimeType.WEEKLY_TIME), equalTo(TimeType.WEEKLY_TIME.getCurrentPeriod()));
+    }
+
+    @Test
+    public void shouldReadRecordsAcrossSegmentBoundary() throws IOException {
+        // given
+        Map<UUID, Integer> times = new LinkedHashMap<>();
+        Random random = new Random(42);
+
+        // The header takes up one record, so the last players are stored in the second segment.
+        for (int i = 0; i < RECORDS_PER_SEGMENT + 10; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+
+            times.put(uuid, i);
+            dataFile.setTime(TimeType.TOTAL_TIME, uuid, i);
+        }
+
+        // when
+        dataFile.close();
+        dataFile = open();
+
+        // then
+        assertThat(file.length(), equalTo(2L * PlayTimeDataFile.SEGMENT_SIZE));
+        assertThat(dataFile.size(), equalTo(times.size()));
+
+        for (Map.Entry<UUID, Integer> entry : times.entrySet()) {
+            assertThat(dataFile.getTime(TimeType.TOTAL_TIME, entry.getKey()), equalTo(entry.getValue()));
+        }
+    }
+
+    @Test
+    public void shouldMoveLastRecordWhenRemoving() throws IOException {
+        // given
+        dataFile.setTime(TimeType.TOTAL_TIME, PLAYER_A, 120);
+        dataFile.setTime(TimeType.TOTAL_TIME, PLAYER_B, 60);
+
+        // when
+        dataFile.remove(PLAYER_A);
+        dataFile.close();
+        dataFile = open();
+
+        // then
+        assertThat(dataFile.size(), equalTo(1));
+        assertThat(dataFile.contains(PLAYER_A), equalTo(false));
+        assertThat(dataFile.getTime(TimeType.TOTAL_TIME, PLAYER_B), equalTo(60));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectFileOfOtherFormat() throws IOException {
+        // given
+        dataFile.close();
+
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.writeInt(0);
+        }
+
+        // when
+        dataFile = open();
+    }
+
+    private PlayTimeDataFile open() throws IOException {
+        PlayTimeDataFile dataFile = new PlayTimeDataFile(file);
+
+        dataFile.open();
+
+        return dataFile;
+    }
+}
@@ -0,0 +1,155 @@
+package me.armar.plugins.autorank.storage.flatfile;
+
+
+import me.armar.plugins.autorank.storage.TimeType;
+import me.armar.plugins.autorank.storage.TopPlayersCollector;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Test for {@link PlayTimeTable}.
+ */
+public class PlayTimeTableTest {
+
+    private static final UUID PLAYER_A = UUID.fromString("00000000-0000-0000-0000-00000000000a");
+    private static final UUID PLAYER_B = UUID.fromString("00000000-0000-0000-0000-00000000000b");
+    private static final UUID PLAYER_C = UUID.fromString("00000000-0000-0000-0000-00000000000c");
+
+    @Test
+    public void shouldReadTimeThatWasWritten() {
+        // given
+        PlayTimeTable table = new PlayTimeTable();
+
+        // when
+        table.setTime(TimeType.TOTAL_TIME, PLAYER_A, 120);
+        table.setTime(TimeType.DAILY_TIME, PLAYER_A, 15);
+        table.addTime(TimeType.TOTAL_TIME, PLAYER_A, 30);
+        table.addTime(TimeType.TOTAL_TIME, PLAYER_B, 10);
+
+        // then
+        assertThat(table.size(), equalTo(2));
+        assertThat(table.getTime(TimeType.TOTAL_TIME, PLAYER_A), equalTo(150));
+        assertThat(table.getTime(TimeType.DAILY_TIME, PLAYER_A), equalTo(15));
+        assertThat(table.getTime(TimeType.WEEKLY_TIME, PLAYER_A), equalTo(0));
+        assertThat(table.getTime(TimeType.TOTAL_TIME, PLAYER_B), equalTo(10));
+        assertThat(table.getTime(TimeType.TOTAL_TIME, PLAYER_C), equalTo(0));
+    }
+
+    @Test
+    public void shouldGetTimesOfMultiplePlayers() {
+        // given
+        PlayTimeTable table = new PlayTimeTable();
+
+        table.setTime(TimeType.TOTAL_TIME, PLAYER_A, 120);
+        table.setTime(TimeType.TOTAL_TIME, PLAYER_B, 60);
+
+        // when
+        Map<UUID, Integer> times = table.getTimes(TimeType.TOTAL_TIME, Arrays.asList(PLAYER_A, PLAYER_B, PLAYER_C));
+
+        // then
+        assertThat(times.get(PLAYER_A), equalTo(120));
+        assertThat(times.get(PLAYER_B), equalTo(60));
+        assertThat(times.get(PLAYER_C), equalTo(0));
+    }
+
+    @Test
+    public void shouldKeepPlayersWhenGrowingAndRemoving() {
+        // given
+        PlayTimeTable table = new PlayTimeTable();
+        Map<UUID, Integer> times = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 10000; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+
+            times.put(uuid, i);
+            table.setTime(TimeType.TOTAL_TIME, uuid, i);
+        }
+
+        // when
+        List<UUID> removedPlayers = new ArrayList<>(times.keySet()).subList(0, 5000);
+
+        for (UUID uuid : removedPlayers) {
+            assertThat(table.remove(uuid), equalTo(true));
+        }
+
+        // then
+        assertThat(table.size(), equalTo(5000));
+
+        for (Map.Entry<UUID, Integer> entry : times.entrySet()) {
+            boolean removed = removedPlayers.contains(entry.getKey());
+
+            assertThat(table.contains(entry.getKey()), equalTo(!removed));
+            assertThat(table.getTime(TimeType.TOTAL_TIME, entry.getKey()), equalTo(removed ? 0 : entry.getValue()));
+        }
+
+        assertThat(table.remove(removedPlayers.get(0)), equalTo(false));
+    }
+
+    @Test
+    public void shouldOnlyReturnPlayersWithTimeForPeriodicTimeTypes() {
+        // given
+        PlayTimeTable table = new PlayTimeTable();
+
+        // when
+        table.setTime(TimeType.TOTAL_TIME, PLAYER_A, 10);
+        table.setTime(TimeType.TOTAL_TIME, PLAYER_B, 20);
+        table.setTime(TimeType.DAILY_TIME, PLAYER_B, 5);
+
+        // then
+        assertThat(new HashSet<>(table.getStoredUUIDs(TimeType.TOTAL_TIME)),
+                equalTo(new HashSet<>(Arrays.asList(PLAYER_A, PLAYER_B))));
+        assertThat(table.getStoredUUIDs(TimeType.DAILY_TIME), contains(PLAYER_B));
+    }
+
+    @Test
+    public void shouldReadNoTimeOfEarlierPeriod() {
+        // given
+        PlayTimeTable table = new PlayTimeTable();
+
+        table.setTime(TimeType.DAILY_TIME, PLAYER_A, 15);
+
+        // when
+        table.setPeriod(TimeType.DAILY_TIME, TimeType.DAILY_TIME.getCurrentPeriod() - 1);
+
+        // then
+        assertThat(table.getTime(TimeType.DAILY_TIME, PLAYER_A), equalTo(0));
+
+        table.addTime(TimeType.DAILY_TIME, PLAYER_A, 5);
+
+        assertThat(table.getTime(TimeType.DAILY_TIME, PLAYER_A), equalTo(5));
+        assertThat(table.getPeriod(TimeType.DAILY_TIME), equalTo(TimeType.DAILY_TIME.getCurrentPeriod()));
+    }
+
+    @Test
+    public void shouldCollectSameBestPlayersInSinglePass() {
+        // given
+        PlayTimeTable table = new PlayTimeTable();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 1000; i++) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+
+            table.setTime(TimeType.TOTAL_TIME, uuid, random.nextInt(1000));
+            table.setTime(TimeType.WEEKLY_TIME, uuid, random.nextInt(10));
+        }
+
+        // when
+        Map<TimeType, TopPlayersCollector> collectors = table.collectTimes(EnumSet.of(TimeType.TOTAL_TIME,
+                TimeType.WEEKLY_TIME), 20);
+
+        // then
+        for (TimeType timeType : Arrays.asList(TimeType.TOTAL_TIME, TimeType.WEEKLY_TIME)) {
+            TopPlayersCollector expected = new TopPlayersCollector(20);
+
+            table.collectTimes(timeType, expected);
+
+            assertThat(collectors.get(timeType).getSortedPlayers(0), equalTo(expected.getSortedPlayers(0)));
+        }
+    }
+}